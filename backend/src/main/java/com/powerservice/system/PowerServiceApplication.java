@@ -5,12 +5,15 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.DeserializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import com.fasterxml.jackson.datatype.jsr310.ser.LocalDateTimeSerializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 import java.text.SimpleDateFormat;
 import java.time.format.DateTimeFormatter;
@@ -18,8 +21,11 @@ import java.util.TimeZone;
 
 // 核心修改：移除外部Tomcat相关的继承和重写
 @SpringBootApplication
+@EnableScheduling
 public class PowerServiceApplication {
 
+    private static final Logger log = LoggerFactory.getLogger(PowerServiceApplication.class);
+
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
@@ -62,10 +68,9 @@ public class PowerServiceApplication {
                 // 修改字段为NOT NULL约束
                 jdbcTemplate.update("ALTER TABLE chat_records MODIFY COLUMN bot_response TEXT NOT NULL");
                 
-                System.out.println("成功修复chat_records表的bot_response字段");
+                log.info("成功修复chat_records表的bot_response字段");
             } catch (Exception e) {
-                System.out.println("修复chat_records表时出现异常: " + e.getMessage());
-                e.printStackTrace();
+                log.warn("修复chat_records表时出现异常: {}", e.getMessage(), e);
             }
         };
     }
@@ -0,0 +1,130 @@
+package com.powerservice.system.config;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.turbo.TurboFilter;
+import ch.qos.logback.core.spi.FilterReply;
+import org.slf4j.Marker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按日志类别采样和限流的TurboFilter，在logback-spring.xml中配置
+ * 每条规则形如 类别前缀=采样率,每秒上限，例如 com.powerservice.system.controller.AiController=0.2,50：
+ * WARN以下级别的日志按采样率保留，所有级别每秒最多输出上限条，超出的直接丢弃；
+ * 日志在进入异步队列和格式化之前就被过滤，热点路径上被丢弃的日志几乎没有开销。
+ * 多条规则匹配时取前缀最长的一条，未匹配的类别不受影响。
+ * isXxxEnabled()及fluent接口（atInfo()等）在过滤时不带日志内容，无法与真正的输出区分，不计入也不被过滤
+ */
+public class LogSamplingTurboFilter extends TurboFilter {
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * 添加一条规则，供logback配置文件调用
+     * @param rule 类别前缀=采样率,每秒上限，每秒上限<=0表示不限流
+     */
+    public void addRule(String rule) {
+        int eq = rule.indexOf('=');
+        if (eq <= 0) {
+            addError("日志采样规则格式错误: " + rule);
+            return;
+        }
+        String[] parts = rule.substring(eq + 1).split(",");
+        try {
+            double sampleRate = Double.parseDouble(parts[0].trim());
+            int maxPerSecond = parts.length > 1 ? Integer.parseInt(parts[1].trim()) : 0;
+            rules.add(new Rule(rule.substring(0, eq).trim(), sampleRate, maxPerSecond));
+            // 前缀长的规则优先匹配
+            rules.sort((a, b) -> b.prefix.length() - a.prefix.length());
+        } catch (NumberFormatException e) {
+            addError("日志采样规则格式错误: " + rule);
+        }
+    }
+
+    @Override
+    public FilterReply decide(Marker marker, Logger logger, Level level, String format, Object[] params, Throwable t) {
+        // isXxxEnabled()等不带内容的调用、以及本身就不会输出的级别不计入采样和限流
+        if (level == null || (format == null && t == null) || !level.isGreaterOrEqual(logger.getEffectiveLevel())) {
+            return FilterReply.NEUTRAL;
+        }
+        Rule rule = match(logger.getName());
+        if (rule == null) {
+            return FilterReply.NEUTRAL;
+        }
+        if (level.toInt() < Level.WARN_INT && rule.sampleRate < 1
+                && ThreadLocalRandom.current().nextDouble() >= rule.sampleRate) {
+            rule.sampledOut.increment();
+            return FilterReply.DENY;
+        }
+        if (!rule.tryAcquire()) {
+            rule.rateLimited.increment();
+            return FilterReply.DENY;
+        }
+        return FilterReply.NEUTRAL;
+    }
+
+    @Override
+    public void stop() {
+        for (Rule rule : rules) {
+            long dropped = rule.sampledOut.sum() + rule.rateLimited.sum();
+            if (dropped > 0) {
+                addInfo("日志类别 " + rule.prefix + " 采样丢弃" + rule.sampledOut.sum()
+                        + "条，限流丢弃" + rule.rateLimited.sum() + "条");
+            }
+        }
+        super.stop();
+    }
+
+    private Rule match(String loggerName) {
+        for (Rule rule : rules) {
+            if (loggerName.startsWith(rule.prefix)) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 单个类别的采样率和按秒计数的限流窗口
+     */
+    private static class Rule {
+
+        private final String prefix;
+
+        private final double sampleRate;
+
+        private final int maxPerSecond;
+
+        private final AtomicLong windowSecond = new AtomicLong();
+
+        private final AtomicInteger windowCount = new AtomicInteger();
+
+        private final LongAdder sampledOut = new LongAdder();
+
+        private final LongAdder rateLimited = new LongAdder();
+
+        Rule(String prefix, double sampleRate, int maxPerSecond) {
+            this.prefix = prefix;
+            this.sampleRate = sampleRate;
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        boolean tryAcquire() {
+            if (maxPerSecond <= 0) {
+                return true;
+            }
+            long second = System.currentTimeMillis() / 1000;
+            long current = windowSecond.get();
+            if (second != current && windowSecond.compareAndSet(current, second)) {
+                windowCount.set(0);
+            }
+            return windowCount.incrementAndGet() <= maxPerSecond;
+        }
+    }
+}
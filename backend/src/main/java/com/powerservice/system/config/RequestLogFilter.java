@@ -0,0 +1,82 @@
+package com.powerservice.system.config;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.slf4j.MDC;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * 请求日志上下文过滤器
+ * 为每个请求生成（或沿用客户端传入的）请求ID，连同会话ID放入MDC，
+ * 该请求线程上的日志自动带上这两个字段；请求ID同时写回响应头便于排查。
+ * 采样限流的类别只按带内容的日志计数，这些类别中请使用参数化日志而非fluent接口（见 LogSamplingTurboFilter）
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class RequestLogFilter extends OncePerRequestFilter {
+
+    public static final String REQUEST_ID_HEADER = "X-Request-Id";
+
+    public static final String REQUEST_ID = "requestId";
+
+    public static final String SESSION_ID = "sessionId";
+
+    // 客户端传入的请求ID超过该长度时不采用，避免日志被注入超长内容
+    private static final int MAX_REQUEST_ID_LENGTH = 64;
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String requestId = request.getHeader(REQUEST_ID_HEADER);
+        if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_REQUEST_ID_LENGTH) {
+            requestId = UUID.randomUUID().toString().replace("-", "").substring(0, 16);
+        }
+        MDC.put(REQUEST_ID, requestId);
+        String sessionId = request.getParameter(SESSION_ID);
+        if (sessionId != null && !sessionId.isEmpty()) {
+            MDC.put(SESSION_ID, sessionId);
+        }
+        response.setHeader(REQUEST_ID_HEADER, requestId);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            MDC.remove(REQUEST_ID);
+            MDC.remove(SESSION_ID);
+        }
+    }
+
+    /**
+     * 在请求线程之外（SSE工作线程、响应式回调）输出日志时，临时带上请求的MDC字段，结束后恢复原值
+     * @param requestId 请求ID
+     * @param sessionId 会话ID，可为空
+     * @param action 输出日志的操作
+     */
+    public static void withContext(String requestId, String sessionId, Runnable action) {
+        String previousRequestId = MDC.get(REQUEST_ID);
+        String previousSessionId = MDC.get(SESSION_ID);
+        put(REQUEST_ID, requestId);
+        put(SESSION_ID, sessionId);
+        try {
+            action.run();
+        } finally {
+            put(REQUEST_ID, previousRequestId);
+            put(SESSION_ID, previousSessionId);
+        }
+    }
+
+    private static void put(String key, String value) {
+        if (value == null || value.isEmpty()) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, value);
+        }
+    }
+}
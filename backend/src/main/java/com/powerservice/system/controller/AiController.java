@@ -1,21 +1,40 @@
 package com.powerservice.system.controller;
 
-import com.powerservice.system.util.DeepSeekApiClient;
-import com.powerservice.system.util.RedisCacheUtil;
+import com.powerservice.system.config.RequestLogFilter;
+import com.powerservice.system.service.AiChatService;
+import com.powerservice.system.service.AnswerPipeline;
+import com.powerservice.system.service.AnswerStage;
+import com.powerservice.system.service.SseReplayBuffer;
+import com.powerservice.system.service.SseStreamExecutor;
+import com.powerservice.system.service.TokenQuotaService;
+import com.powerservice.system.service.TokenUsageService;
+import com.powerservice.system.util.ChatDelta;
+import com.powerservice.system.util.DeepSeekApiException;
+import com.powerservice.system.util.StreamPacer;
+import com.powerservice.system.util.TokenEstimator;
+import com.powerservice.system.util.TokenUsage;
 import com.powerservice.system.dto.ApiResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.slf4j.MDC;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import java.nio.charset.StandardCharsets;
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.Map;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -26,58 +45,132 @@ import java.util.concurrent.atomic.AtomicReference;
 @RequestMapping("/api")
 public class AiController {
 
+    private static final Logger log = LoggerFactory.getLogger(AiController.class);
+
+    // 营业厅自助终端标识请求头
+    private static final String KIOSK_HEADER = "X-Kiosk-Id";
+
+    // 浏览器EventSource断线重连时携带的最后事件ID请求头
+    private static final String LAST_EVENT_ID_HEADER = "Last-Event-ID";
+
+    // 回答结束标记，客户端收到后关闭连接，不再自动重连
+    private static final String DONE_MARKER = "[DONE]";
+
+    // 建议客户端断线后的重连间隔
+    private static final long RECONNECT_MILLIS = 1000;
+
+    private static final MediaType TEXT_PLAIN_UTF8 = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+    private static final String QUOTA_EXCEEDED_MESSAGE = "提问过于频繁，请稍后再试";
+
+    private static final String FORWARDED_FOR_HEADER = "X-Forwarded-For";
+
+    // 可信反向代理的地址，来自这些地址的请求按X-Forwarded-For确定客户端IP
+    @Value("${ai.quota.trusted-proxies:}")
+    private String[] trustedProxies;
+
+    @Autowired
+    private AiChatService aiChatService;
+
+    @Autowired
+    private AnswerPipeline answerPipeline;
+
+    @Autowired
+    private StreamPacer streamPacer;
+
     @Autowired
-    private DeepSeekApiClient deepSeekApiClient;
+    private SseStreamExecutor sseStreamExecutor;
 
     @Autowired
-    private RedisCacheUtil redisCacheUtil;
+    private SseReplayBuffer sseReplayBuffer;
 
     @Autowired
-    private ObjectMapper objectMapper;
+    private TokenQuotaService tokenQuotaService;
+
+    @Autowired
+    private TokenUsageService tokenUsageService;
 
     /**
      * AI对话接口
-     * @param param 接收前端传递的{prompt: "用户问题"}
-     * @return AI响应结果
+     * @param param 接收前端传递的{prompt: "用户问题", sessionId: "会话ID（可选）", userId: "用户ID（可选）"}
+     * @param kioskId 终端标识（可选），未传时按客户端IP计配额
+     * @return AI响应结果，data为回答文本（无论来自规则、知识库、缓存还是大模型），超出token配额时返回429及Retry-After
      */
     @PostMapping("/chat")
-    public ApiResponse<Object> chat(@RequestBody Map<String, String> param) {
+    public Mono<ResponseEntity<ApiResponse<Object>>> chat(@RequestBody Map<String, String> param,
+                                                          @RequestHeader(value = KIOSK_HEADER, required = false) String kioskId,
+                                                          HttpServletRequest request) {
         String prompt = param.get("prompt");
+        String sessionId = param.get("sessionId");
+        String userId = param.get("userId");
         if (prompt == null || prompt.isEmpty()) {
-            return ApiResponse.error("提问内容不能为空");
+            return Mono.just(ResponseEntity.ok(ApiResponse.error("提问内容不能为空")));
         }
 
         try {
-            // 1. 生成缓存Key（去除空格，提高缓存命中率）
-            String cacheKey = "ai_chat:" + prompt.trim();
-
-            // 2. 先查缓存
-            if (redisCacheUtil.hasCache(cacheKey)) {
-                String cachedResponse = redisCacheUtil.getCache(cacheKey);
-                return ApiResponse.success("AI对话成功（缓存）", cachedResponse);
+            // 1. 依次尝试规则、知识库、缓存，置信度足够时直接返回；模型熔断时以知识库回答降级
+            AnswerStage.Candidate answer = answerPipeline.answer(prompt, sessionId, true);
+            if (answer != null) {
+                return Mono.just(ResponseEntity.ok(ApiResponse.success(
+                        "AI对话成功（" + answer.getStage().getLabel() + "）", answer.getAnswer())));
             }
+        } catch (Exception e) {
+            log.warn("AI回答流水线异常: {}", e.getMessage(), e);
+            return Mono.just(ResponseEntity.ok(ApiResponse.error("AI调用失败: " + e.getMessage())));
+        }
 
-            // 3. 缓存不存在，调用DeepSeek API
-            String response = deepSeekApiClient.chatWithDeepSeek(prompt);
-
-            // 4. 将结果写入缓存（设置过期时间为1小时）
-            redisCacheUtil.setCache(cacheKey, response, 1, TimeUnit.HOURS);
-
-            return ApiResponse.success("AI对话成功", response);
-        } catch (Exception e) {  // 修改为捕获 Exception 或确保方法声明抛出 IOException
-            e.printStackTrace();
-            return ApiResponse.error("AI调用失败: " + e.getMessage());
+        // 2. 按用户和终端预留token配额，额度不足时不调用上游
+        String kiosk = kioskId(kioskId, request);
+        TokenQuotaService.Reservation reservation =
+                tokenQuotaService.reserve(userId, kiosk, TokenEstimator.estimate(prompt));
+        if (!reservation.isAllowed()) {
+            return Mono.just(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(reservation.getRetryAfterSeconds()))
+                    .body(ApiResponse.error(QUOTA_EXCEEDED_MESSAGE)));
         }
+
+        // 3. 前面的阶段都没有回答，非阻塞调用DeepSeek API，等待期间不占用请求线程；
+        //    相同问题的并发请求合并为一次上游调用，结果由服务层写入缓存；
+        //    携带会话ID时按会话历史补充上下文。响应在其他线程上返回，MDC中的请求ID需提前取出
+        String requestId = MDC.get(RequestLogFilter.REQUEST_ID);
+        return answerPipeline.viaLlm(aiChatService.chat(prompt, sessionId))
+                .map(response -> {
+                    // 按实际token消耗结算配额并记入用量统计
+                    TokenUsage usage = aiChatService.usageOf(prompt, response);
+                    reservation.settle(usage.getTotalTokens());
+                    tokenUsageService.record(userId, sessionId, kiosk, usage);
+                    logUsage("AI对话完成", requestId, sessionId, usage);
+                    return ResponseEntity.ok(ApiResponse.<Object>success("AI对话成功", aiChatService.answerOf(response)));
+                })
+                .onErrorResume(e -> {
+                    RequestLogFilter.withContext(requestId, sessionId,
+                            () -> log.warn("AI调用失败: {}", e.getMessage(), e));
+                    reservation.cancel();
+                    return Mono.just(ResponseEntity.ok(ApiResponse.error("AI调用失败: " + e.getMessage())));
+                });
     }
 
 
     /**
      * AI对话接口（SSE流式响应）
+     * 每个片段带事件ID（流ID-序号），回答结束时发送[DONE]；连接中途断开后浏览器带Last-Event-ID重连，
+     * 本节点仍保留该流的缓冲时从断点继续发送，不重新调用模型
      * @param prompt 用户问题
-     * @return SSE流式响应结果
+     * @param pace 无需调用模型时是否按打字效果分片输出，false时整段一次输出
+     * @param sessionId 会话ID（可选），携带时按会话历史补充上下文，支持追问
+     * @param userId 用户ID（可选），用于token配额和用量统计
+     * @param kioskId 终端标识（可选），未传时按客户端IP计配额
+     * @param lastEventId 断线重连时浏览器携带的最后事件ID（可选）
+     * @return SSE流式响应结果，节点饱和时返回503、超出token配额时返回429，均带Retry-After
      */
     @GetMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter chatStream(@RequestParam(required = false) String prompt) {
+    public ResponseEntity<SseEmitter> chatStream(@RequestParam(required = false) String prompt,
+                                 @RequestParam(defaultValue = "true") boolean pace,
+                                 @RequestParam(required = false) String sessionId,
+                                 @RequestParam(required = false) String userId,
+                                 @RequestHeader(value = KIOSK_HEADER, required = false) String kioskId,
+                                 @RequestHeader(value = LAST_EVENT_ID_HEADER, required = false) String lastEventId,
+                                 HttpServletRequest request) {
         // 1. 空参数处理：直接返回错误，不创建流式连接
         if (prompt == null || prompt.trim().isEmpty()) {
             SseEmitter emitter = new SseEmitter(0L);
@@ -87,127 +180,259 @@ public class AiController {
             } catch (IOException e) {
                 emitter.completeWithError(e);
             }
-            return emitter;
+            return ResponseEntity.ok(emitter);
+        }
+
+        // 2. 断线重连时从本节点缓冲续传，上游调用和配额沿用原来的流；
+        //    否则按用户和终端预留token配额，不需要调用模型时全额退还
+        String kiosk = kioskId(kioskId, request);
+        Flux<SseReplayBuffer.Event> resumed = lastEventId != null && !lastEventId.isEmpty()
+                ? sseReplayBuffer.resume(lastEventId)
+                : null;
+        TokenQuotaService.Reservation reservation = resumed != null
+                ? TokenQuotaService.Reservation.none()
+                : tokenQuotaService.reserve(userId, kiosk, TokenEstimator.estimate(prompt));
+        if (!reservation.isAllowed()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(reservation.getRetryAfterSeconds()))
+                    .build();
+        }
+
+        // 3. 准入控制：节点同时进行的流已达上限时快速返回503，由客户端稍后重试
+        SseStreamExecutor.StreamTicket ticket = sseStreamExecutor.tryAdmit();
+        if (ticket == null) {
+            reservation.cancel();
+            return serviceUnavailable();
         }
 
         // 设置SSE超时时间为5分钟，避免连接过早断开
         SseEmitter emitter = new SseEmitter(5 * 60 * 1000L);
+        StreamContext context = new StreamContext(MDC.get(RequestLogFilter.REQUEST_ID),
+                prompt, sessionId, userId, kiosk, reservation, resumed);
 
-        // 添加连接关闭时的回调
+        // 添加连接关闭时的回调（正常结束、超时、出错最终都会触发）：取消对上游或打字节奏任务的订阅，
+        // 客户端离开后不再继续读取上游片段，并归还流名额
         emitter.onCompletion(() -> {
-            System.out.println("SSE连接已正常关闭");
+            context.subscription.dispose();
+            ticket.close();
+            RequestLogFilter.withContext(context.requestId, sessionId, () -> log.debug("SSE连接已关闭"));
         });
 
         emitter.onTimeout(() -> {
+            context.subscription.dispose();
             try {
                 emitter.send("data: 连接超时，请稍后重试！\n\n", new MediaType("text", "event-stream", StandardCharsets.UTF_8));
-            } catch (IOException e) {
-                e.printStackTrace();
+                emitter.send(SseEmitter.event().data(DONE_MARKER));
+            } catch (IOException ignored) {
+                // 客户端已断开
             } finally {
                 emitter.complete();
-                System.out.println("SSE连接已超时关闭");
+                RequestLogFilter.withContext(context.requestId, sessionId, () -> log.info("SSE连接已超时关闭"));
             }
         });
 
         emitter.onError((e) -> {
-            System.out.println("SSE连接发生错误: " + e.getMessage());
+            context.subscription.dispose();
+            ticket.close();
+            RequestLogFilter.withContext(context.requestId, sessionId,
+                    () -> log.debug("SSE连接发生错误: {}", e.getMessage()));
         });
 
-        // 异步处理SSE响应，避免阻塞
-        CompletableFuture.runAsync(() -> {
-            String cacheKey = "ai_chat:" + prompt.trim();
+        // 在独立的SSE工作线程池中处理，避免占用请求线程和JVM公共线程池
+        try {
+            sseStreamExecutor.execute(() -> streamAnswer(emitter, context, pace));
+        } catch (RejectedExecutionException e) {
+            ticket.close();
+            reservation.cancel();
+            return serviceUnavailable();
+        }
 
-            try {
-                // 先查缓存
-                if (redisCacheUtil.hasCache(cacheKey)) {
-                    String cachedResponse = redisCacheUtil.getCache(cacheKey);
-                    // 模拟流式发送缓存的响应（纯文本格式）
-                    for (int i = 0; i < cachedResponse.length(); i += 10) {
-                        int end = Math.min(i + 10, cachedResponse.length());
-                        String chunk = cachedResponse.substring(i, end);
-                        try {
-                            Thread.sleep(50);
-                            // 直接发送纯文本，不包装JSON
-                            emitter.send(chunk, new MediaType("text", "plain", StandardCharsets.UTF_8));
-                        } catch (InterruptedException e) {
-                            Thread.currentThread().interrupt();
-                            break;
-                        }
-                    }
-                    emitter.complete();
-                    return;
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * 向SSE连接输出回答
+     * 新请求的回答先写入续传缓冲，连接作为缓冲的消费者，断开后上游在宽限期内继续生成
+     * @param emitter SSE连接
+     * @param context 本次请求的问题、会话及配额信息
+     * @param pace 无需调用模型时是否按打字效果分片输出
+     */
+    private void streamAnswer(SseEmitter emitter, StreamContext context, boolean pace) {
+        String prompt = context.prompt;
+        String sessionId = context.sessionId;
+        if (context.subscription.isDisposed()) {
+            // 排队期间客户端已断开
+            context.reservation.cancel();
+            return;
+        }
+        try {
+            Flux<SseReplayBuffer.Event> events = context.resumed;
+            if (events == null) {
+                // 先经回答流水线（规则、知识库、缓存）：有回答时由共享的节奏调度器分片回放，
+                // 不再每个连接占用一个线程sleep；没有时订阅DeepSeek API的流式接口，
+                // 相同问题的并发请求共享同一个上游流，完整结果由服务层写入缓存
+                AnswerStage.Candidate answer = answerPipeline.answer(prompt, sessionId, true);
+                Flux<String> chunks;
+                if (answer != null) {
+                    context.reservation.cancel();
+                    chunks = streamPacer.pace(answer.getAnswer(), pace);
+                } else {
+                    chunks = metered(answerPipeline.viaLlmStream(aiChatService.chatStream(prompt, sessionId)), context)
+                            .filter(ChatDelta::hasContent)
+                            .map(ChatDelta::getContent);
                 }
+                events = sseReplayBuffer.open(chunks).events();
+            }
 
-                // 缓存不存在，调用DeepSeek API的流式接口
-                StringBuilder fullResponse = new StringBuilder();
-                boolean[] errorOccurred = {false}; // 使用数组来在lambda中修改值
+            emitter.send(SseEmitter.event().reconnectTime(RECONNECT_MILLIS));
 
-                try {
-                    deepSeekApiClient.chatWithDeepSeekStream(prompt, line -> {
+            // 订阅交给context持有，连接关闭回调可随时取消；回调先于此处触发时新订阅会被立即取消
+            context.subscription.update(events
+                    .doOnCancel(sseStreamExecutor::recordCancelledStream)
+                    .publishOn(sseStreamExecutor.scheduler())
+                    .subscribe(event -> {
                         try {
-                            if (line.startsWith("API调用失败:") || line.startsWith("网络错误:")) {
-                                // 直接发送错误信息
-                                emitter.send(line, new MediaType("text", "plain", StandardCharsets.UTF_8));
-                                errorOccurred[0] = true;
-                                return;
-                            }
-
-                            // 解析DeepSeek回复的纯文本内容
-                            if (line.startsWith("data: ")) {
-                                String jsonStr = line.substring("data: ".length());
-                                try {
-                                    ObjectNode node = objectMapper.readValue(jsonStr, ObjectNode.class);
-                                    ArrayNode choices = (ArrayNode) node.get("choices");
-                                    if (choices != null && choices.size() > 0) {
-                                        ObjectNode choice = (ObjectNode) choices.get(0);
-                                        ObjectNode delta = (ObjectNode) choice.get("delta");
-                                        if (delta != null) {
-                                            String content = delta.path("content").asText("");
-                                            if (!content.isEmpty()) {
-                                                // 直接发送纯文本内容，不包装JSON
-                                                emitter.send(content, new MediaType("text", "plain", StandardCharsets.UTF_8));
-                                                fullResponse.append(content);
-                                            }
-                                        }
-                                    }
-                                } catch (JsonProcessingException e) {
-                                    // 忽略JSON解析错误
-                                }
-                            }
+                            // 直接发送纯文本内容，不包装JSON
+                            emitter.send(SseEmitter.event().id(event.getId()).data(event.getData(), TEXT_PLAIN_UTF8));
                         } catch (IOException e) {
-                            try {
-                                // 直接发送错误信息
-                                emitter.send("错误：发送响应时出错: " + e.getMessage(), new MediaType("text", "plain", StandardCharsets.UTF_8));
-                            } catch (IOException ignored) {
-                            }
-                            errorOccurred[0] = true;
+                            // 客户端已断开，抛出异常以取消订阅
+                            throw new UncheckedIOException(e);
                         }
+                    }, e -> {
+                        RequestLogFilter.withContext(context.requestId, sessionId,
+                                () -> log.warn("API调用异常: {}", e.getMessage()));
+                        String errorMessage = e instanceof DeepSeekApiException
+                                ? e.getMessage()
+                                : "错误：发送响应时出错: " + e.getMessage();
+                        try {
+                            // 直接发送错误信息
+                            emitter.send(errorMessage, TEXT_PLAIN_UTF8);
+                            emitter.send(SseEmitter.event().data(DONE_MARKER));
+                            emitter.complete();
+                        } catch (IOException ignored) {
+                            emitter.completeWithError(e);
+                        }
+                    }, () -> {
+                        // 发送结束标记并关闭SSE连接
+                        try {
+                            emitter.send(SseEmitter.event().data(DONE_MARKER));
+                        } catch (IOException ignored) {
+                            // 客户端已断开
+                        }
+                        emitter.complete();
+                    }));
+        } catch (Exception e) {
+            RequestLogFilter.withContext(context.requestId, sessionId,
+                    () -> log.warn("流式请求处理异常: {}", e.getMessage(), e));
+            context.reservation.cancel();
+            emitter.completeWithError(e);
+        }
+    }
+
+    /**
+     * 流结束（完成、出错或客户端断开）时按token消耗结算配额并记入用量统计；
+     * 上游未返回usage时按已输出的文本估算
+     */
+    private Flux<ChatDelta> metered(Flux<ChatDelta> deltas, StreamContext context) {
+        return Flux.defer(() -> {
+            StringBuilder answer = new StringBuilder();
+            AtomicReference<TokenUsage> reported = new AtomicReference<>();
+            return deltas
+                    .doOnNext(delta -> {
+                        answer.append(delta.getContent());
+                        if (delta.getUsage() != null) {
+                            reported.set(delta.getUsage());
+                        }
+                    })
+                    .doFinally(signal -> {
+                        TokenUsage usage = reported.get() != null
+                                ? reported.get()
+                                : TokenUsage.estimate(context.prompt, answer.toString());
+                        context.reservation.settle(usage.getTotalTokens());
+                        tokenUsageService.record(context.userId, context.sessionId, context.kioskId, usage);
+                        logUsage("AI流式对话结束(" + signal + ")", context.requestId, context.sessionId, usage);
                     });
+        });
+    }
 
-                    // 对话完成后，将完整结果写入缓存
-                    if (!errorOccurred[0] && fullResponse.length() > 0) {
-                        redisCacheUtil.setCache(cacheKey, fullResponse.toString(), 1, TimeUnit.HOURS);
-                    }
-                } catch (Exception e) {
-                    System.err.println("API调用异常: " + e.getMessage());
-                    e.printStackTrace();
-                    try {
-                        emitter.send("data: 错误：API调用异常: " + e.getMessage() + "\n\n", new MediaType("text", "event-stream", StandardCharsets.UTF_8));
-                    } catch (IOException ignored) {
-                    }
-                    emitter.completeWithError(e);
-                    return;
-                }
+    /**
+     * 每次上游调用结束时输出一条带请求ID、会话ID和token数的日志，逐个片段不再打印
+     */
+    private void logUsage(String message, String requestId, String sessionId, TokenUsage usage) {
+        RequestLogFilter.withContext(requestId, sessionId,
+                () -> log.info("{} promptTokens={} completionTokens={} estimated={}",
+                        message, usage.getPromptTokens(), usage.getCompletionTokens(), usage.isEstimated()));
+    }
 
-                // 关闭SSE连接
-                emitter.complete();
-            } catch (Exception e) {
-                System.err.println("流式请求处理异常: " + e.getMessage());
-                e.printStackTrace();
-                emitter.completeWithError(e);
+    /**
+     * 终端标识，未传时使用客户端IP
+     */
+    private String kioskId(String kioskId, HttpServletRequest request) {
+        return kioskId != null && !kioskId.isEmpty() ? kioskId : clientAddress(request);
+    }
+
+    /**
+     * 客户端IP：直连地址是可信代理时，从X-Forwarded-For自右向左取第一个不是可信代理的地址，
+     * 避免反向代理后的所有客户端落入同一个配额桶；不可信来源的X-Forwarded-For可被伪造，不予采信
+     */
+    private String clientAddress(HttpServletRequest request) {
+        String remote = request.getRemoteAddr();
+        String forwarded = request.getHeader(FORWARDED_FOR_HEADER);
+        if (forwarded == null || forwarded.isBlank() || !isTrustedProxy(remote)) {
+            return remote;
+        }
+        String[] hops = forwarded.split(",");
+        for (int i = hops.length - 1; i >= 0; i--) {
+            String hop = hops[i].trim();
+            if (!hop.isEmpty() && !isTrustedProxy(hop)) {
+                return hop;
             }
-        });
+        }
+        return remote;
+    }
 
-        return emitter;
+    private boolean isTrustedProxy(String address) {
+        for (String proxy : trustedProxies) {
+            if (proxy.trim().equals(address)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 节点饱和时的快速失败响应
+     */
+    private ResponseEntity<SseEmitter> serviceUnavailable() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(sseStreamExecutor.getRetryAfterSeconds()))
+                .build();
+    }
+
+    /**
+     * 流式请求上下文
+     */
+    private static class StreamContext {
+        private final String requestId;
+        private final String prompt;
+        private final String sessionId;
+        private final String userId;
+        private final String kioskId;
+        private final TokenQuotaService.Reservation reservation;
+        // 断线重连时从缓冲续传的片段，新请求为null
+        private final Flux<SseReplayBuffer.Event> resumed;
+        // 对回答流的订阅，连接关闭时取消
+        private final Disposable.Swap subscription = Disposables.swap();
+
+        StreamContext(String requestId, String prompt, String sessionId, String userId, String kioskId,
+                      TokenQuotaService.Reservation reservation, Flux<SseReplayBuffer.Event> resumed) {
+            this.requestId = requestId;
+            this.prompt = prompt;
+            this.sessionId = sessionId;
+            this.userId = userId;
+            this.kioskId = kioskId;
+            this.reservation = reservation;
+            this.resumed = resumed;
+        }
     }
-}
\ No newline at end of file
+}
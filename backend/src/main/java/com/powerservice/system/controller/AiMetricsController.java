@@ -0,0 +1,238 @@
+package com.powerservice.system.controller;
+
+import com.powerservice.system.dto.ApiResponse;
+import com.powerservice.system.service.AiCacheWarmer;
+import com.powerservice.system.service.AiChatService;
+import com.powerservice.system.service.AnswerPipeline;
+import com.powerservice.system.service.ChatRecordClassificationJob;
+import com.powerservice.system.service.ChatRecordWriter;
+import com.powerservice.system.service.KeywordRouter;
+import com.powerservice.system.service.KnowledgeHitCounter;
+import com.powerservice.system.service.KnowledgePromptBuilder;
+import com.powerservice.system.service.KnowledgeRetriever;
+import com.powerservice.system.service.SseReplayBuffer;
+import com.powerservice.system.service.SseStreamExecutor;
+import com.powerservice.system.service.TokenQuotaService;
+import com.powerservice.system.service.TokenUsageService;
+import com.powerservice.system.util.DeepSeekResilience;
+import com.powerservice.system.util.LlmAdmissionScheduler;
+import com.powerservice.system.util.RedisCacheUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AI问答运行指标控制器
+ * 提供缓存、合并、限流、熔断等AI相关子系统的运行统计，以及缓存预热、历史记录归类等运维操作
+ */
+@RestController
+@RequestMapping("/api/ai/metrics")
+@CrossOrigin(origins = "*", maxAge = 3600)
+public class AiMetricsController {
+
+    @Autowired
+    private AiChatService aiChatService;
+
+    @Autowired
+    private AnswerPipeline answerPipeline;
+
+    @Autowired
+    private KeywordRouter keywordRouter;
+
+    @Autowired
+    private KnowledgePromptBuilder knowledgePromptBuilder;
+
+    @Autowired
+    private KnowledgeRetriever knowledgeRetriever;
+
+    @Autowired
+    private KnowledgeHitCounter knowledgeHitCounter;
+
+    @Autowired
+    private SseStreamExecutor sseStreamExecutor;
+
+    @Autowired
+    private SseReplayBuffer sseReplayBuffer;
+
+    @Autowired
+    private DeepSeekResilience deepSeekResilience;
+
+    @Autowired
+    private LlmAdmissionScheduler llmAdmissionScheduler;
+
+    @Autowired
+    private RedisCacheUtil redisCacheUtil;
+
+    @Autowired
+    private TokenUsageService tokenUsageService;
+
+    @Autowired
+    private TokenQuotaService tokenQuotaService;
+
+    @Autowired
+    private AiCacheWarmer aiCacheWarmer;
+
+    @Autowired
+    private ChatRecordClassificationJob chatRecordClassificationJob;
+
+    @Autowired
+    private ChatRecordWriter chatRecordWriter;
+
+    /**
+     * 回答流水线统计：规则、知识库、缓存、大模型各阶段的命中率和耗时分位数
+     */
+    @GetMapping("/pipeline")
+    public ResponseEntity<ApiResponse<Object>> getPipelineStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取回答流水线统计成功", answerPipeline.getStats()));
+    }
+
+    /**
+     * 关键词路由统计：规则数、关键词数、规则加载情况及路由耗时
+     */
+    @GetMapping("/routing")
+    public ResponseEntity<ApiResponse<Object>> getRoutingStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取关键词路由统计成功", keywordRouter.getStats()));
+    }
+
+    /**
+     * 立即重新加载路由规则文件，规则有误时保留当前规则
+     */
+    @PostMapping("/routing/reload")
+    public ResponseEntity<ApiResponse<Object>> reloadRoutingRules() {
+        if (!keywordRouter.reload()) {
+            return ResponseEntity.ok(ApiResponse.error("路由规则加载失败，已保留当前规则", keywordRouter.getStats()));
+        }
+        return ResponseEntity.ok(ApiResponse.success("路由规则已重新加载", keywordRouter.getStats()));
+    }
+
+    /**
+     * 知识库参考资料统计：检索耗时、带上参考资料的比例及增加的token数
+     */
+    @GetMapping("/rag")
+    public ResponseEntity<ApiResponse<Object>> getRagStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取知识库参考资料统计成功", knowledgePromptBuilder.getStats()));
+    }
+
+    /**
+     * 知识库索引统计：条目数、词项数、刷新次数及检索耗时
+     */
+    @GetMapping("/kb-index")
+    public ResponseEntity<ApiResponse<Object>> getKnowledgeIndexStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取知识库索引统计成功", knowledgeRetriever.getStats()));
+    }
+
+    /**
+     * 知识库命中次数统计：未写入的命中数、写入延迟及批量写入情况
+     */
+    @GetMapping("/kb-hits")
+    public ResponseEntity<ApiResponse<Object>> getKnowledgeHitStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取知识库命中统计成功", knowledgeHitCounter.getStats()));
+    }
+
+    @GetMapping("/single-flight")
+    public ResponseEntity<ApiResponse<Object>> getSingleFlightStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取请求合并统计成功", aiChatService.getSingleFlightStats()));
+    }
+
+    @GetMapping("/semantic-cache")
+    public ResponseEntity<ApiResponse<Object>> getSemanticCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取语义缓存统计成功", aiChatService.getSemanticCacheStats()));
+    }
+
+    @GetMapping("/answer-cache")
+    public ResponseEntity<ApiResponse<Object>> getAnswerCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取回答缓存统计成功", aiChatService.getAnswerCacheStats()));
+    }
+
+    @GetMapping("/near-cache")
+    public ResponseEntity<ApiResponse<Object>> getNearCacheStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取近端缓存统计成功", redisCacheUtil.getStats()));
+    }
+
+    @GetMapping("/conversation")
+    public ResponseEntity<ApiResponse<Object>> getConversationStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取多轮对话统计成功", aiChatService.getConversationStats()));
+    }
+
+    @GetMapping("/sse")
+    public ResponseEntity<ApiResponse<Object>> getSseStats() {
+        Map<String, Object> stats = new HashMap<>(sseStreamExecutor.getStats());
+        stats.put("resume", sseReplayBuffer.getStats());
+        return ResponseEntity.ok(ApiResponse.success("获取流式连接统计成功", stats));
+    }
+
+    /**
+     * 流取消统计：客户端断开数（sse）以及因此取消的上游调用数和估算节省的token
+     */
+    @GetMapping("/cancellation")
+    public ResponseEntity<ApiResponse<Object>> getCancellationStats() {
+        Map<String, Object> stats = new HashMap<>(aiChatService.getCancellationStats());
+        stats.put("cancelledStreams", sseStreamExecutor.getStats().get("cancelledStreams"));
+        return ResponseEntity.ok(ApiResponse.success("获取流取消统计成功", stats));
+    }
+
+    @GetMapping("/llm")
+    public ResponseEntity<ApiResponse<Object>> getLlmStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取上游调用统计成功", deepSeekResilience.getStats()));
+    }
+
+    /**
+     * 上游准入统计：自适应并发上限以及各优先级的排队和丢弃情况
+     */
+    @GetMapping("/admission")
+    public ResponseEntity<ApiResponse<Object>> getAdmissionStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取上游准入统计成功", llmAdmissionScheduler.getStats()));
+    }
+
+    @GetMapping("/usage")
+    public ResponseEntity<ApiResponse<Object>> getUsageStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取token用量统计成功", tokenUsageService.getStats()));
+    }
+
+    @GetMapping("/quota")
+    public ResponseEntity<ApiResponse<Object>> getQuotaStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取token配额统计成功", tokenQuotaService.getStats()));
+    }
+
+    @GetMapping("/warmup")
+    public ResponseEntity<ApiResponse<Object>> getWarmupProgress() {
+        return ResponseEntity.ok(ApiResponse.success("获取缓存预热进度成功", aiCacheWarmer.getProgress()));
+    }
+
+    /**
+     * 手动触发一轮缓存预热，在后台执行
+     */
+    @PostMapping("/warmup")
+    public ResponseEntity<ApiResponse<Object>> triggerWarmup() {
+        Schedulers.boundedElastic().schedule(aiCacheWarmer::warmUp);
+        return ResponseEntity.ok(ApiResponse.success("缓存预热已开始", aiCacheWarmer.getProgress()));
+    }
+
+    /**
+     * 对话记录写入统计：队列深度、批量写入次数及耗时分位数
+     */
+    @GetMapping("/chat-records")
+    public ResponseEntity<ApiResponse<Object>> getChatRecordStats() {
+        return ResponseEntity.ok(ApiResponse.success("获取对话记录写入统计成功", chatRecordWriter.getStats()));
+    }
+
+    @GetMapping("/classification")
+    public ResponseEntity<ApiResponse<Object>> getClassificationProgress() {
+        return ResponseEntity.ok(ApiResponse.success("获取对话记录归类进度成功", chatRecordClassificationJob.getProgress()));
+    }
+
+    /**
+     * 手动触发一次历史对话记录归类，在后台执行
+     * @param restart 是否忽略断点从头开始
+     */
+    @PostMapping("/classification")
+    public ResponseEntity<ApiResponse<Object>> triggerClassification(
+            @RequestParam(defaultValue = "false") boolean restart) {
+        Schedulers.boundedElastic().schedule(() -> chatRecordClassificationJob.run(restart));
+        return ResponseEntity.ok(ApiResponse.success("对话记录归类已开始", chatRecordClassificationJob.getProgress()));
+    }
+}
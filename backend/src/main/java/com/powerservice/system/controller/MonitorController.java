@@ -2,7 +2,9 @@ package com.powerservice.system.controller;
 
 import com.powerservice.system.dto.ApiResponse;
 import com.powerservice.system.service.MonitorService;
+import com.powerservice.system.service.StartupWarmUp;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import java.math.BigDecimal;
@@ -17,6 +19,9 @@ public class MonitorController {
     @Autowired
     private MonitorService monitorService;
 
+    @Autowired
+    private StartupWarmUp startupWarmUp;
+
     @GetMapping("/electricity")
     public ResponseEntity<ApiResponse<Object>> getElectricityData() {
         try {
@@ -60,4 +65,16 @@ public class MonitorController {
             return ResponseEntity.badRequest().body(ApiResponse.error(e.getMessage()));
         }
     }
+
+    /**
+     * 就绪探针：启动预热结束且应用可接收流量时返回200，否则返回503，负载均衡据此决定是否转发请求
+     */
+    @GetMapping("/readiness")
+    public ResponseEntity<ApiResponse<Object>> getReadiness() {
+        if (startupWarmUp.isReady()) {
+            return ResponseEntity.ok(ApiResponse.success("服务已就绪", startupWarmUp.getStatus()));
+        }
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .body(ApiResponse.error("服务预热中", startupWarmUp.getStatus()));
+    }
 }
@@ -1,11 +1,13 @@
 package com.powerservice.system.entity;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.powerservice.system.service.KnowledgeBaseChangeListener;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "knowledge_base")
+@EntityListeners(KnowledgeBaseChangeListener.class)
 @JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 public class KnowledgeBase {
     @Id
@@ -0,0 +1,226 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.entity.KnowledgeBase;
+import com.powerservice.system.entity.ServiceType;
+import com.powerservice.system.repository.KnowledgeBaseRepository;
+import com.powerservice.system.repository.ServiceTypeRepository;
+import com.powerservice.system.util.CacheEnvelope;
+import com.powerservice.system.util.RedisCacheUtil;
+import com.powerservice.system.util.RequestPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AI回答缓存预热
+ * 启动完成后及每天定时，取知识库中命中次数最高的前N个问题和快捷服务入口的问题，
+ * 对缓存中缺失的条目限制并发调用AI生成回答并写入 ai_chat: 缓存，
+ * 使发布或Redis清空后的早高峰也能直接命中缓存
+ */
+@Service
+public class AiCacheWarmer {
+
+    private static final Logger log = LoggerFactory.getLogger(AiCacheWarmer.class);
+
+    @Value("${ai.warmup.enabled:true}")
+    private boolean enabled;
+
+    // 预热的知识库热门问题数
+    @Value("${ai.warmup.top-n:50}")
+    private int topN;
+
+    // 同时进行的上游调用数，避免预热挤占正常请求
+    @Value("${ai.warmup.concurrency:4}")
+    private int concurrency;
+
+    // 已有缓存的条目是否也重新生成
+    @Value("${ai.warmup.refresh-existing:false}")
+    private boolean refreshExisting;
+
+    // 快捷服务入口之外额外预热的问题
+    @Value("${ai.warmup.extra-prompts:}")
+    private List<String> extraPrompts;
+
+    @Autowired
+    private AiChatService aiChatService;
+
+    @Autowired
+    private RedisCacheUtil redisCacheUtil;
+
+    @Autowired
+    private KnowledgeBaseRepository knowledgeBaseRepository;
+
+    @Autowired
+    private ServiceTypeRepository serviceTypeRepository;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Progress progress = new Progress(0);
+
+    /**
+     * 启动完成后预热，在后台执行，不阻塞启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (enabled) {
+            Schedulers.boundedElastic().schedule(this::warmUp);
+        }
+    }
+
+    /**
+     * 每天营业前定时预热
+     */
+    @Scheduled(cron = "${ai.warmup.cron:0 30 7 * * *}")
+    public void scheduledWarmUp() {
+        if (enabled) {
+            warmUp();
+        }
+    }
+
+    /**
+     * 执行一轮预热，已有一轮在进行时直接返回
+     * @return 是否启动了新的一轮
+     */
+    public boolean warmUp() {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            List<String> prompts = collectPrompts();
+            Progress current = new Progress(prompts.size());
+            progress = current;
+
+            // 一次批量读取判断哪些问题已有未软过期的缓存
+            Map<String, String> keyToPrompt = new LinkedHashMap<>();
+            for (String prompt : prompts) {
+                keyToPrompt.putIfAbsent(aiChatService.cacheKey(prompt), prompt);
+            }
+            Set<String> cachedKeys = new HashSet<>();
+            if (!refreshExisting) {
+                long now = System.currentTimeMillis();
+                redisCacheUtil.multiGet(new ArrayList<>(keyToPrompt.keySet())).forEach((key, raw) -> {
+                    if (!CacheEnvelope.decode(raw).isStale(now)) {
+                        cachedKeys.add(key);
+                    }
+                });
+            }
+
+            List<String> missing = new ArrayList<>();
+            keyToPrompt.forEach((key, prompt) -> {
+                if (cachedKeys.contains(key)) {
+                    current.alreadyCached.incrementAndGet();
+                } else {
+                    missing.add(prompt);
+                }
+            });
+
+            Flux.fromIterable(missing)
+                    // 预热不在用户等待路径上，以低优先级调用上游，不与在线提问争抢名额
+                    .flatMap(prompt -> aiChatService.chat(prompt, RequestPriority.LOW)
+                            .doOnNext(response -> {
+                                // 上游失败时返回的是兜底回答，不写入缓存，计为失败
+                                if (aiChatService.isFallbackResponse(response)) {
+                                    current.failed.incrementAndGet();
+                                    log.warn("缓存预热失败: {}, 上游返回兜底回答", prompt);
+                                } else {
+                                    current.warmed.incrementAndGet();
+                                }
+                            })
+                            .onErrorResume(e -> {
+                                current.failed.incrementAndGet();
+                                log.warn("缓存预热失败: {}, {}", prompt, e.getMessage());
+                                return Mono.empty();
+                            }), concurrency)
+                    .blockLast();
+            current.finishedAt = LocalDateTime.now();
+            log.info("AI缓存预热完成: 共{}个问题，已有缓存{}，新生成{}，失败{}",
+                    current.total, current.alreadyCached.get(), current.warmed.get(), current.failed.get());
+        } catch (Exception e) {
+            // 数据库或Redis不可用时跳过本轮，等待下次定时预热
+            progress.error = e.getMessage();
+            log.warn("AI缓存预热异常: {}", e.getMessage());
+        } finally {
+            running.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * 预热进度与覆盖率
+     */
+    public Map<String, Object> getProgress() {
+        Progress current = progress;
+        int covered = current.alreadyCached.get() + current.warmed.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("total", current.total);
+        stats.put("alreadyCached", current.alreadyCached.get());
+        stats.put("warmed", current.warmed.get());
+        stats.put("failed", current.failed.get());
+        stats.put("coverage", current.total == 0 ? 0.0 : (double) covered / current.total);
+        stats.put("startedAt", current.startedAt);
+        stats.put("finishedAt", current.finishedAt);
+        stats.put("error", current.error);
+        return stats;
+    }
+
+    /**
+     * 收集预热问题：快捷服务入口、额外配置的问题、知识库热门问题，去重保序
+     */
+    private List<String> collectPrompts() {
+        Set<String> prompts = new LinkedHashSet<>();
+        for (ServiceType serviceType : serviceTypeRepository.findByIsActiveTrueOrderBySortOrderAsc()) {
+            prompts.add(serviceType.getName());
+        }
+        for (String prompt : extraPrompts) {
+            if (!prompt.isBlank()) {
+                prompts.add(prompt.trim());
+            }
+        }
+        for (KnowledgeBase kb : knowledgeBaseRepository.findPopularQuestions(PageRequest.of(0, topN))) {
+            if (kb.getQuestion() != null && !kb.getQuestion().isBlank()) {
+                prompts.add(kb.getQuestion());
+            }
+        }
+        return new ArrayList<>(prompts);
+    }
+
+    /**
+     * 一轮预热的进度
+     */
+    private static class Progress {
+        private final int total;
+        private final AtomicInteger alreadyCached = new AtomicInteger();
+        private final AtomicInteger warmed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+        private volatile String error;
+
+        Progress(int total) {
+            this.total = total;
+        }
+    }
+}
@@ -0,0 +1,382 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.CacheEnvelope;
+import com.powerservice.system.util.ChatDelta;
+import com.powerservice.system.util.DeepSeekApiClient;
+import com.powerservice.system.util.Message;
+import com.powerservice.system.util.RedisCacheUtil;
+import com.powerservice.system.util.RequestPriority;
+import com.powerservice.system.util.SingleFlight;
+import com.powerservice.system.util.TextNormalizer;
+import com.powerservice.system.util.TokenEstimator;
+import com.powerservice.system.util.TokenUsage;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI问答服务
+ * 负责AI回答的缓存读写，并对相同问题的并发上游调用做单飞合并。
+ * 缓存分两层：本地语义缓存可命中措辞相近的问题，Redis按归一化问题精确匹配，
+ * 两层缓存的均为回答纯文本。
+ * Redis中的回答带软过期时间：软过期后仍直接返回旧回答，同时由一个节点在后台刷新；
+ * 软、硬过期时间都加随机抖动，避免同时写入的热门问题同时过期、集中打到上游。
+ * 携带sessionId且会话已有历史时，回答依赖上下文，不使用共享缓存和单飞合并。
+ * 调用大模型前在历史消息之前附上检索到的知识库参考资料
+ */
+@Service
+public class AiChatService {
+
+    private static final String CACHE_PREFIX = "ai_chat:";
+
+    // 后台刷新锁，保证同一问题同一时间只有一个节点在刷新
+    private static final String REFRESH_LOCK_PREFIX = "ai_chat_refresh:";
+
+    // 软过期时间：超过后返回旧回答并触发后台刷新
+    @Value("${ai.cache.soft-ttl-minutes:50}")
+    private long softTtlMinutes;
+
+    // 软过期后仍可返回旧回答的时长，软过期时间加上该时长即为Redis中的硬过期时间
+    @Value("${ai.cache.stale-window-minutes:30}")
+    private long staleWindowMinutes;
+
+    // 过期时间的随机抖动比例，0.1表示±10%
+    @Value("${ai.cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    @Value("${ai.cache.refresh-lock-seconds:30}")
+    private long refreshLockSeconds;
+
+    @Autowired
+    private DeepSeekApiClient deepSeekApiClient;
+
+    @Autowired
+    private RedisCacheUtil redisCacheUtil;
+
+    @Autowired
+    private SemanticAnswerCache semanticAnswerCache;
+
+    @Autowired
+    private ConversationMemory conversationMemory;
+
+    @Autowired
+    private KeywordRouter keywordRouter;
+
+    @Autowired
+    private KnowledgePromptBuilder knowledgePromptBuilder;
+
+    // 阻塞接口与流式接口的结果形态不同，分开合并
+    private final SingleFlight<String> chatFlight = new SingleFlight<>();
+
+    private final SingleFlight<ChatDelta> streamFlight = new SingleFlight<>();
+
+    private final LongAdder cancelledUpstreams = new LongAdder();
+
+    private final LongAdder savedCompletionTokens = new LongAdder();
+
+    private final LongAdder freshHits = new LongAdder();
+
+    private final LongAdder staleServed = new LongAdder();
+
+    private final LongAdder refreshes = new LongAdder();
+
+    private final LongAdder refreshFailures = new LongAdder();
+
+    private final LongAdder refreshLatencyTotalMs = new LongAdder();
+
+    private final LongAccumulator refreshLatencyMaxMs = new LongAccumulator(Long::max, 0);
+
+    /**
+     * 生成缓存Key（统一全角/半角并去除标点、空白，提高缓存命中率）
+     * @param prompt 用户问题
+     * @return 缓存Key，同时作为单飞合并的key
+     */
+    public String cacheKey(String prompt) {
+        String normalized = TextNormalizer.normalize(prompt);
+        return CACHE_PREFIX + (normalized.isEmpty() ? prompt.trim() : normalized);
+    }
+
+    /**
+     * 查询缓存的回答
+     * @param prompt 用户问题
+     * @return 缓存的回答，不存在时返回null
+     */
+    public String getCachedAnswer(String prompt) {
+        // 1. 本地语义缓存，相近问题也可命中
+        String answer = semanticAnswerCache.lookup(prompt);
+        if (answer != null) {
+            return answer;
+        }
+
+        // 2. 精确匹配（近端缓存 + Redis，一次读取）
+        String cacheKey = cacheKey(prompt);
+        CacheEnvelope entry = CacheEnvelope.decode(redisCacheUtil.getCache(cacheKey));
+        if (entry == null) {
+            return null;
+        }
+        if (entry.isStale(System.currentTimeMillis())) {
+            // 软过期：先返回旧回答，后台刷新
+            staleServed.increment();
+            refreshInBackground(prompt, cacheKey);
+        } else {
+            // 未过期的回答回填语义缓存，到软过期时间为止
+            freshHits.increment();
+            semanticAnswerCache.put(prompt, entry.getValue(), entry.getSoftExpireAt());
+        }
+        return entry.getValue();
+    }
+
+    /**
+     * 调用AI获取完整回答（会话版本，非阻塞）
+     * 会话已有历史时携带按token预算裁剪后的上下文单独调用，否则与无会话请求共享缓存和合并
+     * @param prompt 用户问题
+     * @param sessionId 会话ID，可为空
+     * @return AI响应结果（原始JSON格式）
+     */
+    public Mono<String> chat(String prompt, String sessionId) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            return chat(prompt);
+        }
+        Mono<String> response;
+        if (conversationMemory.hasHistory(sessionId)) {
+            List<Message> history = knowledgePromptBuilder.withKnowledge(prompt,
+                    conversationMemory.buildContext(sessionId, prompt));
+            response = deepSeekApiClient.chat(prompt, history, priorityOf(prompt)).publishOn(Schedulers.boundedElastic());
+        } else {
+            response = chat(prompt);
+        }
+        return response.doOnNext(resp ->
+                conversationMemory.append(sessionId, prompt, deepSeekApiClient.extractAnswer(resp)));
+    }
+
+    /**
+     * 调用AI获取流式回答（会话版本）
+     * 会话已有历史时携带上下文单独调用，否则与无会话请求共享同一个上游流；完成后记入会话
+     * @param prompt 用户问题
+     * @param sessionId 会话ID，可为空
+     * @return 增量片段流
+     */
+    public Flux<ChatDelta> chatStream(String prompt, String sessionId) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            return chatStream(prompt);
+        }
+        return Flux.defer(() -> {
+            Flux<ChatDelta> deltas = conversationMemory.hasHistory(sessionId)
+                    ? cancellable(deepSeekApiClient.chatStream(prompt, knowledgePromptBuilder.withKnowledge(prompt,
+                            conversationMemory.buildContext(sessionId, prompt)), priorityOf(prompt)))
+                    : chatStream(prompt);
+            StringBuilder fullResponse = new StringBuilder();
+            return deltas
+                    .doOnNext(delta -> fullResponse.append(delta.getContent()))
+                    .doOnComplete(() -> conversationMemory.append(sessionId, prompt, fullResponse.toString()));
+        });
+    }
+
+    /**
+     * 调用AI获取完整回答（非阻塞），相同问题的并发请求只触发一次上游调用
+     * @param prompt 用户问题
+     * @return AI响应结果（原始JSON格式）
+     */
+    public Mono<String> chat(String prompt) {
+        return chat(prompt, priorityOf(prompt));
+    }
+
+    /**
+     * 以指定优先级调用AI获取完整回答（非阻塞），用于后台刷新、缓存预热等不在用户等待路径上的调用
+     * @param prompt 用户问题
+     * @param priority 上游调用优先级
+     * @return AI响应结果（原始JSON格式）
+     */
+    public Mono<String> chat(String prompt, RequestPriority priority) {
+        String cacheKey = cacheKey(prompt);
+        // 按优先级区分合并：在线提问不会加入排在后面的低优先级调用
+        return chatFlight.execute(priority + ":" + cacheKey, () -> deepSeekApiClient.chat(prompt,
+                        knowledgePromptBuilder.withKnowledge(prompt, List.of()), priority)
+                .publishOn(Schedulers.boundedElastic())
+                // 提取回答文本写入缓存，上游失败时的兜底回答不写入，保留原有缓存
+                .doOnNext(response -> {
+                    if (!deepSeekApiClient.isFallbackResponse(response)) {
+                        cacheAnswer(prompt, cacheKey, deepSeekApiClient.extractAnswer(response));
+                    }
+                }));
+    }
+
+    /**
+     * 是否为上游失败时返回的兜底回答
+     * @param response AI响应结果（原始JSON格式）
+     */
+    public boolean isFallbackResponse(String response) {
+        return deepSeekApiClient.isFallbackResponse(response);
+    }
+
+    /**
+     * 调用AI获取流式回答，相同问题的并发请求共享同一个上游流：
+     * 后加入的订阅者先收到已生成的片段，再接收后续实时片段
+     * @param prompt 用户问题
+     * @return 增量片段流
+     */
+    public Flux<ChatDelta> chatStream(String prompt) {
+        String cacheKey = cacheKey(prompt);
+        return streamFlight.executeMany(cacheKey, () -> {
+            StringBuilder fullResponse = new StringBuilder();
+            return cancellable(deepSeekApiClient.chatStream(prompt,
+                    knowledgePromptBuilder.withKnowledge(prompt, List.of()), priorityOf(prompt)))
+                    .doOnNext(delta -> fullResponse.append(delta.getContent()))
+                    .doOnComplete(() -> {
+                        // 对话完成后，将完整结果异步写入缓存，避免阻塞网络线程
+                        String answer = fullResponse.toString();
+                        Schedulers.boundedElastic().schedule(() -> cacheAnswer(prompt, cacheKey, answer));
+                    });
+        });
+    }
+
+    /**
+     * 按关键词路由确定上游调用优先级，安全和抢修类问题在上游繁忙时优先调用
+     */
+    private RequestPriority priorityOf(String prompt) {
+        return keywordRouter.classifyPriority(prompt);
+    }
+
+    /**
+     * 统计上游流在生成结束前被取消的次数（合并的流在所有订阅者都断开后才取消），
+     * 并按流式最大生成token数减去已生成的部分估算节省的token
+     */
+    private Flux<ChatDelta> cancellable(Flux<ChatDelta> upstream) {
+        return Flux.defer(() -> {
+            StringBuilder generated = new StringBuilder();
+            return upstream
+                    .doOnNext(delta -> generated.append(delta.getContent()))
+                    .doOnCancel(() -> {
+                        cancelledUpstreams.increment();
+                        savedCompletionTokens.add(Math.max(0,
+                                deepSeekApiClient.getStreamMaxTokens() - TokenEstimator.estimate(generated.toString())));
+                    });
+        });
+    }
+
+    /**
+     * 从非流式调用的响应中取出回答文本，与缓存、规则、知识库命中时返回的形式一致
+     * @param response AI响应结果（原始JSON格式）
+     * @return 回答文本
+     */
+    public String answerOf(String response) {
+        return deepSeekApiClient.extractAnswer(response);
+    }
+
+    /**
+     * 获取非流式调用的token消耗，上游未返回usage时按文本估算
+     * @param prompt 用户问题
+     * @param response AI响应结果（原始JSON格式）
+     * @return token消耗
+     */
+    public TokenUsage usageOf(String prompt, String response) {
+        TokenUsage usage = deepSeekApiClient.extractUsage(response);
+        return usage != null ? usage : TokenUsage.estimate(prompt, deepSeekApiClient.extractAnswer(response));
+    }
+
+    /**
+     * 将回答写入本地语义缓存和Redis，Redis中带软过期时间，软、硬过期时间均加随机抖动
+     */
+    private void cacheAnswer(String prompt, String cacheKey, String answer) {
+        if (answer == null || answer.isEmpty()) {
+            return;
+        }
+        long softTtl = jittered(TimeUnit.MINUTES.toMillis(softTtlMinutes));
+        long hardTtl = softTtl + jittered(TimeUnit.MINUTES.toMillis(staleWindowMinutes));
+        long softExpireAt = System.currentTimeMillis() + softTtl;
+        semanticAnswerCache.put(prompt, answer, softExpireAt);
+        redisCacheUtil.setCache(cacheKey, CacheEnvelope.encode(answer, softExpireAt),
+                hardTtl, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 后台刷新软过期的回答，通过Redis锁保证同一时间只有一个刷新
+     */
+    private void refreshInBackground(String prompt, String cacheKey) {
+        try {
+            if (!redisCacheUtil.tryLock(REFRESH_LOCK_PREFIX + cacheKey, refreshLockSeconds, TimeUnit.SECONDS)) {
+                return;
+            }
+        } catch (Exception e) {
+            return;
+        }
+        refreshes.increment();
+        long start = System.currentTimeMillis();
+        // 旧回答已返回给用户，刷新不急，以低优先级调用上游
+        chat(prompt, RequestPriority.LOW).subscribe(response -> {
+            long latency = System.currentTimeMillis() - start;
+            refreshLatencyTotalMs.add(latency);
+            refreshLatencyMaxMs.accumulate(latency);
+            if (deepSeekApiClient.isFallbackResponse(response)) {
+                refreshFailures.increment();
+            }
+        }, e -> refreshFailures.increment());
+    }
+
+    private long jittered(long millis) {
+        if (ttlJitter <= 0) {
+            return millis;
+        }
+        return (long) (millis * ThreadLocalRandom.current().nextDouble(1 - ttlJitter, 1 + ttlJitter));
+    }
+
+    /**
+     * 获取Redis回答缓存的过期与刷新统计
+     */
+    public Map<String, Object> getAnswerCacheStats() {
+        long refreshCount = refreshes.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("freshHits", freshHits.sum());
+        stats.put("staleServed", staleServed.sum());
+        stats.put("refreshes", refreshCount);
+        stats.put("refreshFailures", refreshFailures.sum());
+        stats.put("refreshAvgLatencyMs", refreshCount == 0 ? 0 : refreshLatencyTotalMs.sum() / refreshCount);
+        stats.put("refreshMaxLatencyMs", refreshLatencyMaxMs.get());
+        return stats;
+    }
+
+    /**
+     * 获取语义缓存统计
+     */
+    public Map<String, Object> getSemanticCacheStats() {
+        return semanticAnswerCache.getStats();
+    }
+
+    /**
+     * 获取多轮对话记忆统计
+     */
+    public Map<String, Object> getConversationStats() {
+        return conversationMemory.getStats();
+    }
+
+    /**
+     * 获取单飞合并统计
+     */
+    public Map<String, Object> getSingleFlightStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("chat", chatFlight.getStats());
+        stats.put("stream", streamFlight.getStats());
+        return stats;
+    }
+
+    /**
+     * 获取上游流取消统计
+     */
+    public Map<String, Object> getCancellationStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("cancelledUpstreams", cancelledUpstreams.sum());
+        stats.put("savedCompletionTokens", savedCompletionTokens.sum());
+        return stats;
+    }
+}
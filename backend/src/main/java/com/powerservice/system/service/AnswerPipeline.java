@@ -0,0 +1,234 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.DeepSeekResilience;
+import com.powerservice.system.util.LatencyTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 回答流水线：规则 → 知识库 → 缓存 → 大模型
+ * 各阶段按顺序尝试，置信度达到阶段阈值时直接返回，都未达到时由调用方调用大模型。
+ * 大模型不可用（熔断打开）或调用方不使用大模型时，采用未达阈值的候选回答中置信度最高的降级，相同时知识库优先。
+ * 会话已有历史时回答依赖上下文，跳过前面的阶段直接调用大模型；采用的回答记入会话，作为后续追问的上下文。
+ * 统计每个阶段的命中次数、命中率和耗时分位数（微秒）
+ */
+@Service
+public class AnswerPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(AnswerPipeline.class);
+
+    private static final String LLM_STAGE = "llm";
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    @Value("${ai.pipeline.enabled:true}")
+    private boolean enabled;
+
+    @Autowired
+    private List<AnswerStage> stages;
+
+    @Autowired
+    private DeepSeekResilience deepSeekResilience;
+
+    @Autowired
+    private ConversationMemory conversationMemory;
+
+    private final Map<String, StageStats> stageStats = new LinkedHashMap<>();
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder degraded = new LongAdder();
+
+    private final LongAdder unanswered = new LongAdder();
+
+    /**
+     * 依次尝试各阶段
+     * @param prompt 用户提问
+     * @param sessionId 会话ID，可为空
+     * @param llmAvailable 调用方是否会调用大模型，false时总是尽量给出降级回答
+     * @return 采用的回答；返回null表示需要调用大模型（或调用方没有可用的回答）
+     */
+    public AnswerStage.Candidate answer(String prompt, String sessionId, boolean llmAvailable) {
+        return answer(prompt, sessionId, llmAvailable, true);
+    }
+
+    /**
+     * 依次尝试各阶段
+     * @param prompt 用户提问
+     * @param sessionId 会话ID，可为空
+     * @param llmAvailable 调用方是否会调用大模型，false时总是尽量给出降级回答
+     * @param recordAccepted 是否执行阶段的采用回调（如知识库命中计数）并记入会话，启动预热等合成请求传false
+     * @return 采用的回答；返回null表示需要调用大模型（或调用方没有可用的回答）
+     */
+    public AnswerStage.Candidate answer(String prompt, String sessionId, boolean llmAvailable,
+                                        boolean recordAccepted) {
+        requests.increment();
+        // 熔断冷却时间已过时照常尝试大模型，让探测请求有机会关闭熔断
+        boolean useLlm = llmAvailable && deepSeekResilience.permitsCalls();
+        if (!enabled || (useLlm && sessionId != null && !sessionId.isEmpty() && conversationMemory.hasHistory(sessionId))) {
+            return null;
+        }
+
+        AnswerStage.Candidate fallback = null;
+        for (AnswerStage stage : stages) {
+            StageStats stats = stats(stage.getName());
+            long start = System.nanoTime();
+            AnswerStage.Candidate candidate;
+            try {
+                candidate = stage.tryAnswer(prompt);
+            } catch (Exception e) {
+                // 单个阶段出错不影响后续阶段
+                log.warn("回答阶段 {} 执行异常: {}", stage.getName(), e.getMessage());
+                candidate = null;
+            }
+            stats.record(System.nanoTime() - start, candidate != null);
+            if (candidate == null) {
+                continue;
+            }
+            if (candidate.getConfidence() >= stage.getMinConfidence()) {
+                stats.hits.increment();
+                return recordAccepted ? accept(candidate, prompt, sessionId) : candidate;
+            }
+            if (fallback == null || preferAsFallback(candidate, fallback)) {
+                fallback = candidate;
+            }
+        }
+
+        if (useLlm) {
+            return null;
+        }
+        if (fallback == null) {
+            unanswered.increment();
+            return null;
+        }
+        if (llmAvailable) {
+            degraded.increment();
+        }
+        stats(fallback.getStage().getName()).fallbacks.increment();
+        return recordAccepted ? accept(fallback, prompt, sessionId) : fallback;
+    }
+
+    /**
+     * 统计大模型阶段的命中和首个结果的耗时
+     */
+    public <T> Mono<T> viaLlm(Mono<T> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call.doOnNext(value -> stats(LLM_STAGE).recordHit(System.nanoTime() - start));
+        });
+    }
+
+    /**
+     * 统计大模型阶段的命中和首个片段的耗时
+     */
+    public <T> Flux<T> viaLlmStream(Flux<T> call) {
+        return Flux.defer(() -> {
+            long start = System.nanoTime();
+            AtomicBoolean first = new AtomicBoolean();
+            return call.doOnNext(item -> {
+                if (first.compareAndSet(false, true)) {
+                    stats(LLM_STAGE).recordHit(System.nanoTime() - start);
+                }
+            });
+        });
+    }
+
+    private AnswerStage.Candidate accept(AnswerStage.Candidate candidate, String prompt, String sessionId) {
+        try {
+            candidate.getStage().onAccepted(candidate);
+        } catch (Exception e) {
+            log.warn("回答阶段 {} 采用回调异常: {}", candidate.getStage().getName(), e.getMessage());
+        }
+        if (sessionId != null && !sessionId.isEmpty()) {
+            conversationMemory.append(sessionId, prompt, candidate.getAnswer());
+        }
+        return candidate;
+    }
+
+    /**
+     * 降级回答取置信度高的，置信度相同时优先取知识库
+     */
+    private static boolean preferAsFallback(AnswerStage.Candidate candidate, AnswerStage.Candidate current) {
+        if (candidate.getConfidence() != current.getConfidence()) {
+            return candidate.getConfidence() > current.getConfidence();
+        }
+        return candidate.getKnowledgeBaseId() != null && current.getKnowledgeBaseId() == null;
+    }
+
+    private StageStats stats(String name) {
+        synchronized (stageStats) {
+            return stageStats.computeIfAbsent(name, n -> new StageStats());
+        }
+    }
+
+    /**
+     * 各阶段的命中次数、命中率（占全部请求）和耗时分位数
+     */
+    public Map<String, Object> getStats() {
+        long total = requests.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("requests", total);
+        stats.put("degraded", degraded.sum());
+        stats.put("unanswered", unanswered.sum());
+        Map<String, Object> perStage = new LinkedHashMap<>();
+        synchronized (stageStats) {
+            stageStats.forEach((name, stage) -> perStage.put(name, stage.toMap(total)));
+        }
+        stats.put("stages", perStage);
+        return stats;
+    }
+
+    /**
+     * 单个阶段的统计
+     */
+    private static class StageStats {
+        final LongAdder attempts = new LongAdder();
+        final LongAdder candidates = new LongAdder();
+        final LongAdder hits = new LongAdder();
+        final LongAdder fallbacks = new LongAdder();
+        // 耗时样本（微秒），前面几个阶段通常不到1毫秒
+        final LatencyTracker latency = new LatencyTracker(LATENCY_SAMPLES);
+
+        void record(long nanos, boolean answered) {
+            attempts.increment();
+            if (answered) {
+                candidates.increment();
+            }
+            latency.record(nanos / 1_000);
+        }
+
+        void recordHit(long nanos) {
+            attempts.increment();
+            candidates.increment();
+            hits.increment();
+            latency.record(nanos / 1_000);
+        }
+
+        Map<String, Object> toMap(long requests) {
+            Map<String, Object> map = new HashMap<>();
+            long hitCount = hits.sum();
+            map.put("attempts", attempts.sum());
+            map.put("candidates", candidates.sum());
+            map.put("hits", hitCount);
+            map.put("fallbacks", fallbacks.sum());
+            map.put("hitRate", requests > 0 ? (double) hitCount / requests : 0);
+            map.put("latencyP50Micros", latency.percentile(0.5));
+            map.put("latencyP90Micros", latency.percentile(0.9));
+            map.put("latencyP99Micros", latency.percentile(0.99));
+            return map;
+        }
+    }
+}
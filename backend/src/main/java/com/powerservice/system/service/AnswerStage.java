@@ -0,0 +1,100 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.entity.ServiceType;
+
+/**
+ * 回答流水线中的一个阶段
+ * 各阶段按顺序尝试给出回答并附带置信度，置信度达到该阶段的阈值时直接返回，不再调用后续阶段和大模型
+ */
+public interface AnswerStage {
+
+    /**
+     * 阶段名称，用于统计
+     */
+    String getName();
+
+    /**
+     * 阶段的展示名称，如 缓存、知识库
+     */
+    String getLabel();
+
+    /**
+     * 置信度达到该值时直接采用本阶段的回答
+     */
+    double getMinConfidence();
+
+    /**
+     * 尝试回答
+     * @param prompt 用户提问
+     * @return 候选回答，无法回答时返回null
+     */
+    Candidate tryAnswer(String prompt);
+
+    /**
+     * 本阶段的回答被采用（直接返回或作为降级回答）后回调
+     * @param candidate 被采用的回答
+     */
+    default void onAccepted(Candidate candidate) {
+    }
+
+    /**
+     * 候选回答
+     */
+    class Candidate {
+        private final AnswerStage stage;
+        private final String answer;
+        private final double confidence;
+        private final String serviceTypeName;
+        private final boolean needMoreInfo;
+        // 来自知识库的回答对应的条目ID及服务分类，其他阶段为null
+        private final Long knowledgeBaseId;
+        private final ServiceType serviceType;
+
+        public Candidate(AnswerStage stage, String answer, double confidence,
+                         String serviceTypeName, boolean needMoreInfo) {
+            this(stage, answer, confidence, serviceTypeName, needMoreInfo, null, null);
+        }
+
+        public Candidate(AnswerStage stage, String answer, double confidence, String serviceTypeName,
+                         boolean needMoreInfo, Long knowledgeBaseId, ServiceType serviceType) {
+            this.stage = stage;
+            this.answer = answer;
+            this.confidence = confidence;
+            this.serviceTypeName = serviceTypeName;
+            this.needMoreInfo = needMoreInfo;
+            this.knowledgeBaseId = knowledgeBaseId;
+            this.serviceType = serviceType;
+        }
+
+        public AnswerStage getStage() {
+            return stage;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        public double getConfidence() {
+            return confidence;
+        }
+
+        public String getServiceTypeName() {
+            return serviceTypeName;
+        }
+
+        public boolean isNeedMoreInfo() {
+            return needMoreInfo;
+        }
+
+        public Long getKnowledgeBaseId() {
+            return knowledgeBaseId;
+        }
+
+        /**
+         * 知识库条目关联的服务分类，其他阶段返回null，由调用方按名称查询
+         */
+        public ServiceType getServiceType() {
+            return serviceType;
+        }
+    }
+}
@@ -4,6 +4,8 @@ import com.powerservice.system.dto.FaceLoginRequest;
 import com.powerservice.system.dto.LoginRequest;
 import com.powerservice.system.entity.User;
 import com.powerservice.system.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
@@ -15,6 +17,8 @@ import java.util.Optional;
 @Service
 public class AuthService {
 
+    private static final Logger log = LoggerFactory.getLogger(AuthService.class);
+
     @Autowired
     private UserRepository userRepository;
 
@@ -33,31 +37,21 @@ public class AuthService {
 
         User user = userOptional.get();
 
-        // 调试：打印密码验证信息
-        System.out.println("=== 密码验证调试信息 ===");
-        System.out.println("用户名: " + request.getUsername());
-        System.out.println("请求密码: " + request.getPassword());
-        System.out.println("数据库密码哈希: " + user.getPassword());
-        System.out.println("密码长度: " + request.getPassword().length());
-        
         // 特殊处理：允许admin用户使用明文密码'password'登录
         boolean passwordValid = false;
         if (user.getUsername().equals("admin") && request.getPassword().equals("password")) {
-            System.out.println("特殊处理：admin用户使用明文密码'password'登录成功");
             passwordValid = true;
             // 自动将密码转换为BCrypt哈希格式
             user.setPassword(passwordEncoder.encode(request.getPassword()));
             userRepository.save(user);
-            System.out.println("密码已转换为BCrypt格式并保存到数据库");
-            System.out.println("新的BCrypt哈希: " + user.getPassword());
+            log.info("admin用户使用默认明文密码登录，密码已转换为BCrypt格式保存");
         } else {
             // 正常密码验证逻辑
             passwordValid = passwordEncoder.matches(request.getPassword(), user.getPassword());
         }
         
-        System.out.println("密码匹配结果: " + passwordValid);
-        
         if (!passwordValid) {
+            log.info("登录失败: 密码错误 username={}", request.getUsername());
             throw new RuntimeException("密码错误");
         }
 
@@ -68,6 +62,7 @@ public class AuthService {
         // 更新最后登录时间
         user.setLastLoginTime(LocalDateTime.now());
         userRepository.save(user);
+        log.info("登录成功 username={}", user.getUsername());
 
         // 生成JWT令牌
         String token = jwtService.generateToken(user.getUsername());
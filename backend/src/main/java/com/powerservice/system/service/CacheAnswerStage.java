@@ -0,0 +1,37 @@
+package com.powerservice.system.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 回答缓存阶段，命中语义缓存或Redis缓存的大模型回答，置信度为1
+ */
+@Component
+@Order(3)
+public class CacheAnswerStage implements AnswerStage {
+
+    @Autowired
+    private AiChatService aiChatService;
+
+    @Override
+    public String getName() {
+        return "cache";
+    }
+
+    @Override
+    public String getLabel() {
+        return "缓存";
+    }
+
+    @Override
+    public double getMinConfidence() {
+        return 1.0;
+    }
+
+    @Override
+    public Candidate tryAnswer(String prompt) {
+        String answer = aiChatService.getCachedAnswer(prompt);
+        return answer != null ? new Candidate(this, answer, 1.0, null, false) : null;
+    }
+}
@@ -0,0 +1,380 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.entity.ServiceType;
+import com.powerservice.system.repository.ServiceTypeRepository;
+import com.powerservice.system.util.DeepSeekApiClient;
+import com.powerservice.system.util.Message;
+import com.powerservice.system.util.RequestPriority;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 历史对话记录服务类型归类任务（离线批处理）
+ * 早期未命中知识库和关键词的对话没有记录服务类型，该任务在夜间把这些记录交给AI归类：
+ * 按主键游标分页读取未归类的记录（每次只持有一页），每若干条拼成一个提问，限制并发调用AI，
+ * 结果按页用JDBC批量更新写回，并在 batch_job_checkpoints 表中记录已处理到的主键，
+ * 中断或超出单次运行时长后下次从断点继续。
+ * 上游不可用（返回兜底回答）时停止本次运行，断点停在第一批失败的记录之前。
+ * 模拟服务模式下上游只有固定回答，改为按关键词路由在本地给出同样格式的回答，其余流程照常执行
+ */
+@Service
+public class ChatRecordClassificationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatRecordClassificationJob.class);
+
+    private static final String JOB_NAME = "chat_record_classification";
+
+    private static final String SYSTEM_PROMPT = "你是电力营业厅对话分类助手。根据用户提问判断所属的服务类型，"
+            + "每条提问输出一行，格式为“提问序号:类型序号”，无法判断的类型序号写0，不要输出其他内容。";
+
+    // AI回答中的“提问序号:类型序号”
+    private static final Pattern ANSWER_LINE = Pattern.compile("(\\d+)\\s*[:：]\\s*(\\d+)");
+
+    @Value("${ai.classify.enabled:true}")
+    private boolean enabled;
+
+    // 每页从数据库读取的记录数
+    @Value("${ai.classify.page-size:500}")
+    private int pageSize;
+
+    // 每次提问包含的记录数
+    @Value("${ai.classify.items-per-prompt:20}")
+    private int itemsPerPrompt;
+
+    // 同时进行的上游调用数
+    @Value("${ai.classify.concurrency:4}")
+    private int concurrency;
+
+    // 每条提问截取的最大字符数
+    @Value("${ai.classify.max-message-chars:200}")
+    private int maxMessageChars;
+
+    // 单次运行的最长时间，超出后保存断点，下次继续
+    @Value("${ai.classify.max-run-minutes:300}")
+    private long maxRunMinutes;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private DeepSeekApiClient deepSeekApiClient;
+
+    @Autowired
+    private ServiceTypeRepository serviceTypeRepository;
+
+    @Autowired
+    private KeywordRouter keywordRouter;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    private volatile Progress progress = new Progress(0);
+
+    /**
+     * 每天夜间定时执行
+     */
+    @Scheduled(cron = "${ai.classify.cron:0 0 1 * * *}")
+    public void scheduledRun() {
+        if (enabled) {
+            run(false);
+        }
+    }
+
+    /**
+     * 执行一次归类，已有一次在进行时直接返回
+     * @param restart 是否忽略断点从头开始
+     * @return 是否启动了新的一次
+     */
+    public boolean run(boolean restart) {
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            ensureCheckpointTable();
+            long lastId = restart ? 0 : loadCheckpoint();
+            Progress current = new Progress(lastId);
+            progress = current;
+
+            List<ServiceType> types = serviceTypeRepository.findByIsActiveTrueOrderBySortOrderAsc();
+            if (types.isEmpty()) {
+                current.finishedAt = LocalDateTime.now();
+                return true;
+            }
+            String typeList = typeList(types);
+            long deadline = System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(maxRunMinutes);
+
+            while (System.currentTimeMillis() < deadline) {
+                List<Item> page = jdbcTemplate.query(
+                        "SELECT id, user_message FROM chat_records WHERE service_type_id IS NULL AND id > ? "
+                                + "ORDER BY id LIMIT ?",
+                        (rs, rowNum) -> new Item(rs.getLong("id"), rs.getString("user_message")),
+                        lastId, pageSize);
+                if (page.isEmpty()) {
+                    current.completed = true;
+                    break;
+                }
+
+                PageResult result = classifyPage(page, types, typeList);
+                if (!result.updates.isEmpty()) {
+                    jdbcTemplate.batchUpdate(
+                            "UPDATE chat_records SET service_type_id = ? WHERE id = ? AND service_type_id IS NULL",
+                            result.updates);
+                }
+                current.scanned.addAndGet(result.scanned);
+                current.classified.addAndGet(result.updates.size());
+                current.failedPrompts.addAndGet(result.failedPrompts);
+
+                lastId = result.checkpoint;
+                saveCheckpoint(lastId, result.scanned, result.updates.size());
+                current.lastId = lastId;
+                if (result.failedPrompts > 0) {
+                    current.error = "上游不可用，已在断点处停止";
+                    break;
+                }
+            }
+            current.finishedAt = LocalDateTime.now();
+            log.info("对话记录归类结束: 扫描{}条，归类{}条，断点id={}，全部完成={}",
+                    current.scanned.get(), current.classified.get(), lastId, current.completed);
+        } catch (Exception e) {
+            progress.error = e.getMessage();
+            log.warn("对话记录归类异常: {}", e.getMessage(), e);
+        } finally {
+            running.set(false);
+        }
+        return true;
+    }
+
+    /**
+     * 归类进度
+     */
+    public Map<String, Object> getProgress() {
+        Progress current = progress;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("running", running.get());
+        stats.put("startId", current.startId);
+        stats.put("lastId", current.lastId);
+        stats.put("scanned", current.scanned.get());
+        stats.put("classified", current.classified.get());
+        stats.put("failedPrompts", current.failedPrompts.get());
+        stats.put("completed", current.completed);
+        stats.put("startedAt", current.startedAt);
+        stats.put("finishedAt", current.finishedAt);
+        stats.put("error", current.error);
+        return stats;
+    }
+
+    /**
+     * 一页记录按每次提问的条数分组，限制并发调用AI。
+     * 有分组失败时断点停在第一个失败分组之前，之后的记录下次重新处理（已归类的不会再被读到）
+     */
+    private PageResult classifyPage(List<Item> page, List<ServiceType> types, String typeList) {
+        List<List<Item>> groups = new ArrayList<>();
+        for (int i = 0; i < page.size(); i += itemsPerPrompt) {
+            groups.add(page.subList(i, Math.min(i + itemsPerPrompt, page.size())));
+        }
+
+        List<GroupResult> results = Flux.fromIterable(groups)
+                .flatMapSequential(group -> classifyGroup(group, types, typeList), concurrency)
+                .collectList()
+                .block();
+
+        PageResult pageResult = new PageResult(page.get(page.size() - 1).id);
+        for (GroupResult result : results) {
+            if (result.failed) {
+                pageResult.failedPrompts++;
+                pageResult.checkpoint = Math.min(pageResult.checkpoint, result.group.get(0).id - 1);
+                continue;
+            }
+            pageResult.scanned += result.group.size();
+            pageResult.updates.addAll(result.updates);
+        }
+        return pageResult;
+    }
+
+    private Mono<GroupResult> classifyGroup(List<Item> group, List<ServiceType> types, String typeList) {
+        if (deepSeekApiClient.isMockEnabled()) {
+            return Mono.fromSupplier(() -> new GroupResult(group, parse(routedAnswer(group, types), group, types)));
+        }
+        StringBuilder prompt = new StringBuilder("服务类型：\n").append(typeList).append("用户提问：\n");
+        for (int i = 0; i < group.size(); i++) {
+            prompt.append(i + 1).append(". ").append(truncate(group.get(i).message)).append('\n');
+        }
+        List<Message> messages = List.of(new Message("system", SYSTEM_PROMPT), new Message("user", prompt.toString()));
+
+        return deepSeekApiClient.chat(messages, RequestPriority.LOW)
+                .map(response -> {
+                    if (deepSeekApiClient.isFallbackResponse(response)) {
+                        return GroupResult.failed(group);
+                    }
+                    return new GroupResult(group, parse(deepSeekApiClient.extractAnswer(response), group, types));
+                })
+                .onErrorResume(e -> Mono.just(GroupResult.failed(group)));
+    }
+
+    /**
+     * 按关键词路由给出“提问序号:类型序号”格式的回答，路由到的服务类型不在列表中时类型序号为0
+     */
+    private String routedAnswer(List<Item> group, List<ServiceType> types) {
+        StringBuilder answer = new StringBuilder();
+        for (int i = 0; i < group.size(); i++) {
+            KeywordRouter.Route route = keywordRouter.route(group.get(i).message);
+            int typeIndex = 0;
+            for (int t = 0; route != null && t < types.size(); t++) {
+                if (types.get(t).getName().equals(route.getServiceType())) {
+                    typeIndex = t + 1;
+                    break;
+                }
+            }
+            answer.append(i + 1).append(':').append(typeIndex).append('\n');
+        }
+        return answer.toString();
+    }
+
+    /**
+     * 解析AI回答，返回批量更新的参数（服务类型ID, 记录ID）
+     */
+    private List<Object[]> parse(String answer, List<Item> group, List<ServiceType> types) {
+        List<Object[]> updates = new ArrayList<>();
+        Matcher matcher = ANSWER_LINE.matcher(answer);
+        while (matcher.find()) {
+            int itemIndex = Integer.parseInt(matcher.group(1)) - 1;
+            int typeIndex = Integer.parseInt(matcher.group(2)) - 1;
+            if (itemIndex >= 0 && itemIndex < group.size() && typeIndex >= 0 && typeIndex < types.size()) {
+                updates.add(new Object[]{types.get(typeIndex).getId(), group.get(itemIndex).id});
+            }
+        }
+        return updates;
+    }
+
+    private String typeList(List<ServiceType> types) {
+        StringBuilder list = new StringBuilder();
+        for (int i = 0; i < types.size(); i++) {
+            ServiceType type = types.get(i);
+            list.append(i + 1).append(". ").append(type.getName());
+            if (type.getDescription() != null && !type.getDescription().isBlank()) {
+                list.append("（").append(truncate(type.getDescription())).append("）");
+            }
+            list.append('\n');
+        }
+        return list.toString();
+    }
+
+    private String truncate(String text) {
+        if (text == null) {
+            return "";
+        }
+        String singleLine = text.replace('\n', ' ').trim();
+        return singleLine.length() > maxMessageChars ? singleLine.substring(0, maxMessageChars) : singleLine;
+    }
+
+    private void ensureCheckpointTable() {
+        jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS batch_job_checkpoints ("
+                + "job_name VARCHAR(100) NOT NULL PRIMARY KEY, "
+                + "last_id BIGINT NOT NULL DEFAULT 0, "
+                + "processed BIGINT NOT NULL DEFAULT 0, "
+                + "classified BIGINT NOT NULL DEFAULT 0, "
+                + "updated_at DATETIME)");
+    }
+
+    private long loadCheckpoint() {
+        List<Long> lastIds = jdbcTemplate.queryForList(
+                "SELECT last_id FROM batch_job_checkpoints WHERE job_name = ?", Long.class, JOB_NAME);
+        return lastIds.isEmpty() ? 0 : lastIds.get(0);
+    }
+
+    private void saveCheckpoint(long lastId, long processed, long classified) {
+        jdbcTemplate.update("INSERT INTO batch_job_checkpoints (job_name, last_id, processed, classified, updated_at) "
+                        + "VALUES (?, ?, ?, ?, NOW()) "
+                        + "ON DUPLICATE KEY UPDATE last_id = VALUES(last_id), processed = processed + VALUES(processed), "
+                        + "classified = classified + VALUES(classified), updated_at = VALUES(updated_at)",
+                JOB_NAME, lastId, processed, classified);
+    }
+
+    /**
+     * 待归类的记录
+     */
+    private static class Item {
+        private final long id;
+        private final String message;
+
+        Item(long id, String message) {
+            this.id = id;
+            this.message = message;
+        }
+    }
+
+    /**
+     * 一次提问的结果
+     */
+    private static class GroupResult {
+        private final List<Item> group;
+        private final List<Object[]> updates;
+        private final boolean failed;
+
+        GroupResult(List<Item> group, List<Object[]> updates) {
+            this(group, updates, false);
+        }
+
+        private GroupResult(List<Item> group, List<Object[]> updates, boolean failed) {
+            this.group = group;
+            this.updates = updates;
+            this.failed = failed;
+        }
+
+        static GroupResult failed(List<Item> group) {
+            return new GroupResult(group, List.of(), true);
+        }
+    }
+
+    /**
+     * 一页记录的结果，checkpoint为可以安全保存的断点
+     */
+    private static class PageResult {
+        private final List<Object[]> updates = new ArrayList<>();
+        private long checkpoint;
+        private int scanned;
+        private int failedPrompts;
+
+        PageResult(long checkpoint) {
+            this.checkpoint = checkpoint;
+        }
+    }
+
+    /**
+     * 一次运行的进度
+     */
+    private static class Progress {
+        private final long startId;
+        private volatile long lastId;
+        private final AtomicLong scanned = new AtomicLong();
+        private final AtomicLong classified = new AtomicLong();
+        private final AtomicLong failedPrompts = new AtomicLong();
+        private final LocalDateTime startedAt = LocalDateTime.now();
+        private volatile LocalDateTime finishedAt;
+        private volatile boolean completed;
+        private volatile String error;
+
+        Progress(long startId) {
+            this.startId = startId;
+            this.lastId = startId;
+        }
+    }
+}
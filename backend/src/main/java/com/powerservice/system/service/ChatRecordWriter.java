@@ -0,0 +1,305 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.entity.ChatRecord;
+import com.powerservice.system.util.LatencyTracker;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * 对话记录异步批量写入
+ * 对话记录先进入有界队列，由单独的写入线程攒批后以多行INSERT写入chat_records，回复用户无需等待写库。
+ * 队列满时调用方最多等待offer-timeout-ms，仍无空位则由调用方自己直接写入（背压，不丢记录）；
+ * 关闭时停止接收并写完队列中剩余的记录。
+ * 每条记录提交时分配序号并登记为未写入，INSERT提交后才移出；查询会话历史时在独占锁内查库并合并未写入的记录，
+ * 写入（INSERT及移出）持共享锁，因此每条记录在结果中恰好出现一次
+ */
+@Service
+public class ChatRecordWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(ChatRecordWriter.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private static final String INSERT_PREFIX = "INSERT INTO chat_records (session_id, user_id, user_message, "
+            + "bot_response, service_type_id, response_time, user_satisfaction, created_at) VALUES ";
+
+    private static final String ROW_PLACEHOLDERS = "(?, ?, ?, ?, ?, ?, ?, ?)";
+
+    @Value("${ai.chat-records.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 每条INSERT语句最多写入的记录数
+    @Value("${ai.chat-records.batch-size:200}")
+    private int batchSize;
+
+    // 攒批的最长等待时间：取出第一条记录后最多再等这么久凑满一批
+    @Value("${ai.chat-records.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    // 队列满时调用方等待空位的最长时间，超时后由调用方直接写入
+    @Value("${ai.chat-records.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    // 关闭时等待写入线程写完剩余记录的最长时间
+    @Value("${ai.chat-records.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private BlockingQueue<Pending> queue;
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    // 已提交、INSERT尚未完成的记录，按提交序号排列（含队列中、攒批中和正在写入的）
+    private final ConcurrentSkipListMap<Long, ChatRecord> unwritten = new ConcurrentSkipListMap<>();
+
+    // 写入持共享锁，查询会话历史持独占锁
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+
+    private final LatencyTracker flushLatency = new LatencyTracker(LATENCY_SAMPLES);
+
+    private final LongAdder enqueued = new LongAdder();
+
+    private final LongAdder written = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder callerWrites = new LongAdder();
+
+    private final LongAdder failedRecords = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        writerThread = new Thread(this::runWriter, "chat-record-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * 停止接收新记录，等待写入线程写完队列，超时后在当前线程写入剩余记录
+     */
+    @PreDestroy
+    public void destroy() {
+        // 不中断写入线程，以免打断进行中的数据库写入；写入线程最迟在一个攒批间隔后发现已停止
+        running = false;
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            write(remaining);
+        }
+        log.info("对话记录写入已停止，共写入{}条", written.sum());
+    }
+
+    /**
+     * 提交一条对话记录
+     * @param record 对话记录
+     */
+    public void submit(ChatRecord record) {
+        Pending pending = new Pending(sequence.incrementAndGet(), record);
+        unwritten.put(pending.seq, record);
+        if (running) {
+            try {
+                if (queue.offer(pending, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    enqueued.increment();
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // 队列已满或正在关闭：由调用方直接写入
+        callerWrites.increment();
+        write(List.of(pending));
+    }
+
+    /**
+     * 会话历史：库中的记录加上尚未写入的记录（按提交顺序排在后面）
+     * 查库与读取未写入记录在独占锁内进行，期间没有写入完成，结果不重不漏
+     * @param sessionId 会话ID
+     * @param loader 从库中查询该会话的记录
+     * @return 会话历史
+     */
+    public List<ChatRecord> history(String sessionId, Supplier<List<ChatRecord>> loader) {
+        Lock lock = commitLock.writeLock();
+        lock.lock();
+        try {
+            List<ChatRecord> result = new ArrayList<>(loader.get());
+            for (ChatRecord record : unwritten.values()) {
+                if (sessionId.equals(record.getSessionId())) {
+                    result.add(record);
+                }
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("queueDepth", queue.size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("unwritten", unwritten.size());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("written", written.sum());
+        stats.put("batches", batches.sum());
+        stats.put("callerWrites", callerWrites.sum());
+        stats.put("failedRecords", failedRecords.sum());
+        stats.put("flushP50Millis", flushLatency.percentile(0.5));
+        stats.put("flushP99Millis", flushLatency.percentile(0.99));
+        return stats;
+    }
+
+    private void runWriter() {
+        List<Pending> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Pending first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Pending next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                flushBatch(batch);
+                return;
+            }
+            flushBatch(batch);
+        }
+        // 写完关闭前已入队的记录
+        while (queue.drainTo(batch, batchSize) > 0) {
+            flushBatch(batch);
+        }
+    }
+
+    private void flushBatch(List<Pending> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            write(batch);
+        } finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * 以一条多行INSERT写入，失败时逐条重试以隔离有问题的记录
+     */
+    private void write(List<Pending> records) {
+        long start = System.currentTimeMillis();
+        try {
+            commit(records);
+            written.add(records.size());
+            batches.increment();
+        } catch (Exception e) {
+            log.warn("对话记录批量写入失败，逐条重试: {}", e.getMessage());
+            for (Pending record : records) {
+                try {
+                    commit(List.of(record));
+                    written.increment();
+                } catch (Exception ex) {
+                    unwritten.remove(record.seq);
+                    failedRecords.increment();
+                    log.error("对话记录写入失败, sessionId: {}", record.record.getSessionId(), ex);
+                }
+            }
+        }
+        flushLatency.record(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * 在共享锁内写入并移出未写入集合，查询会话历史时不会看到已入库却仍登记为未写入的记录
+     */
+    private void commit(List<Pending> records) {
+        Lock lock = commitLock.readLock();
+        lock.lock();
+        try {
+            insert(records);
+            for (Pending record : records) {
+                unwritten.remove(record.seq);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void insert(List<Pending> records) {
+        StringBuilder sql = new StringBuilder(INSERT_PREFIX);
+        List<Object> args = new ArrayList<>(records.size() * 8);
+        for (int i = 0; i < records.size(); i++) {
+            ChatRecord record = records.get(i).record;
+            sql.append(i == 0 ? "" : ", ").append(ROW_PLACEHOLDERS);
+            LocalDateTime createdAt = record.getCreatedAt() != null ? record.getCreatedAt() : LocalDateTime.now();
+            args.add(record.getSessionId());
+            args.add(record.getUser() != null ? record.getUser().getId() : null);
+            args.add(record.getUserMessage());
+            args.add(record.getBotResponse() != null ? record.getBotResponse() : "");
+            args.add(record.getServiceType() != null ? record.getServiceType().getId() : null);
+            args.add(record.getResponseTime());
+            args.add(record.getUserSatisfaction());
+            args.add(Timestamp.valueOf(createdAt));
+        }
+        jdbcTemplate.update(sql.toString(), args.toArray());
+    }
+
+    /**
+     * 已提交的记录及其提交序号
+     */
+    private static class Pending {
+        final long seq;
+        final ChatRecord record;
+
+        Pending(long seq, ChatRecord record) {
+            this.seq = seq;
+            this.record = record;
+        }
+    }
+}
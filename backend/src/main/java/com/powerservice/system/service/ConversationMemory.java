@@ -0,0 +1,274 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.Message;
+import com.powerservice.system.util.TokenEstimator;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 多轮对话记忆
+ * 按sessionId保存最近若干轮问答（有界环形缓冲），会话空闲超过TTL后清除。
+ * 每次请求前按token预算从最近一轮往前选取历史，放不下的早期对话压缩为一句摘要
+ * （摘录用户此前的提问），使追问能保留上下文，同时请求长度不会随对话无限增长
+ */
+@Service
+public class ConversationMemory {
+
+    private static final String SUMMARY_PREFIX = "此前对话摘要：用户先后咨询了";
+
+    // 每个会话保留的最大轮数，超出后最早的一轮并入摘要
+    @Value("${ai.conversation.max-turns:10}")
+    private int maxTurns;
+
+    @Value("${ai.conversation.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Value("${ai.conversation.max-sessions:10000}")
+    private int maxSessions;
+
+    // 历史上下文（摘要+历史轮次+当前问题）的token预算
+    @Value("${ai.conversation.context-token-budget:1200}")
+    private int contextTokenBudget;
+
+    // 摘要的最大字符数，超出时保留最近的提问
+    @Value("${ai.conversation.summary-max-chars:200}")
+    private int summaryMaxChars;
+
+    private final Map<String, Conversation> conversations = new ConcurrentHashMap<>();
+
+    private final LongAdder contextBuilds = new LongAdder();
+
+    private final LongAdder contextTokens = new LongAdder();
+
+    private final LongAdder trimmedTurns = new LongAdder();
+
+    private final LongAdder expiredSessions = new LongAdder();
+
+    /**
+     * 会话是否已有历史对话
+     * @param sessionId 会话ID，为空时返回false
+     */
+    public boolean hasHistory(String sessionId) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            return false;
+        }
+        Conversation conversation = conversations.get(sessionId);
+        return conversation != null && !conversation.isExpired(ttlMillis()) && conversation.hasTurns();
+    }
+
+    /**
+     * 构造本次请求携带的历史消息（不含系统提示词和当前问题）
+     * @param sessionId 会话ID
+     * @param prompt 当前问题，其token数计入预算
+     * @return 按时间顺序的历史消息，可能以一条摘要消息开头
+     */
+    public List<Message> buildContext(String sessionId, String prompt) {
+        if (sessionId == null || sessionId.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Conversation conversation = conversations.get(sessionId);
+        if (conversation == null) {
+            return Collections.emptyList();
+        }
+        if (conversation.isExpired(ttlMillis())) {
+            conversations.remove(sessionId, conversation);
+            return Collections.emptyList();
+        }
+
+        List<Message> context = conversation.buildContext(contextTokenBudget - TokenEstimator.estimate(prompt));
+        contextBuilds.increment();
+        contextTokens.add(TokenEstimator.estimate(context));
+        return context;
+    }
+
+    /**
+     * 记录一轮问答
+     * @param sessionId 会话ID，为空时忽略
+     * @param prompt 用户问题
+     * @param answer AI回答
+     */
+    public void append(String sessionId, String prompt, String answer) {
+        if (sessionId == null || sessionId.isEmpty() || answer == null || answer.isEmpty()) {
+            return;
+        }
+        if (!conversations.containsKey(sessionId) && conversations.size() >= maxSessions) {
+            evictOldest();
+        }
+        conversations.computeIfAbsent(sessionId, id -> new Conversation()).append(prompt, answer);
+    }
+
+    /**
+     * 清除会话记忆
+     */
+    public void clear(String sessionId) {
+        conversations.remove(sessionId);
+    }
+
+    /**
+     * 定期清理空闲超时的会话
+     */
+    @Scheduled(fixedDelayString = "${ai.conversation.cleanup-interval-ms:60000}")
+    public void evictExpired() {
+        long ttl = ttlMillis();
+        conversations.entrySet().removeIf(entry -> {
+            boolean expired = entry.getValue().isExpired(ttl);
+            if (expired) {
+                expiredSessions.increment();
+            }
+            return expired;
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        long builds = contextBuilds.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("sessions", conversations.size());
+        stats.put("contextBuilds", builds);
+        stats.put("avgContextTokens", builds == 0 ? 0 : contextTokens.sum() / builds);
+        stats.put("trimmedTurns", trimmedTurns.sum());
+        stats.put("expiredSessions", expiredSessions.sum());
+        return stats;
+    }
+
+    private long ttlMillis() {
+        return TimeUnit.MINUTES.toMillis(ttlMinutes);
+    }
+
+    /**
+     * 会话数达到上限时淘汰最久未访问的会话
+     */
+    private void evictOldest() {
+        String oldestId = null;
+        long oldestAccess = Long.MAX_VALUE;
+        for (Map.Entry<String, Conversation> entry : conversations.entrySet()) {
+            long lastAccess = entry.getValue().lastAccess;
+            if (lastAccess < oldestAccess) {
+                oldestAccess = lastAccess;
+                oldestId = entry.getKey();
+            }
+        }
+        if (oldestId != null) {
+            conversations.remove(oldestId);
+            expiredSessions.increment();
+        }
+    }
+
+    /**
+     * 单个会话的对话记录
+     */
+    private class Conversation {
+
+        // 最近的问答轮次，最早的在队首
+        private final ArrayDeque<Message[]> turns = new ArrayDeque<>();
+
+        // 已移出环形缓冲的早期提问，仅用于生成摘要
+        private final ArrayDeque<String> earlierQuestions = new ArrayDeque<>();
+
+        private volatile long lastAccess = System.currentTimeMillis();
+
+        boolean isExpired(long ttlMillis) {
+            return System.currentTimeMillis() - lastAccess > ttlMillis;
+        }
+
+        synchronized boolean hasTurns() {
+            return !turns.isEmpty();
+        }
+
+        synchronized void append(String prompt, String answer) {
+            lastAccess = System.currentTimeMillis();
+            turns.addLast(new Message[]{new Message("user", prompt), new Message("assistant", answer)});
+            while (turns.size() > maxTurns) {
+                rememberQuestion(turns.pollFirst()[0].getContent());
+            }
+        }
+
+        /**
+         * 从最近一轮往前选取能放进预算的轮次，其余并入摘要；
+         * 加上摘要后超出预算则继续减少轮次
+         */
+        synchronized List<Message> buildContext(int budget) {
+            lastAccess = System.currentTimeMillis();
+            List<Message[]> all = new ArrayList<>(turns);
+
+            int keepFrom = all.size();
+            int used = 0;
+            while (keepFrom > 0) {
+                int cost = turnTokens(all.get(keepFrom - 1));
+                if (used + cost > budget) {
+                    break;
+                }
+                used += cost;
+                keepFrom--;
+            }
+
+            Message summary = summarize(all.subList(0, keepFrom));
+            if (summary != null) {
+                int summaryCost = TokenEstimator.estimate(summary);
+                while (keepFrom < all.size() && used + summaryCost > budget) {
+                    used -= turnTokens(all.get(keepFrom));
+                    keepFrom++;
+                    summary = summarize(all.subList(0, keepFrom));
+                    summaryCost = TokenEstimator.estimate(summary);
+                }
+                if (used + summaryCost > budget) {
+                    summary = null;  // 预算连摘要都放不下
+                }
+            }
+            trimmedTurns.add(keepFrom);
+
+            List<Message> context = new ArrayList<>();
+            if (summary != null) {
+                context.add(summary);
+            }
+            for (int i = keepFrom; i < all.size(); i++) {
+                Collections.addAll(context, all.get(i));
+            }
+            return context;
+        }
+
+        /**
+         * 抽取式摘要：依次列出用户此前的提问，超长时保留最近的
+         */
+        private Message summarize(List<Message[]> droppedTurns) {
+            if (earlierQuestions.isEmpty() && droppedTurns.isEmpty()) {
+                return null;
+            }
+            List<String> questions = new ArrayList<>(earlierQuestions);
+            for (Message[] turn : droppedTurns) {
+                questions.add(turn[0].getContent());
+            }
+            String joined = String.join("；", questions);
+            if (joined.length() > summaryMaxChars) {
+                joined = "…" + joined.substring(joined.length() - summaryMaxChars);
+            }
+            return new Message("system", SUMMARY_PREFIX + joined);
+        }
+
+        private void rememberQuestion(String question) {
+            earlierQuestions.addLast(question);
+            // 只需保留足够生成摘要的提问
+            int chars = 0;
+            for (String q : earlierQuestions) {
+                chars += q.length();
+            }
+            while (earlierQuestions.size() > 1 && chars > summaryMaxChars) {
+                chars -= earlierQuestions.pollFirst().length();
+            }
+        }
+
+        private int turnTokens(Message[] turn) {
+            return TokenEstimator.estimate(turn[0]) + TokenEstimator.estimate(turn[1]);
+        }
+    }
+}
@@ -0,0 +1,402 @@
+package com.powerservice.system.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.powerservice.system.util.AhoCorasick;
+import com.powerservice.system.util.LatencyTracker;
+import com.powerservice.system.util.RequestPriority;
+import com.powerservice.system.util.TextNormalizer;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 关键词路由
+ * 按关键词把用户提问路由到服务分类及对应的引导回复，并据此确定调用上游的优先级。
+ * 规则表（routing-rules.json）中的全部关键词编译成一个Aho-Corasick自动机，对归一化后的提问扫描一遍即得到
+ * 所有命中的规则，耗时不随规则数量增长；多条规则同时命中时按优先级、命中关键词总长度、规则顺序依次取舍。
+ * 规则文件修改后定时重新加载并整体替换，无需重启；新规则有误时保留原规则
+ */
+@Component
+public class KeywordRouter {
+
+    private static final Logger log = LoggerFactory.getLogger(KeywordRouter.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    // 规则文件位置，可用file:前缀指向外部文件以便在线修改
+    @Value("${ai.routing.rules-location:classpath:routing-rules.json}")
+    private String rulesLocation;
+
+    @Autowired
+    private ResourceLoader resourceLoader;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // 当前生效的规则，整体替换，路由无需加锁
+    private volatile RuleSet ruleSet;
+
+    // 已加载规则文件的修改时间，用于判断是否需要重新加载
+    private long loadedModified;
+
+    private LocalDateTime loadedAt;
+
+    private String lastError;
+
+    private final LatencyTracker routeLatency = new LatencyTracker(LATENCY_SAMPLES);
+
+    private final LongAdder routes = new LongAdder();
+
+    private final LongAdder reloads = new LongAdder();
+
+    private final LongAdder reloadFailures = new LongAdder();
+
+    /**
+     * 启动时加载规则，规则文件有误时启动失败
+     */
+    @PostConstruct
+    public void init() {
+        if (!reload()) {
+            throw new IllegalStateException("路由规则加载失败: " + lastError);
+        }
+    }
+
+    /**
+     * 定时检查规则文件，修改时间变化后重新加载
+     */
+    @Scheduled(fixedDelayString = "${ai.routing.reload-interval-ms:10000}",
+            initialDelayString = "${ai.routing.reload-interval-ms:10000}")
+    public void reloadIfModified() {
+        long modified;
+        try {
+            modified = resourceLoader.getResource(rulesLocation).lastModified();
+        } catch (IOException e) {
+            // 打包在jar内的规则无法取得修改时间，不需要检查
+            return;
+        }
+        synchronized (this) {
+            if (modified == loadedModified) {
+                return;
+            }
+        }
+        reload();
+    }
+
+    /**
+     * 重新加载规则文件并编译，失败时保留当前规则
+     * @return 是否加载成功
+     */
+    public synchronized boolean reload() {
+        Resource resource = resourceLoader.getResource(rulesLocation);
+        try {
+            long modified = lastModified(resource);
+            RuleSet loaded;
+            try (InputStream in = resource.getInputStream()) {
+                loaded = compile(objectMapper.readTree(in));
+            }
+            ruleSet = loaded;
+            loadedModified = modified;
+            loadedAt = LocalDateTime.now();
+            lastError = null;
+            reloads.increment();
+            log.info("路由规则已加载: {}, 规则数: {}, 关键词数: {}",
+                    rulesLocation, loaded.rules.length, loaded.automaton.getPatternCount());
+            return true;
+        } catch (IOException | IllegalArgumentException e) {
+            lastError = e.getMessage();
+            reloadFailures.increment();
+            log.error("路由规则加载失败，保留当前规则: {}", rulesLocation, e);
+            return false;
+        }
+    }
+
+    /**
+     * 按关键词路由用户提问
+     * @param userMessage 用户提问
+     * @return 匹配到的路由，没有匹配时返回null
+     */
+    public Route route(String userMessage) {
+        Match match = match(userMessage);
+        return match != null ? match.getRoute() : null;
+    }
+
+    /**
+     * 按关键词路由用户提问，并给出命中关键词的长度
+     * @param userMessage 用户提问
+     * @return 匹配结果，没有匹配时返回null
+     */
+    public Match match(String userMessage) {
+        Scan scan = scan(userMessage);
+        return scan.route != null
+                ? new Match(scan.route, scan.matchedLength, scan.textLength)
+                : null;
+    }
+
+    /**
+     * 按关键词路由判断提问调用上游的优先级
+     * 停电、触电等安全和抢修类问题为紧急；能路由到服务分类的为普通；其余（闲聊、无法理解的问题）为低
+     * @param userMessage 用户提问
+     * @return 上游调用优先级
+     */
+    public RequestPriority classifyPriority(String userMessage) {
+        Scan scan = scan(userMessage);
+        if (scan.urgentKeyword || (scan.route != null && scan.route.urgent)) {
+            return RequestPriority.URGENT;
+        }
+        return scan.route != null ? RequestPriority.NORMAL : RequestPriority.LOW;
+    }
+
+    /**
+     * 路由统计：规则数、关键词数、自动机状态数、加载情况及路由耗时
+     */
+    public Map<String, Object> getStats() {
+        RuleSet current = ruleSet;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("rulesLocation", rulesLocation);
+        stats.put("rules", current.rules.length);
+        stats.put("keywords", current.automaton.getPatternCount());
+        stats.put("states", current.automaton.getStateCount());
+        stats.put("routes", routes.sum());
+        stats.put("reloads", reloads.sum());
+        stats.put("reloadFailures", reloadFailures.sum());
+        synchronized (this) {
+            stats.put("loadedAt", loadedAt != null ? loadedAt.toString() : null);
+            stats.put("lastError", lastError);
+        }
+        stats.put("routeP50Micros", routeLatency.percentile(0.5));
+        stats.put("routeP99Micros", routeLatency.percentile(0.99));
+        return stats;
+    }
+
+    private Scan scan(String userMessage) {
+        String text = TextNormalizer.normalize(userMessage);
+        Scan scan = new Scan(text.length());
+        if (text.isEmpty()) {
+            return scan;
+        }
+        long start = System.nanoTime();
+        RuleSet current = ruleSet;
+        // 同一关键词多次出现只计一次
+        boolean[] seen = new boolean[current.automaton.getPatternCount()];
+        int[] matchedLengths = new int[current.rules.length];
+        current.automaton.match(text, (pattern, end) -> {
+            if (seen[pattern]) {
+                return;
+            }
+            seen[pattern] = true;
+            if (current.urgentKeywords[pattern]) {
+                scan.urgentKeyword = true;
+            }
+            for (int rule : current.keywordRules[pattern]) {
+                matchedLengths[rule] += current.keywords[pattern].length();
+            }
+        });
+        int best = -1;
+        for (int i = 0; i < matchedLengths.length; i++) {
+            if (matchedLengths[i] == 0) {
+                continue;
+            }
+            if (best < 0 || current.rules[i].priority > current.rules[best].priority
+                    || (current.rules[i].priority == current.rules[best].priority
+                    && matchedLengths[i] > matchedLengths[best])) {
+                best = i;
+            }
+        }
+        if (best >= 0) {
+            scan.route = current.rules[best];
+            scan.matchedLength = matchedLengths[best];
+        }
+        routes.increment();
+        routeLatency.record((System.nanoTime() - start) / 1_000);
+        return scan;
+    }
+
+    private RuleSet compile(JsonNode root) {
+        JsonNode rulesNode = root.path("rules");
+        if (!rulesNode.isArray() || rulesNode.isEmpty()) {
+            throw new IllegalArgumentException("规则文件缺少rules");
+        }
+        // 关键词去重编号，同一关键词可属于多条规则
+        Map<String, Integer> keywordIds = new LinkedHashMap<>();
+        Map<Integer, List<Integer>> keywordRules = new HashMap<>();
+        List<Integer> urgent = new ArrayList<>();
+
+        Route[] rules = new Route[rulesNode.size()];
+        for (int i = 0; i < rules.length; i++) {
+            JsonNode node = rulesNode.get(i);
+            String response = node.path("response").asText("");
+            if (response.isBlank()) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条规则缺少response");
+            }
+            JsonNode keywordsNode = node.path("keywords");
+            List<String> keywords = new ArrayList<>();
+            for (JsonNode keyword : keywordsNode) {
+                String normalized = TextNormalizer.normalize(keyword.asText());
+                if (!normalized.isEmpty()) {
+                    keywords.add(normalized);
+                }
+            }
+            if (keywords.isEmpty()) {
+                throw new IllegalArgumentException("第" + (i + 1) + "条规则缺少keywords");
+            }
+            JsonNode serviceType = node.path("serviceType");
+            rules[i] = new Route(serviceType.isTextual() ? serviceType.asText() : null, response,
+                    node.path("needMoreInfo").asBoolean(false), node.path("urgent").asBoolean(false),
+                    node.path("priority").asInt(0));
+            for (String keyword : keywords) {
+                int id = keywordIds.computeIfAbsent(keyword, k -> keywordIds.size());
+                List<Integer> owners = keywordRules.computeIfAbsent(id, k -> new ArrayList<>());
+                if (!owners.contains(i)) {
+                    owners.add(i);
+                }
+            }
+        }
+        for (JsonNode keyword : root.path("urgentKeywords")) {
+            String normalized = TextNormalizer.normalize(keyword.asText());
+            if (!normalized.isEmpty()) {
+                urgent.add(keywordIds.computeIfAbsent(normalized, k -> keywordIds.size()));
+            }
+        }
+
+        String[] keywords = keywordIds.keySet().toArray(new String[0]);
+        int[][] rulesByKeyword = new int[keywords.length][];
+        boolean[] urgentKeywords = new boolean[keywords.length];
+        for (int id = 0; id < keywords.length; id++) {
+            rulesByKeyword[id] = keywordRules.getOrDefault(id, List.of()).stream().mapToInt(Integer::intValue).toArray();
+        }
+        for (int id : urgent) {
+            urgentKeywords[id] = true;
+        }
+        return new RuleSet(AhoCorasick.compile(List.of(keywords)), keywords, rulesByKeyword, urgentKeywords, rules);
+    }
+
+    private static long lastModified(Resource resource) {
+        try {
+            return resource.lastModified();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * 编译后的规则：自动机的模式序号即关键词序号
+     */
+    private static class RuleSet {
+        final AhoCorasick automaton;
+        final String[] keywords;
+        // 按关键词序号：包含该关键词的规则
+        final int[][] keywordRules;
+        // 按关键词序号：是否为紧急关键词
+        final boolean[] urgentKeywords;
+        final Route[] rules;
+
+        RuleSet(AhoCorasick automaton, String[] keywords, int[][] keywordRules, boolean[] urgentKeywords,
+                Route[] rules) {
+            this.automaton = automaton;
+            this.keywords = keywords;
+            this.keywordRules = keywordRules;
+            this.urgentKeywords = urgentKeywords;
+            this.rules = rules;
+        }
+    }
+
+    /**
+     * 一次扫描的结果
+     */
+    private static class Scan {
+        final int textLength;
+        Route route;
+        int matchedLength;
+        boolean urgentKeyword;
+
+        Scan(int textLength) {
+            this.textLength = textLength;
+        }
+    }
+
+    /**
+     * 路由匹配结果
+     */
+    public static class Match {
+        private final Route route;
+        private final int matchedLength;
+        private final int textLength;
+
+        Match(Route route, int matchedLength, int textLength) {
+            this.route = route;
+            this.matchedLength = matchedLength;
+            this.textLength = textLength;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        // 提问（归一化后）中出现的该规则关键词的总长度
+        public int getMatchedLength() {
+            return matchedLength;
+        }
+
+        // 归一化后的提问长度
+        public int getTextLength() {
+            return textLength;
+        }
+    }
+
+    /**
+     * 一条路由规则：任一关键词出现即匹配
+     */
+    public static class Route {
+        private final String serviceType;
+        private final String response;
+        private final boolean needMoreInfo;
+        private final boolean urgent;
+        private final int priority;
+
+        Route(String serviceType, String response, boolean needMoreInfo, boolean urgent, int priority) {
+            this.serviceType = serviceType;
+            this.response = response;
+            this.needMoreInfo = needMoreInfo;
+            this.urgent = urgent;
+            this.priority = priority;
+        }
+
+        // 服务分类名称，可为null
+        public String getServiceType() {
+            return serviceType;
+        }
+
+        public String getResponse() {
+            return response;
+        }
+
+        public boolean isNeedMoreInfo() {
+            return needMoreInfo;
+        }
+
+        public boolean isUrgent() {
+            return urgent;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.powerservice.system.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * 知识库阶段
+ * 从内存倒排索引按BM25取出候选条目，取与提问最匹配的一条；
+ * 置信度为提问与条目问题互相覆盖的二元组比例的几何平均，问题相同为1
+ */
+@Component
+@Order(2)
+public class KnowledgeBaseAnswerStage implements AnswerStage {
+
+    // 从BM25排名靠前的条目中挑选置信度最高的
+    private static final int CANDIDATES = 5;
+
+    @Value("${ai.pipeline.knowledge.min-confidence:0.5}")
+    private double minConfidence;
+
+    @Autowired
+    private KnowledgeRetriever knowledgeRetriever;
+
+    @Autowired
+    private KnowledgeHitCounter knowledgeHitCounter;
+
+    @Override
+    public String getName() {
+        return "knowledge";
+    }
+
+    @Override
+    public String getLabel() {
+        return "知识库";
+    }
+
+    @Override
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+
+    @Override
+    public Candidate tryAnswer(String prompt) {
+        List<KnowledgeRetriever.Document> matches = knowledgeRetriever.search(prompt, CANDIDATES);
+        if (matches.isEmpty()) {
+            return null;
+        }
+        KnowledgeRetriever.Document best = matches.get(0);
+        for (KnowledgeRetriever.Document document : matches) {
+            if (document.getConfidence() > best.getConfidence()) {
+                best = document;
+            }
+        }
+        String serviceType = best.getServiceType() != null ? best.getServiceType().getName() : null;
+        return new Candidate(this, best.getAnswer(), best.getConfidence(), serviceType, false,
+                best.getId(), best.getServiceType());
+    }
+
+    /**
+     * 增加命中次数，由KnowledgeHitCounter定时批量写入数据库
+     */
+    @Override
+    public void onAccepted(Candidate candidate) {
+        knowledgeHitCounter.record(candidate.getKnowledgeBaseId());
+    }
+}
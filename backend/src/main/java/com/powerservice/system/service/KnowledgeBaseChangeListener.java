@@ -0,0 +1,44 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.entity.KnowledgeBase;
+import jakarta.persistence.PostPersist;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.stereotype.Component;
+
+/**
+ * 知识库条目变更监听
+ * 条目经JPA新增、修改或删除时发布变更事件，由知识库检索在事务提交后增量刷新索引；
+ * 直接执行SQL的修改不经过这里，仍由定时刷新发现
+ */
+@Component
+public class KnowledgeBaseChangeListener {
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @PostPersist
+    @PostUpdate
+    @PostRemove
+    public void onChange(KnowledgeBase knowledgeBase) {
+        eventPublisher.publishEvent(new ChangedEvent(knowledgeBase.getId()));
+    }
+
+    /**
+     * 知识库条目已变更
+     */
+    public static class ChangedEvent {
+
+        private final Long knowledgeBaseId;
+
+        ChangedEvent(Long knowledgeBaseId) {
+            this.knowledgeBaseId = knowledgeBaseId;
+        }
+
+        public Long getKnowledgeBaseId() {
+            return knowledgeBaseId;
+        }
+    }
+}
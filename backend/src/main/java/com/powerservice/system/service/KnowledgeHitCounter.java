@@ -0,0 +1,138 @@
+package com.powerservice.system.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 知识库命中次数统计
+ * 命中时只在本地按条目累加，定时以一次批量的hit_count = hit_count + ?写入数据库，
+ * 回答请求不再等待数据库写入，也不会因并发读改写丢失计数；关闭时写入剩余增量。
+ * 批量更新在一个事务中执行，失败时整批回滚，保留的增量重试时不会重复累加
+ */
+@Service
+public class KnowledgeHitCounter {
+
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeHitCounter.class);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    // 尚未写入数据库的命中次数，按知识库条目ID
+    private final Map<Long, LongAdder> pending = new ConcurrentHashMap<>();
+
+    // 最早一次未写入的命中发生的时间，没有未写入的命中时为0
+    private final AtomicLong oldestPendingAt = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder flushes = new LongAdder();
+
+    private final LongAdder flushedRows = new LongAdder();
+
+    private final LongAdder flushFailures = new LongAdder();
+
+    private volatile long lastFlushAt;
+
+    private volatile long lastFlushMillis;
+
+    // 最近一次写入时被写入的命中距发生时的最长延迟
+    private volatile long lastFlushLagMillis;
+
+    /**
+     * 记录一次命中
+     * @param knowledgeBaseId 知识库条目ID
+     */
+    public void record(Long knowledgeBaseId) {
+        if (knowledgeBaseId == null) {
+            return;
+        }
+        pending.computeIfAbsent(knowledgeBaseId, id -> new LongAdder()).increment();
+        oldestPendingAt.compareAndSet(0, System.currentTimeMillis());
+        hits.increment();
+    }
+
+    /**
+     * 定期将累计的命中次数批量写入数据库
+     */
+    @Scheduled(fixedDelayString = "${ai.kb-hits.flush-interval-ms:5000}")
+    public synchronized void flush() {
+        long since = oldestPendingAt.getAndSet(0);
+        if (since == 0) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<Long, LongAdder> entry : pending.entrySet()) {
+            long delta = entry.getValue().sumThenReset();
+            if (delta > 0) {
+                batch.add(new Object[]{delta, entry.getKey()});
+            }
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "UPDATE knowledge_base SET hit_count = hit_count + ? WHERE id = ?", batch));
+        } catch (Exception e) {
+            // 整批已回滚，保留增量下次重试
+            for (Object[] row : batch) {
+                pending.computeIfAbsent((Long) row[1], id -> new LongAdder()).add((Long) row[0]);
+            }
+            oldestPendingAt.accumulateAndGet(since, (current, given) -> current == 0 ? given : Math.min(current, given));
+            flushFailures.increment();
+            log.warn("知识库命中次数写入失败: {}", e.getMessage());
+            return;
+        }
+        long now = System.currentTimeMillis();
+        lastFlushAt = now;
+        lastFlushMillis = now - start;
+        lastFlushLagMillis = now - since;
+        flushes.increment();
+        flushedRows.add(batch.size());
+    }
+
+    /**
+     * 关闭时写入剩余的命中次数
+     */
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    public Map<String, Object> getStats() {
+        long oldest = oldestPendingAt.get();
+        long pendingHits = 0;
+        for (LongAdder adder : pending.values()) {
+            pendingHits += adder.sum();
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("hits", hits.sum());
+        stats.put("pendingHits", pendingHits);
+        stats.put("pendingLagMillis", oldest == 0 ? 0 : System.currentTimeMillis() - oldest);
+        stats.put("flushes", flushes.sum());
+        stats.put("flushedRows", flushedRows.sum());
+        stats.put("flushFailures", flushFailures.sum());
+        stats.put("lastFlushAt", lastFlushAt);
+        stats.put("lastFlushMillis", lastFlushMillis);
+        stats.put("lastFlushLagMillis", lastFlushLagMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,193 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.LatencyTracker;
+import com.powerservice.system.util.Message;
+import com.powerservice.system.util.MinHash;
+import com.powerservice.system.util.TextNormalizer;
+import com.powerservice.system.util.TokenEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 知识库参考资料提示词
+ * 调用大模型前检索与提问最相关的知识库条目，去掉答案重复或相近的条目，按token预算截断后
+ * 作为一条系统消息放在对话历史之前，让模型依据营业厅自己的资料简短作答，减少生成的token
+ */
+@Service
+public class KnowledgePromptBuilder {
+
+    private static final Logger log = LoggerFactory.getLogger(KnowledgePromptBuilder.class);
+
+    private static final String CONTEXT_HEADER = "以下是营业厅知识库中与用户问题相关的内容，请优先依据这些内容回答；"
+            + "资料能直接回答的，用一两句话说明即可，不要展开：\n";
+
+    // 答案的Jaccard相似度不低于该值视为重复条目
+    private static final double DUPLICATE_SIMILARITY = 0.8;
+
+    // 剩余预算不足该token数时不再截断放入新条目
+    private static final int MIN_ENTRY_TOKENS = 20;
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    @Value("${ai.rag.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ai.rag.top-k:3}")
+    private int topK;
+
+    // 参考资料（含说明）的token上限
+    @Value("${ai.rag.token-budget:300}")
+    private int tokenBudget;
+
+    @Autowired
+    private KnowledgeRetriever knowledgeRetriever;
+
+    private final LatencyTracker retrievalLatency = new LatencyTracker(LATENCY_SAMPLES);
+
+    private final LongAdder builds = new LongAdder();
+
+    private final LongAdder withContext = new LongAdder();
+
+    private final LongAdder entriesAdded = new LongAdder();
+
+    private final LongAdder duplicatesSkipped = new LongAdder();
+
+    private final LongAdder truncated = new LongAdder();
+
+    private final LongAdder tokensAdded = new LongAdder();
+
+    /**
+     * 在对话历史之前加上参考资料
+     * @param prompt 用户提问
+     * @param history 此前的对话消息，按时间顺序
+     * @return 加上参考资料的历史消息；没有相关条目时原样返回
+     */
+    public List<Message> withKnowledge(String prompt, List<Message> history) {
+        Message context = buildContext(prompt);
+        if (context == null) {
+            return history;
+        }
+        List<Message> messages = new ArrayList<>(history.size() + 1);
+        messages.add(context);
+        messages.addAll(history);
+        return messages;
+    }
+
+    /**
+     * 构造参考资料系统消息
+     * @param prompt 用户提问
+     * @return 系统消息，未启用、没有相关条目或检索失败时返回null
+     */
+    public Message buildContext(String prompt) {
+        if (!enabled) {
+            return null;
+        }
+        builds.increment();
+        long start = System.nanoTime();
+        List<KnowledgeRetriever.Document> documents;
+        try {
+            documents = knowledgeRetriever.search(prompt, topK);
+        } catch (Exception e) {
+            // 检索失败时不带参考资料调用模型
+            log.warn("知识库检索失败: {}", e.getMessage());
+            return null;
+        } finally {
+            retrievalLatency.record((System.nanoTime() - start) / 1_000);
+        }
+        if (documents.isEmpty()) {
+            return null;
+        }
+
+        StringBuilder content = new StringBuilder(CONTEXT_HEADER);
+        int remaining = tokenBudget - TokenEstimator.estimate(CONTEXT_HEADER);
+        List<int[]> included = new ArrayList<>(documents.size());
+        int entries = 0;
+        for (KnowledgeRetriever.Document document : documents) {
+            int[] features = MinHash.shingles(TextNormalizer.normalize(document.getAnswer()));
+            if (isDuplicate(features, included)) {
+                duplicatesSkipped.increment();
+                continue;
+            }
+            String entry = "问：" + document.getQuestion() + "\n答：" + document.getAnswer() + "\n";
+            int tokens = TokenEstimator.estimate(entry);
+            if (tokens > remaining) {
+                if (remaining < MIN_ENTRY_TOKENS) {
+                    break;
+                }
+                entry = truncate(entry, remaining);
+                tokens = TokenEstimator.estimate(entry);
+                truncated.increment();
+            }
+            content.append(entry);
+            remaining -= tokens;
+            included.add(features);
+            entries++;
+        }
+        if (entries == 0) {
+            return null;
+        }
+
+        withContext.increment();
+        entriesAdded.add(entries);
+        Message message = new Message("system", content.toString());
+        tokensAdded.add(TokenEstimator.estimate(message));
+        return message;
+    }
+
+    private static boolean isDuplicate(int[] features, List<int[]> included) {
+        for (int[] other : included) {
+            if (MinHash.jaccard(features, other) >= DUPLICATE_SIMILARITY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从末尾截断到不超过给定的token数，末尾加省略号
+     */
+    private static String truncate(String entry, int maxTokens) {
+        // 二分查找不超过预算的最长前缀
+        int low = 0;
+        int high = entry.length();
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (TokenEstimator.estimate(entry.substring(0, mid)) + 1 <= maxTokens) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return entry.substring(0, low) + "…\n";
+    }
+
+    /**
+     * 检索耗时分位数（微秒）、带上参考资料的比例及平均增加的token数
+     */
+    public Map<String, Object> getStats() {
+        long buildCount = builds.sum();
+        long contextCount = withContext.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("builds", buildCount);
+        stats.put("withContext", contextCount);
+        stats.put("contextRate", buildCount > 0 ? (double) contextCount / buildCount : 0);
+        stats.put("entriesAdded", entriesAdded.sum());
+        stats.put("duplicatesSkipped", duplicatesSkipped.sum());
+        stats.put("truncated", truncated.sum());
+        stats.put("tokensAdded", tokensAdded.sum());
+        stats.put("avgTokensAdded", contextCount > 0 ? tokensAdded.sum() / contextCount : 0);
+        stats.put("retrievalP50Micros", retrievalLatency.percentile(0.5));
+        stats.put("retrievalP99Micros", retrievalLatency.percentile(0.99));
+        return stats;
+    }
+}
@@ -0,0 +1,381 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.entity.KnowledgeBase;
+import com.powerservice.system.entity.ServiceType;
+import com.powerservice.system.repository.KnowledgeBaseRepository;
+import com.powerservice.system.util.LatencyTracker;
+import com.powerservice.system.util.MinHash;
+import com.powerservice.system.util.NgramBm25Index;
+import com.powerservice.system.util.TextNormalizer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 知识库检索
+ * 启用的知识库条目在内存中建立字符二元组/三元组倒排索引，按BM25（问题、关键词、答案分字段加权）排序，
+ * 检索不访问数据库。索引定时增量刷新：只重新分词更新时间晚于上次同步的条目，按启用条目ID列表剔除已删除
+ * 或停用的条目，再由各条目已有的词频重建倒排表，整体替换快照，检索无需加锁。
+ * 经JPA的新增、修改、删除在事务提交后立即增量刷新；定时刷新只用于发现直接执行SQL的修改，
+ * 直接改库未更新updated_at的修改由定期全量重建兜底
+ */
+@Service
+public class KnowledgeRetriever {
+
+    private static final Logger log = LoggerFactory.getLogger(KnowledgeRetriever.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    // 每个查询最多从索引取出的候选数，再按覆盖率过滤
+    private static final int MAX_CANDIDATES = 20;
+
+    // 提问的二元组至少有这么大比例出现在条目中才返回
+    @Value("${ai.rag.min-score:0.3}")
+    private double minScore;
+
+    @Value("${ai.kb-index.question-weight:3.0}")
+    private float questionWeight;
+
+    @Value("${ai.kb-index.keywords-weight:2.0}")
+    private float keywordsWeight;
+
+    @Value("${ai.kb-index.answer-weight:1.0}")
+    private float answerWeight;
+
+    @Value("${ai.kb-index.full-rebuild-minutes:60}")
+    private long fullRebuildMinutes;
+
+    @Autowired
+    private KnowledgeBaseRepository knowledgeBaseRepository;
+
+    // 已分词的条目，只由刷新线程在锁内修改
+    private final Map<Long, Document> documents = new HashMap<>();
+
+    // 检索使用的快照，整体替换；首次使用时加载
+    private volatile Snapshot snapshot;
+
+    // 已同步的最大更新时间，下次只读取不早于该时间的条目
+    private LocalDateTime syncedUpTo;
+
+    private long lastFullRebuildAt;
+
+    private final LatencyTracker searchLatency = new LatencyTracker(LATENCY_SAMPLES);
+
+    private final LongAdder searches = new LongAdder();
+
+    private final LongAdder incrementalRefreshes = new LongAdder();
+
+    private final LongAdder fullRebuilds = new LongAdder();
+
+    private final LongAdder reindexedDocuments = new LongAdder();
+
+    private final LongAdder changeRefreshes = new LongAdder();
+
+    /**
+     * 检索与提问最相关的条目
+     * @param prompt 用户提问
+     * @param limit 最多返回的条数
+     * @return 按BM25得分从高到低排列的条目
+     */
+    public List<Document> search(String prompt, int limit) {
+        long start = System.nanoTime();
+        searches.increment();
+        String normalized = TextNormalizer.normalize(prompt);
+        Snapshot current = snapshot();
+        NgramBm25Index.Hits hits = current.index.search(NgramBm25Index.queryTerms(normalized),
+                Math.max(limit, MAX_CANDIDATES));
+        List<Document> matches = new ArrayList<>(Math.min(limit, hits.size()));
+        if (hits.size() > 0) {
+            int[] query = MinHash.bigrams(MinHash.shingles(normalized));
+            for (int rank = 0; rank < hits.size() && matches.size() < limit; rank++) {
+                Document document = current.documents[hits.doc(rank)];
+                double coverage = query.length > 0
+                        ? (double) MinHash.intersection(query, document.features) / query.length
+                        : 0;
+                if (coverage >= minScore) {
+                    matches.add(document.withScore(hits.score(rank), coverage, confidence(query, document)));
+                }
+            }
+        }
+        searchLatency.record((System.nanoTime() - start) / 1_000);
+        return matches;
+    }
+
+    /**
+     * 定时增量刷新索引
+     */
+    @Scheduled(fixedDelayString = "${ai.rag.refresh-interval-ms:60000}",
+            initialDelayString = "${ai.rag.refresh-interval-ms:60000}")
+    public void refresh() {
+        try {
+            synchronized (this) {
+                if (snapshot == null || System.currentTimeMillis() - lastFullRebuildAt
+                        >= TimeUnit.MINUTES.toMillis(fullRebuildMinutes)) {
+                    rebuildFully();
+                } else {
+                    refreshIncrementally();
+                }
+            }
+        } catch (Exception e) {
+            log.warn("知识库索引刷新失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 知识库条目变更的事务提交后增量刷新，修改立即可被检索到
+     */
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onKnowledgeBaseChanged(KnowledgeBaseChangeListener.ChangedEvent event) {
+        // 索引尚未加载时无需刷新，首次检索会读取最新数据
+        if (snapshot == null) {
+            return;
+        }
+        changeRefreshes.increment();
+        refresh();
+    }
+
+    private Snapshot snapshot() {
+        Snapshot current = snapshot;
+        if (current == null) {
+            synchronized (this) {
+                current = snapshot;
+                if (current == null) {
+                    rebuildFully();
+                    current = snapshot;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 全量重建，调用方需持有锁
+     */
+    private void rebuildFully() {
+        LocalDateTime started = LocalDateTime.now();
+        documents.clear();
+        LocalDateTime maxUpdatedAt = null;
+        for (KnowledgeBase kb : knowledgeBaseRepository.findAll()) {
+            if (Boolean.TRUE.equals(kb.getIsActive())) {
+                documents.put(kb.getId(), analyze(kb));
+            }
+            maxUpdatedAt = later(maxUpdatedAt, kb.getUpdatedAt());
+        }
+        syncedUpTo = maxUpdatedAt != null ? maxUpdatedAt : started;
+        lastFullRebuildAt = System.currentTimeMillis();
+        fullRebuilds.increment();
+        reindexedDocuments.add(documents.size());
+        publish();
+    }
+
+    /**
+     * 增量刷新：重新分词有更新的条目，剔除已删除或停用的条目，有变化时才重建倒排表，调用方需持有锁
+     */
+    private void refreshIncrementally() {
+        boolean changed = false;
+        LocalDateTime maxUpdatedAt = syncedUpTo;
+        for (KnowledgeBase kb : knowledgeBaseRepository.findByUpdatedAtGreaterThanEqual(syncedUpTo)) {
+            maxUpdatedAt = later(maxUpdatedAt, kb.getUpdatedAt());
+            if (!Boolean.TRUE.equals(kb.getIsActive())) {
+                changed |= documents.remove(kb.getId()) != null;
+                continue;
+            }
+            Document document = analyze(kb);
+            Document previous = documents.put(kb.getId(), document);
+            // 只有命中次数等非检索字段变化时不必重建
+            if (previous == null || !previous.sameContent(document)) {
+                changed = true;
+                reindexedDocuments.increment();
+            }
+        }
+        syncedUpTo = maxUpdatedAt;
+
+        Set<Long> activeIds = new HashSet<>(knowledgeBaseRepository.findActiveIds());
+        changed |= documents.keySet().removeIf(id -> !activeIds.contains(id));
+
+        if (changed) {
+            incrementalRefreshes.increment();
+            publish();
+        }
+    }
+
+    /**
+     * 由各条目已有的词频重建倒排表并替换快照，调用方需持有锁
+     */
+    private void publish() {
+        NgramBm25Index.Builder builder = new NgramBm25Index.Builder();
+        Document[] ordered = new Document[documents.size()];
+        for (Document document : documents.values()) {
+            ordered[builder.add(document.termFreqs, document.length)] = document;
+        }
+        snapshot = new Snapshot(builder.build(), ordered);
+    }
+
+    /**
+     * 对条目分词：三个字段的词频和长度按字段权重加权，另取问题和关键词的二元组用于计算覆盖率
+     */
+    private Document analyze(KnowledgeBase kb) {
+        String question = TextNormalizer.normalize(kb.getQuestion());
+        String keywords = kb.getKeywords() != null ? TextNormalizer.normalize(kb.getKeywords()) : "";
+        String answer = TextNormalizer.normalize(kb.getAnswer());
+        Map<Long, Float> termFreqs = new HashMap<>();
+        NgramBm25Index.countTerms(question, questionWeight, termFreqs);
+        NgramBm25Index.countTerms(keywords, keywordsWeight, termFreqs);
+        NgramBm25Index.countTerms(answer, answerWeight, termFreqs);
+        float length = question.length() * questionWeight + keywords.length() * keywordsWeight
+                + answer.length() * answerWeight;
+        return new Document(kb.getId(), kb.getQuestion(), kb.getAnswer(), kb.getKeywords(), kb.getServiceType(),
+                termFreqs, length,
+                MinHash.bigrams(MinHash.shingles(question + keywords + answer)),
+                MinHash.bigrams(MinHash.shingles(question)));
+    }
+
+    /**
+     * 置信度：提问与条目问题互相覆盖的二元组比例的几何平均，问题相同为1
+     */
+    private static double confidence(int[] query, Document document) {
+        if (query.length == 0 || document.questionFeatures.length == 0) {
+            return 0;
+        }
+        int common = MinHash.intersection(query, document.questionFeatures);
+        return Math.sqrt((double) common / query.length * common / document.questionFeatures.length);
+    }
+
+    private static LocalDateTime later(LocalDateTime a, LocalDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    /**
+     * 索引规模、刷新次数及检索耗时分位数（微秒）
+     */
+    public Map<String, Object> getStats() {
+        Snapshot current = snapshot;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("documents", current != null ? current.index.getDocCount() : 0);
+        stats.put("terms", current != null ? current.index.getTermCount() : 0);
+        stats.put("searches", searches.sum());
+        stats.put("incrementalRefreshes", incrementalRefreshes.sum());
+        stats.put("fullRebuilds", fullRebuilds.sum());
+        stats.put("changeRefreshes", changeRefreshes.sum());
+        stats.put("reindexedDocuments", reindexedDocuments.sum());
+        stats.put("searchP50Micros", searchLatency.percentile(0.5));
+        stats.put("searchP99Micros", searchLatency.percentile(0.99));
+        return stats;
+    }
+
+    /**
+     * 检索快照：倒排索引及按文档序号排列的条目
+     */
+    private static class Snapshot {
+        final NgramBm25Index index;
+        final Document[] documents;
+
+        Snapshot(NgramBm25Index index, Document[] documents) {
+            this.index = index;
+            this.documents = documents;
+        }
+    }
+
+    /**
+     * 一个知识库条目，检索结果中带有得分
+     */
+    public static class Document {
+        private final Long id;
+        private final String question;
+        private final String answer;
+        private final String keywords;
+        private final ServiceType serviceType;
+        private final Map<Long, Float> termFreqs;
+        private final float length;
+        // 所有字段的二元组，计算提问的覆盖率
+        private final int[] features;
+        // 问题的二元组，计算置信度
+        private final int[] questionFeatures;
+        private final double score;
+        private final double coverage;
+        private final double confidence;
+
+        Document(Long id, String question, String answer, String keywords, ServiceType serviceType,
+                 Map<Long, Float> termFreqs, float length, int[] features, int[] questionFeatures) {
+            this(id, question, answer, keywords, serviceType, termFreqs, length, features, questionFeatures, 0, 0, 0);
+        }
+
+        private Document(Long id, String question, String answer, String keywords, ServiceType serviceType,
+                         Map<Long, Float> termFreqs, float length, int[] features, int[] questionFeatures,
+                         double score, double coverage, double confidence) {
+            this.id = id;
+            this.question = question;
+            this.answer = answer;
+            this.keywords = keywords;
+            this.serviceType = serviceType;
+            this.termFreqs = termFreqs;
+            this.length = length;
+            this.features = features;
+            this.questionFeatures = questionFeatures;
+            this.score = score;
+            this.coverage = coverage;
+            this.confidence = confidence;
+        }
+
+        Document withScore(double score, double coverage, double confidence) {
+            return new Document(id, question, answer, keywords, serviceType, termFreqs, length, features,
+                    questionFeatures, score, coverage, confidence);
+        }
+
+        boolean sameContent(Document other) {
+            return question.equals(other.question) && answer.equals(other.answer)
+                    && Objects.equals(keywords, other.keywords)
+                    && Objects.equals(serviceType != null ? serviceType.getId() : null,
+                    other.serviceType != null ? other.serviceType.getId() : null);
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getQuestion() {
+            return question;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        public ServiceType getServiceType() {
+            return serviceType;
+        }
+
+        // BM25得分
+        public double getScore() {
+            return score;
+        }
+
+        // 提问的二元组出现在条目中的比例
+        public double getCoverage() {
+            return coverage;
+        }
+
+        // 提问与条目问题的匹配程度（0~1）
+        public double getConfidence() {
+            return confidence;
+        }
+    }
+}
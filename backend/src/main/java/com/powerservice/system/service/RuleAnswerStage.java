@@ -0,0 +1,48 @@
+package com.powerservice.system.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * 关键词规则阶段
+ * 置信度为匹配到的关键词占提问（归一化后）的比例：点击服务分类、"故障报修"这类简短提问直接由规则回复，
+ * 关键词只是长句中的一小部分时交给后续阶段
+ */
+@Component
+@Order(1)
+public class RuleAnswerStage implements AnswerStage {
+
+    @Value("${ai.pipeline.rules.min-confidence:0.6}")
+    private double minConfidence;
+
+    @Autowired
+    private KeywordRouter keywordRouter;
+
+    @Override
+    public String getName() {
+        return "rules";
+    }
+
+    @Override
+    public String getLabel() {
+        return "规则";
+    }
+
+    @Override
+    public double getMinConfidence() {
+        return minConfidence;
+    }
+
+    @Override
+    public Candidate tryAnswer(String prompt) {
+        KeywordRouter.Match match = keywordRouter.match(prompt);
+        if (match == null) {
+            return null;
+        }
+        KeywordRouter.Route route = match.getRoute();
+        double coverage = Math.min(1.0, (double) match.getMatchedLength() / match.getTextLength());
+        return new Candidate(this, route.getResponse(), coverage, route.getServiceType(), route.isNeedMoreInfo());
+    }
+}
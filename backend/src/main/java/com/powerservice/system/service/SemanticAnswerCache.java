@@ -0,0 +1,262 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.MinHash;
+import com.powerservice.system.util.TextNormalizer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * AI回答语义缓存（本地）
+ * 问题先做文本归一化，完全相同直接命中；否则通过MinHash + LSH分桶找出候选问题，
+ * 对候选计算精确Jaccard相似度，超过阈值即视为同一问题，返回缓存的回答。
+ * 例如"怎么交电费"与"电费怎么交？"可命中同一条缓存
+ */
+@Service
+public class SemanticAnswerCache {
+
+    private static final int BANDS = 16;
+
+    private static final int ROWS_PER_BAND = 4;
+
+    private static final long MINHASH_SEED = 20240601L;
+
+    // 相似度阈值，候选问题与当前问题的Jaccard相似度不低于该值才视为命中
+    @Value("${ai.semantic-cache.similarity-threshold:0.75}")
+    private double similarityThreshold;
+
+    @Value("${ai.semantic-cache.max-entries:5000}")
+    private int maxEntries;
+
+    @Value("${ai.semantic-cache.ttl-minutes:60}")
+    private long ttlMinutes;
+
+    private final MinHash minHash = new MinHash(BANDS * ROWS_PER_BAND, MINHASH_SEED);
+
+    // 按写入顺序保存，最早写入的条目最先过期/淘汰
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+
+    // LSH分桶：桶key -> 归一化问题集合
+    private final Map<Long, Set<String>> buckets = new HashMap<>();
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final LongAdder exactHits = new LongAdder();
+
+    private final LongAdder similarHits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * 查找相同或相近问题的缓存回答
+     * @param prompt 用户问题
+     * @return 缓存的回答，未命中返回null
+     */
+    public String lookup(String prompt) {
+        String normalized = TextNormalizer.normalize(prompt);
+        if (normalized.isEmpty()) {
+            misses.increment();
+            return null;
+        }
+        long now = System.currentTimeMillis();
+
+        lock.readLock().lock();
+        try {
+            // 1. 归一化后完全相同
+            Entry exact = entries.get(normalized);
+            if (exact != null && exact.expireAt > now) {
+                exactHits.increment();
+                return exact.answer;
+            }
+
+            // 2. LSH分桶找候选，再用精确相似度确认
+            int[] shingles = MinHash.shingles(normalized);
+            long[] bandKeys = bandKeys(minHash.signature(shingles));
+            Entry best = null;
+            double bestScore = similarityThreshold;
+            Set<String> checked = new HashSet<>();
+            for (long bandKey : bandKeys) {
+                Set<String> bucket = buckets.get(bandKey);
+                if (bucket == null) {
+                    continue;
+                }
+                for (String candidateKey : bucket) {
+                    if (!checked.add(candidateKey)) {
+                        continue;
+                    }
+                    Entry candidate = entries.get(candidateKey);
+                    if (candidate == null || candidate.expireAt <= now) {
+                        continue;
+                    }
+                    double score = MinHash.jaccard(shingles, candidate.shingles);
+                    if (score >= bestScore) {
+                        best = candidate;
+                        bestScore = score;
+                    }
+                }
+            }
+            if (best != null) {
+                similarHits.increment();
+                return best.answer;
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 写入缓存
+     * @param prompt 用户问题
+     * @param answer 回答内容
+     */
+    public void put(String prompt, String answer) {
+        put(prompt, answer, Long.MAX_VALUE);
+    }
+
+    /**
+     * 写入缓存，过期时间不晚于给定时间
+     * 回答在Redis中软过期后应由Redis层返回旧值并触发后台刷新，语义缓存不能比软过期时间活得更久
+     * @param prompt 用户问题
+     * @param answer 回答内容
+     * @param notAfter 最晚过期时间戳（毫秒）
+     */
+    public void put(String prompt, String answer, long notAfter) {
+        String normalized = TextNormalizer.normalize(prompt);
+        if (normalized.isEmpty() || answer == null || answer.isEmpty()) {
+            return;
+        }
+        int[] shingles = MinHash.shingles(normalized);
+        long[] bandKeys = bandKeys(minHash.signature(shingles));
+        long expireAt = Math.min(System.currentTimeMillis() + ttlMinutes * 60 * 1000, notAfter);
+        if (expireAt <= System.currentTimeMillis()) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Entry previous = entries.remove(normalized);
+            if (previous != null) {
+                unindex(normalized, previous);
+            }
+            entries.put(normalized, new Entry(answer, shingles, bandKeys, expireAt));
+            for (long bandKey : bandKeys) {
+                buckets.computeIfAbsent(bandKey, k -> new HashSet<>()).add(normalized);
+            }
+            evictIfNecessary();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            entries.clear();
+            buckets.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 获取命中率等统计信息
+     */
+    public Map<String, Object> getStats() {
+        long exact = exactHits.sum();
+        long similar = similarHits.sum();
+        long miss = misses.sum();
+        long total = exact + similar + miss;
+
+        Map<String, Object> stats = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            stats.put("size", entries.size());
+            stats.put("buckets", buckets.size());
+        } finally {
+            lock.readLock().unlock();
+        }
+        stats.put("exactHits", exact);
+        stats.put("similarHits", similar);
+        stats.put("misses", miss);
+        stats.put("evictions", evictions.sum());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) (exact + similar) / total);
+        stats.put("similarityThreshold", similarityThreshold);
+        return stats;
+    }
+
+    /**
+     * 淘汰过期条目及超出容量的最早条目（需持有写锁）
+     */
+    private void evictIfNecessary() {
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<String, Entry> eldest = iterator.next();
+            if (entries.size() <= maxEntries && eldest.getValue().expireAt > now) {
+                break;
+            }
+            iterator.remove();
+            unindex(eldest.getKey(), eldest.getValue());
+            evictions.increment();
+        }
+    }
+
+    /**
+     * 从LSH分桶中移除条目（需持有写锁）
+     */
+    private void unindex(String normalized, Entry entry) {
+        for (long bandKey : entry.bandKeys) {
+            Set<String> bucket = buckets.get(bandKey);
+            if (bucket != null) {
+                bucket.remove(normalized);
+                if (bucket.isEmpty()) {
+                    buckets.remove(bandKey);
+                }
+            }
+        }
+    }
+
+    /**
+     * 将签名按band切分，每个band的若干行合成一个桶key
+     */
+    private long[] bandKeys(long[] signature) {
+        long[] keys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            long h = band + 1;
+            for (int row = 0; row < ROWS_PER_BAND; row++) {
+                h = h * 0x9E3779B97F4A7C15L + signature[band * ROWS_PER_BAND + row];
+            }
+            keys[band] = h;
+        }
+        return keys;
+    }
+
+    private static class Entry {
+        private final String answer;
+        private final int[] shingles;
+        private final long[] bandKeys;
+        private final long expireAt;
+
+        Entry(String answer, int[] shingles, long[] bandKeys, long expireAt) {
+            this.answer = answer;
+            this.shingles = shingles;
+            this.bandKeys = bandKeys;
+            this.expireAt = expireAt;
+        }
+    }
+}
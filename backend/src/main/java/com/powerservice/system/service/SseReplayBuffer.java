@@ -0,0 +1,326 @@
+package com.powerservice.system.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE断线续传缓冲
+ * 每个回答流分配一个流ID，片段按序号编号（事件ID为 流ID-序号），并在本节点内存中保留最近的片段。
+ * 回答的生成与客户端连接解耦：由缓冲订阅上游，客户端连接只是缓冲的消费者。
+ * 客户端断开后上游继续生成一段宽限期，期间带Last-Event-ID重连可从断点继续接收，不再重新调用模型；
+ * 宽限期内无人重连则取消上游。流结束后缓冲再保留一段时间供重连补发，之后清除。
+ * 缓冲只在本节点内存中，重连到其他节点或缓冲已过期时按新请求处理
+ */
+@Service
+public class SseReplayBuffer {
+
+    private static final char ID_SEPARATOR = '-';
+
+    // 每个流保留的最大片段数，超出后丢弃最早的片段，断点早于保留范围时无法续传
+    @Value("${ai.sse.resume.max-events:2000}")
+    private int maxEvents;
+
+    // 客户端全部断开后上游继续生成的时长，覆盖网络闪断后的自动重连即可，过长会为已离开的用户继续消耗上游
+    @Value("${ai.sse.resume.grace-seconds:3}")
+    private long graceSeconds;
+
+    // 流结束后缓冲保留的时长
+    @Value("${ai.sse.resume.ttl-seconds:60}")
+    private long ttlSeconds;
+
+    // 同时保留的最大流数，超出时淘汰最早的流（已结束的优先），被淘汰的未结束流取消上游
+    @Value("${ai.sse.resume.max-streams:2000}")
+    private int maxStreams;
+
+    private final Map<String, ReplayStream> streams = new ConcurrentHashMap<>();
+
+    private final LongAdder openedStreams = new LongAdder();
+
+    private final LongAdder resumedStreams = new LongAdder();
+
+    private final LongAdder resumeMisses = new LongAdder();
+
+    private final LongAdder replayedEvents = new LongAdder();
+
+    private final LongAdder abandonedStreams = new LongAdder();
+
+    private final LongAdder evictedStreams = new LongAdder();
+
+    /**
+     * 为一个回答流建立缓冲并立即订阅上游
+     * @param chunks 回答片段
+     * @return 缓冲流
+     */
+    public ReplayStream open(Flux<String> chunks) {
+        if (streams.size() >= maxStreams) {
+            evictOldest();
+        }
+        ReplayStream stream = new ReplayStream(UUID.randomUUID().toString().replace("-", "").substring(0, 16));
+        streams.put(stream.id, stream);
+        openedStreams.increment();
+        stream.start(chunks);
+        return stream;
+    }
+
+    /**
+     * 按客户端重连时携带的Last-Event-ID续传
+     * @param lastEventId 客户端收到的最后一个事件ID
+     * @return 断点之后的事件，无法续传（格式错误、缓冲不存在或断点已被丢弃）时返回null
+     */
+    public Flux<Event> resume(String lastEventId) {
+        int separator = lastEventId.lastIndexOf(ID_SEPARATOR);
+        if (separator <= 0) {
+            resumeMisses.increment();
+            return null;
+        }
+        ReplayStream stream = streams.get(lastEventId.substring(0, separator));
+        long lastSeq;
+        try {
+            lastSeq = Long.parseLong(lastEventId.substring(separator + 1));
+        } catch (NumberFormatException e) {
+            stream = null;
+            lastSeq = 0;
+        }
+        Flux<Event> events = stream != null ? stream.eventsAfter(lastSeq) : null;
+        (events != null ? resumedStreams : resumeMisses).increment();
+        return events;
+    }
+
+    /**
+     * 定期清除已结束且超过保留时长的缓冲
+     */
+    @Scheduled(fixedDelayString = "${ai.sse.resume.cleanup-interval-ms:10000}")
+    public void evictExpired() {
+        long now = System.currentTimeMillis();
+        streams.values().removeIf(stream -> stream.isExpired(now));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("bufferedStreams", streams.size());
+        stats.put("openedStreams", openedStreams.sum());
+        stats.put("resumedStreams", resumedStreams.sum());
+        stats.put("resumeMisses", resumeMisses.sum());
+        stats.put("replayedEvents", replayedEvents.sum());
+        stats.put("abandonedStreams", abandonedStreams.sum());
+        stats.put("evictedStreams", evictedStreams.sum());
+        return stats;
+    }
+
+    private void evictOldest() {
+        List<ReplayStream> candidates = new ArrayList<>(streams.values());
+        candidates.stream()
+                .min(Comparator.comparing((ReplayStream stream) -> !stream.terminated)
+                        .thenComparingLong(stream -> stream.createdAt))
+                .ifPresent(stream -> {
+                    if (streams.remove(stream.id, stream)) {
+                        evictedStreams.increment();
+                        stream.evict();
+                    }
+                });
+    }
+
+    /**
+     * 一个带编号的片段
+     */
+    public static class Event {
+
+        private final String id;
+
+        private final long seq;
+
+        private final String data;
+
+        Event(String id, long seq, String data) {
+            this.id = id;
+            this.seq = seq;
+            this.data = data;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getData() {
+            return data;
+        }
+    }
+
+    /**
+     * 单个回答流的缓冲，片段追加和消费者订阅在同一把锁内进行，保证不重不漏
+     */
+    public class ReplayStream {
+
+        private final String id;
+
+        private final long createdAt = System.currentTimeMillis();
+
+        private final ArrayDeque<Event> events = new ArrayDeque<>();
+
+        private final Sinks.Many<Event> live = Sinks.many().multicast().directBestEffort();
+
+        private long nextSeq = 1;
+
+        private int consumers;
+
+        private boolean terminated;
+
+        private Throwable error;
+
+        private volatile long expiresAt = Long.MAX_VALUE;
+
+        private Disposable upstream;
+
+        private Disposable pendingCancel;
+
+        ReplayStream(String id) {
+            this.id = id;
+        }
+
+        /**
+         * 从头接收全部片段
+         */
+        public Flux<Event> events() {
+            return eventsAfter(0);
+        }
+
+        private void start(Flux<String> chunks) {
+            Disposable subscription = chunks.subscribe(this::append, this::fail, this::complete);
+            synchronized (this) {
+                upstream = subscription;
+            }
+        }
+
+        /**
+         * 断点之后的片段：先补发缓冲中的，再接收实时的
+         * @return 断点早于缓冲保留范围或晚于已生成的片段时返回null
+         */
+        synchronized Flux<Event> eventsAfter(long lastSeq) {
+            long firstSeq = events.isEmpty() ? nextSeq : events.peekFirst().seq;
+            if (lastSeq < firstSeq - 1 || lastSeq >= nextSeq) {
+                return null;
+            }
+            return Flux.defer(() -> subscribeAfter(lastSeq));
+        }
+
+        /**
+         * 在锁内取缓冲快照并订阅实时片段，之后追加的片段先暂存，补发完成后继续输出，不重不漏
+         */
+        private synchronized Flux<Event> subscribeAfter(long lastSeq) {
+            List<Event> missed = new ArrayList<>();
+            for (Event event : events) {
+                if (event.seq > lastSeq) {
+                    missed.add(event);
+                }
+            }
+            replayedEvents.add(missed.size());
+            Flux<Event> replay = Flux.fromIterable(missed);
+            if (terminated) {
+                return error != null ? replay.concatWith(Flux.error(error)) : replay;
+            }
+            Flux<Event> tail = live.asFlux().replay().autoConnect(0);
+            attach();
+            return replay.concatWith(tail).doFinally(signal -> detach());
+        }
+
+        private synchronized void append(String chunk) {
+            Event event = new Event(id + ID_SEPARATOR + nextSeq, nextSeq, chunk);
+            nextSeq++;
+            events.addLast(event);
+            if (events.size() > maxEvents) {
+                events.pollFirst();
+            }
+            live.tryEmitNext(event);
+        }
+
+        private synchronized void fail(Throwable e) {
+            terminated = true;
+            error = e;
+            expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+            live.tryEmitError(e);
+        }
+
+        private synchronized void complete() {
+            terminated = true;
+            expiresAt = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(ttlSeconds);
+            live.tryEmitComplete();
+        }
+
+        private synchronized void attach() {
+            consumers++;
+            if (pendingCancel != null) {
+                pendingCancel.dispose();
+                pendingCancel = null;
+            }
+        }
+
+        /**
+         * 最后一个消费者离开且流未结束时，宽限期后取消上游
+         */
+        private synchronized void detach() {
+            consumers--;
+            if (consumers == 0 && !terminated) {
+                pendingCancel = Schedulers.parallel().schedule(this::abandon, graceSeconds, TimeUnit.SECONDS);
+            }
+        }
+
+        private void abandon() {
+            Disposable toCancel;
+            synchronized (this) {
+                if (consumers > 0 || terminated) {
+                    return;
+                }
+                terminated = true;
+                toCancel = upstream;
+            }
+            abandonedStreams.increment();
+            streams.remove(id, this);
+            if (toCancel != null) {
+                toCancel.dispose();
+            }
+            live.tryEmitComplete();
+        }
+
+        /**
+         * 被淘汰出缓冲：未结束的流取消上游，仍连接的消费者以错误结束
+         */
+        private void evict() {
+            Disposable toCancel;
+            synchronized (this) {
+                if (pendingCancel != null) {
+                    pendingCancel.dispose();
+                    pendingCancel = null;
+                }
+                if (terminated) {
+                    return;
+                }
+                terminated = true;
+                toCancel = upstream;
+            }
+            if (toCancel != null) {
+                toCancel.dispose();
+            }
+            live.tryEmitError(new IllegalStateException("回答流缓冲已满，流被淘汰"));
+        }
+
+        private boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.powerservice.system.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SSE流式响应执行器
+ * 为流式对话提供独立的工作线程池（有界线程池或虚拟线程），不再与JVM公共线程池争用；
+ * 并限制单节点同时进行的流数量，超出时由调用方快速返回503
+ */
+@Service
+public class SseStreamExecutor {
+
+    // 单节点允许同时进行的最大流数量
+    @Value("${ai.sse.max-concurrent-streams:500}")
+    private int maxConcurrentStreams;
+
+    @Value("${ai.sse.worker-threads:32}")
+    private int workerThreads;
+
+    // 等待工作线程的任务队列容量，仅在未启用虚拟线程时生效
+    @Value("${ai.sse.queue-capacity:1000}")
+    private int queueCapacity;
+
+    // 是否使用虚拟线程执行SSE任务
+    @Value("${ai.sse.virtual-threads:false}")
+    private boolean virtualThreads;
+
+    // 节点饱和时返回给客户端的重试等待秒数
+    @Value("${ai.sse.retry-after-seconds:3}")
+    private int retryAfterSeconds;
+
+    private Semaphore streamPermits;
+
+    private ExecutorService executor;
+
+    private ThreadPoolExecutor threadPool;  // 未启用虚拟线程时与executor为同一实例
+
+    private Scheduler scheduler;
+
+    private final LongAdder admittedStreams = new LongAdder();
+
+    private final LongAdder rejectedStreams = new LongAdder();
+
+    private final LongAdder rejectedTasks = new LongAdder();
+
+    private final LongAdder cancelledStreams = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        streamPermits = new Semaphore(maxConcurrentStreams);
+        if (virtualThreads) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("sse-", 0).factory());
+        } else {
+            AtomicInteger threadIndex = new AtomicInteger();
+            threadPool = new ThreadPoolExecutor(workerThreads, workerThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(queueCapacity),
+                    r -> new Thread(r, "sse-" + threadIndex.incrementAndGet()),
+                    (r, pool) -> {
+                        rejectedTasks.increment();
+                        throw new RejectedExecutionException("SSE工作线程池已满");
+                    });
+            threadPool.allowCoreThreadTimeOut(true);
+            executor = threadPool;
+        }
+        scheduler = Schedulers.fromExecutorService(executor, "sse");
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.dispose();
+        executor.shutdown();
+    }
+
+    /**
+     * 尝试为一个新的流占用名额
+     * @return 名额凭证，节点已饱和时返回null
+     */
+    public StreamTicket tryAdmit() {
+        if (streamPermits.tryAcquire()) {
+            admittedStreams.increment();
+            return new StreamTicket();
+        }
+        rejectedStreams.increment();
+        return null;
+    }
+
+    /**
+     * 在SSE工作线程池中执行任务
+     * @param task 任务
+     * @throws RejectedExecutionException 线程池队列已满
+     */
+    public void execute(Runnable task) {
+        executor.execute(task);
+    }
+
+    /**
+     * 基于SSE工作线程池的Reactor调度器，用于向SseEmitter发送数据
+     */
+    public Scheduler scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * 记录一次回答未结束时客户端断开（完成、超时或出错）导致的取消
+     */
+    public void recordCancelledStream() {
+        cancelledStreams.increment();
+    }
+
+    public int getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+
+    /**
+     * 获取运行指标
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxConcurrentStreams", maxConcurrentStreams);
+        stats.put("activeStreams", maxConcurrentStreams - streamPermits.availablePermits());
+        stats.put("admittedStreams", admittedStreams.sum());
+        stats.put("rejectedStreams", rejectedStreams.sum());
+        stats.put("rejectedTasks", rejectedTasks.sum());
+        stats.put("cancelledStreams", cancelledStreams.sum());
+        stats.put("virtualThreads", virtualThreads);
+        if (threadPool != null) {
+            stats.put("workerThreads", threadPool.getPoolSize());
+            stats.put("busyWorkers", threadPool.getActiveCount());
+            stats.put("queuedTasks", threadPool.getQueue().size());
+        } else {
+            stats.put("queuedTasks", 0);
+        }
+        return stats;
+    }
+
+    /**
+     * 流名额凭证，流结束时关闭以归还名额，重复关闭无副作用
+     */
+    public class StreamTicket implements AutoCloseable {
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                streamPermits.release();
+            }
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.dto.ChatRequest;
+import com.powerservice.system.util.DeepSeekApiClient;
+import com.powerservice.system.util.RedisCacheUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * 启动预热
+ * 作为ApplicationRunner在应用报告就绪（ReadinessState.ACCEPTING_TRAFFIC）之前执行：
+ * 预先建立数据库、Redis和DeepSeek连接，并用合成输入反复调用对话、电费监控和JWT签发校验，
+ * 让Hibernate元数据、查询计划和热点代码的JIT编译在接待第一位用户之前完成。
+ * 对话预热不保存对话记录和知识库命中次数（两者都由后台批量写入，不在调用方事务内，回滚事务无法撤销）。
+ * 任一步骤失败只记录原因不阻止启动，总时长受 max-seconds 限制
+ */
+@Service
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class StartupWarmUp implements ApplicationRunner {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupWarmUp.class);
+
+    private static final String WARMUP_USERNAME = "warmup";
+
+    // 合成提问，覆盖知识库匹配、关键词回复和默认回复几条路径
+    private static final String[] SYNTHETIC_MESSAGES = {
+            "电费怎么查询", "家里停电了怎么报修", "我想办理新装业务", "峰谷电价政策", "电表显示异常", "你好"
+    };
+
+    @Value("${startup.warmup.enabled:true}")
+    private boolean enabled;
+
+    // 对话、监控、JWT各调用的次数
+    @Value("${startup.warmup.iterations:200}")
+    private int iterations;
+
+    // 预热总时长上限，超出后跳过剩余步骤
+    @Value("${startup.warmup.max-seconds:60}")
+    private long maxSeconds;
+
+    // 预先建立的数据库连接数
+    @Value("${startup.warmup.db-connections:4}")
+    private int dbConnections;
+
+    // 预先建立的上游连接数
+    @Value("${startup.warmup.upstream-connections:4}")
+    private int upstreamConnections;
+
+    @Autowired
+    private DataSource dataSource;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private RedisCacheUtil redisCacheUtil;
+
+    @Autowired
+    private DeepSeekApiClient deepSeekApiClient;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MonitorService monitorService;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private ApplicationAvailability applicationAvailability;
+
+    private final Map<String, Object> steps = new LinkedHashMap<>();
+
+    private volatile boolean finished;
+
+    private volatile LocalDateTime startedAt;
+
+    private volatile LocalDateTime finishedAt;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            finished = true;
+            return;
+        }
+        startedAt = LocalDateTime.now();
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(maxSeconds);
+
+        step("database", deadline, this::warmUpDatabase);
+        step("redis", deadline, this::warmUpRedis);
+        step("upstream", deadline, () -> deepSeekApiClient.warmUp(upstreamConnections)
+                .block(Duration.ofMillis(Math.max(1, deadline - System.currentTimeMillis()))));
+        step("chat", deadline, () -> repeat(deadline, i -> chatService.processMessage(syntheticRequest(i), false)));
+        step("monitor", deadline, () -> repeat(deadline, i -> monitorService.getMonitorData()));
+        step("jwt", deadline, () -> repeat(deadline, i -> {
+            String token = jwtService.generateToken(WARMUP_USERNAME);
+            jwtService.validateToken(token, WARMUP_USERNAME);
+        }));
+
+        finishedAt = LocalDateTime.now();
+        finished = true;
+        log.info("启动预热完成，耗时{}ms: {}", Duration.between(startedAt, finishedAt).toMillis(), steps);
+    }
+
+    /**
+     * 预热是否已结束（成功或失败）且应用已进入可接收流量状态
+     */
+    public boolean isReady() {
+        return finished && applicationAvailability.getReadinessState() == ReadinessState.ACCEPTING_TRAFFIC;
+    }
+
+    public Map<String, Object> getStatus() {
+        Map<String, Object> status = new HashMap<>();
+        status.put("enabled", enabled);
+        status.put("finished", finished);
+        status.put("readiness", applicationAvailability.getReadinessState());
+        status.put("startedAt", startedAt);
+        status.put("finishedAt", finishedAt);
+        synchronized (steps) {
+            status.put("steps", new LinkedHashMap<>(steps));
+        }
+        return status;
+    }
+
+    /**
+     * 同时持有多个连接再归还，使连接池一次建满
+     */
+    private void warmUpDatabase() throws Exception {
+        List<Connection> connections = new ArrayList<>(dbConnections);
+        try {
+            for (int i = 0; i < dbConnections; i++) {
+                Connection connection = dataSource.getConnection();
+                connections.add(connection);
+                connection.isValid(1);
+            }
+        } finally {
+            for (Connection connection : connections) {
+                connection.close();
+            }
+        }
+    }
+
+    private void warmUpRedis() {
+        stringRedisTemplate.execute((RedisCallback<String>) connection -> connection.ping());
+        // 走一遍缓存读取路径（二进制模板、解码、近端缓存）
+        redisCacheUtil.getCache("warmup:probe");
+    }
+
+    private void repeat(long deadline, IntConsumer action) {
+        for (int i = 0; i < iterations && System.currentTimeMillis() < deadline; i++) {
+            action.accept(i);
+        }
+    }
+
+    private ChatRequest syntheticRequest(int i) {
+        ChatRequest request = new ChatRequest();
+        request.setMessage(SYNTHETIC_MESSAGES[i % SYNTHETIC_MESSAGES.length]);
+        request.setSessionId("WARMUP");
+        return request;
+    }
+
+    /**
+     * 执行一个预热步骤并记录耗时或失败原因
+     */
+    private void step(String name, long deadline, WarmUpStep action) {
+        Object result;
+        if (System.currentTimeMillis() >= deadline) {
+            result = "skipped";
+        } else {
+            long start = System.currentTimeMillis();
+            try {
+                action.run();
+                result = (System.currentTimeMillis() - start) + "ms";
+            } catch (Exception e) {
+                result = "failed: " + e.getMessage();
+                log.warn("启动预热步骤{}失败: {}", name, e.getMessage());
+            }
+        }
+        synchronized (steps) {
+            steps.put(name, result);
+        }
+    }
+
+    @FunctionalInterface
+    private interface WarmUpStep {
+        void run() throws Exception;
+    }
+}
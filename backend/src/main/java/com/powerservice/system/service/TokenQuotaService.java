@@ -0,0 +1,256 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.RedisCacheUtil;
+import com.powerservice.system.util.TokenBucket;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI调用token配额
+ * 按用户和终端（营业厅自助终端，无终端标识时按客户端IP）分别维护令牌桶，
+ * 调用上游前按预估token数预留，调用结束后按实际消耗结算。
+ * 令牌桶在本地扣减，定时把本节点的消耗累加到Redis计数器，并把其他节点的新增消耗
+ * 从本地桶中扣除，多节点部署时配额近似全局共享。同步时只上报有新增消耗的主体，
+ * 无新增消耗的主体只在近期有请求时读取全局消耗，所有命令在一个管道中发送
+ */
+@Service
+public class TokenQuotaService {
+
+    private static final String QUOTA_PREFIX = "ai_quota:";
+
+    // 空闲超过该时间且桶已满的主体不再同步并移除
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    // 无新增消耗的主体在该时间内有过请求时才读取其他节点的消耗；
+    // 更久未用的主体下次上报时一并扣除期间其他节点的消耗
+    private static final long PULL_WINDOW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    @Value("${ai.quota.enabled:true}")
+    private boolean enabled;
+
+    // 单个用户的突发上限和每分钟补充的token数
+    @Value("${ai.quota.user.capacity:20000}")
+    private double userCapacity;
+
+    @Value("${ai.quota.user.refill-per-minute:5000}")
+    private double userRefillPerMinute;
+
+    // 单个终端的突发上限和每分钟补充的token数，终端由多位用户共用，额度更高
+    @Value("${ai.quota.kiosk.capacity:60000}")
+    private double kioskCapacity;
+
+    @Value("${ai.quota.kiosk.refill-per-minute:20000}")
+    private double kioskRefillPerMinute;
+
+    // 调用前为回答预留的token数，结算时按实际消耗多退少补
+    @Value("${ai.quota.completion-reserve:256}")
+    private int completionReserve;
+
+    @Autowired
+    private RedisCacheUtil redisCacheUtil;
+
+    private final Map<String, Subject> subjects = new ConcurrentHashMap<>();
+
+    private final LongAdder allowed = new LongAdder();
+
+    private final LongAdder denied = new LongAdder();
+
+    private final LongAdder reconcileErrors = new LongAdder();
+
+    /**
+     * 调用上游前预留配额
+     * @param userId 用户ID，可为空
+     * @param kioskId 终端标识
+     * @param promptTokens 提问的预估token数
+     * @return 预留结果，未通过时携带建议的重试等待秒数
+     */
+    public Reservation reserve(String userId, String kioskId, int promptTokens) {
+        int amount = promptTokens + completionReserve;
+        if (!enabled) {
+            return new Reservation(Collections.emptyList(), amount, 0);
+        }
+
+        List<Subject> targets = new ArrayList<>(2);
+        if (userId != null && !userId.isEmpty()) {
+            targets.add(subject("user:" + userId, userCapacity, userRefillPerMinute));
+        }
+        if (kioskId != null && !kioskId.isEmpty()) {
+            targets.add(subject("kiosk:" + kioskId, kioskCapacity, kioskRefillPerMinute));
+        }
+
+        List<Subject> acquired = new ArrayList<>(targets.size());
+        for (Subject target : targets) {
+            if (!target.bucket.tryConsume(amount)) {
+                // 任一主体额度不足，退还已扣减的
+                for (Subject subject : acquired) {
+                    subject.consume(-amount);
+                }
+                denied.increment();
+                long retryAfter = Math.max(1, target.bucket.secondsUntilAvailable(amount));
+                return new Reservation(Collections.emptyList(), amount, retryAfter);
+            }
+            target.pending.add(amount);
+            acquired.add(target);
+        }
+        allowed.increment();
+        return new Reservation(acquired, amount, 0);
+    }
+
+    /**
+     * 定期与Redis同步：上报本节点新增消耗，并扣除其他节点的新增消耗
+     */
+    @Scheduled(fixedDelayString = "${ai.quota.reconcile-interval-ms:5000}")
+    public void reconcile() {
+        long now = System.currentTimeMillis();
+        Map<String, Subject> batch = new LinkedHashMap<>();
+        Map<String, Long> deltas = new LinkedHashMap<>();
+        for (Map.Entry<String, Subject> entry : subjects.entrySet()) {
+            Subject subject = entry.getValue();
+            long delta = subject.pending.sumThenReset();
+            if (delta == 0) {
+                if (now - subject.lastUsed > IDLE_MILLIS && subject.bucket.isFull()) {
+                    subjects.remove(entry.getKey(), subject);
+                    continue;
+                }
+                if (subject.lastSeenGlobal < 0 || now - subject.lastUsed > PULL_WINDOW_MILLIS) {
+                    continue;
+                }
+            }
+            batch.put(entry.getKey(), subject);
+            deltas.put(QUOTA_PREFIX + entry.getKey(), delta);
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        Map<String, Long> globals;
+        try {
+            globals = redisCacheUtil.incrementAll(deltas, 1, TimeUnit.HOURS);
+        } catch (Exception e) {
+            // Redis不可用时退化为单节点配额，未上报的消耗下次再报
+            batch.forEach((key, subject) -> subject.pending.add(deltas.get(QUOTA_PREFIX + key)));
+            reconcileErrors.increment();
+            return;
+        }
+        batch.forEach((key, subject) -> {
+            long delta = deltas.get(QUOTA_PREFIX + key);
+            long global = globals.get(QUOTA_PREFIX + key);
+            if (subject.lastSeenGlobal >= 0) {
+                long others = global - subject.lastSeenGlobal - delta;
+                if (others > 0) {
+                    subject.bucket.consume(others);
+                }
+            }
+            subject.lastSeenGlobal = global;
+        });
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("subjects", subjects.size());
+        stats.put("allowed", allowed.sum());
+        stats.put("denied", denied.sum());
+        stats.put("reconcileErrors", reconcileErrors.sum());
+        return stats;
+    }
+
+    private Subject subject(String key, double capacity, double refillPerMinute) {
+        Subject subject = subjects.computeIfAbsent(key,
+                k -> new Subject(new TokenBucket(capacity, refillPerMinute / 60.0)));
+        subject.lastUsed = System.currentTimeMillis();
+        return subject;
+    }
+
+    /**
+     * 配额主体（某个用户或终端）
+     */
+    private static class Subject {
+
+        private final TokenBucket bucket;
+
+        // 尚未同步到Redis的本节点消耗
+        private final LongAdder pending = new LongAdder();
+
+        // 上次同步时看到的全局累计消耗，-1表示尚未同步
+        private volatile long lastSeenGlobal = -1;
+
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        Subject(TokenBucket bucket) {
+            this.bucket = bucket;
+        }
+
+        void consume(long amount) {
+            bucket.consume(amount);
+            pending.add(amount);
+        }
+    }
+
+    /**
+     * 一次配额预留，结算或取消恰好一次
+     */
+    public static class Reservation {
+
+        private final List<Subject> subjects;
+
+        private final int reserved;
+
+        private final long retryAfterSeconds;
+
+        private final AtomicBoolean finished = new AtomicBoolean();
+
+        private Reservation(List<Subject> subjects, int reserved, long retryAfterSeconds) {
+            this.subjects = subjects;
+            this.reserved = reserved;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        /**
+         * 不占用任何配额的预留，用于沿用已有上游调用的请求（如断线续传）
+         */
+        public static Reservation none() {
+            return new Reservation(Collections.emptyList(), 0, 0);
+        }
+
+        public boolean isAllowed() {
+            return retryAfterSeconds == 0;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        /**
+         * 按实际消耗结算，多退少补
+         * @param actualTokens 实际消耗的token数
+         */
+        public void settle(int actualTokens) {
+            if (finished.compareAndSet(false, true)) {
+                for (Subject subject : subjects) {
+                    subject.consume(actualTokens - reserved);
+                }
+            }
+        }
+
+        /**
+         * 未调用上游（如命中缓存），全额退还
+         */
+        public void cancel() {
+            settle(0);
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.powerservice.system.service;
+
+import com.powerservice.system.util.RedisCacheUtil;
+import com.powerservice.system.util.TokenUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * AI调用token用量统计
+ * 按用户、会话、终端三个维度在本地累计，定时增量写入Redis Hash（ai_usage:维度:ID），
+ * 便于跨节点汇总和对账。空闲的计数在增量写入后移除，本地只保留近期活跃的用户、会话和终端
+ */
+@Service
+public class TokenUsageService {
+
+    private static final Logger log = LoggerFactory.getLogger(TokenUsageService.class);
+
+    private static final String USAGE_PREFIX = "ai_usage:";
+
+    // 本地计数空闲超过该时间后移除（已写入Redis）
+    private static final long IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    private static final int TOP_N = 10;
+
+    @Autowired
+    private RedisCacheUtil redisCacheUtil;
+
+    private final Map<String, UsageCounter> counters = new ConcurrentHashMap<>();
+
+    private final UsageCounter total = new UsageCounter();
+
+    private final LongAdder estimatedRequests = new LongAdder();
+
+    /**
+     * 记录一次调用的token消耗
+     * @param userId 用户ID，可为空
+     * @param sessionId 会话ID，可为空
+     * @param kioskId 终端标识，可为空
+     * @param usage token消耗
+     */
+    public void record(String userId, String sessionId, String kioskId, TokenUsage usage) {
+        total.add(usage);
+        if (usage.isEstimated()) {
+            estimatedRequests.increment();
+        }
+        if (userId != null && !userId.isEmpty()) {
+            counter("user:" + userId).add(usage);
+        }
+        if (sessionId != null && !sessionId.isEmpty()) {
+            counter("session:" + sessionId).add(usage);
+        }
+        if (kioskId != null && !kioskId.isEmpty()) {
+            counter("kiosk:" + kioskId).add(usage);
+        }
+    }
+
+    /**
+     * 定期将新增用量写入Redis
+     */
+    @Scheduled(fixedDelayString = "${ai.usage.flush-interval-ms:10000}")
+    public void flush() {
+        long now = System.currentTimeMillis();
+        int failures = 0;
+        String lastError = null;
+        for (Map.Entry<String, UsageCounter> entry : counters.entrySet()) {
+            String key = entry.getKey();
+            UsageCounter counter = entry.getValue();
+            long requests = counter.pendingRequests.sumThenReset();
+            long promptTokens = counter.pendingPromptTokens.sumThenReset();
+            long completionTokens = counter.pendingCompletionTokens.sumThenReset();
+            if (requests > 0) {
+                Map<String, Long> deltas = new LinkedHashMap<>();
+                deltas.put("requests", requests);
+                deltas.put("prompt_tokens", promptTokens);
+                deltas.put("completion_tokens", completionTokens);
+                try {
+                    // 三个字段一次原子写入，失败时都未生效，保留增量重试不会重复计数
+                    redisCacheUtil.incrementHash(USAGE_PREFIX + key, deltas);
+                } catch (Exception e) {
+                    // 写入失败时保留增量，下次重试
+                    counter.pendingRequests.add(requests);
+                    counter.pendingPromptTokens.add(promptTokens);
+                    counter.pendingCompletionTokens.add(completionTokens);
+                    failures++;
+                    lastError = e.getMessage();
+                    continue;
+                }
+            }
+            // 空闲的计数已全部写入Redis，可以移除
+            if (now - counter.lastUpdated > IDLE_MILLIS) {
+                counters.remove(key, counter);
+            }
+        }
+        if (failures > 0) {
+            // Redis不可用时各计数都会失败，只汇总输出一条
+            log.warn("AI用量写入Redis失败{}项，下次重试: {}", failures, lastError);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("requests", total.requests.sum());
+        stats.put("promptTokens", total.promptTokens.sum());
+        stats.put("completionTokens", total.completionTokens.sum());
+        stats.put("estimatedRequests", estimatedRequests.sum());
+        stats.put("topUsers", top("user:"));
+        stats.put("topKiosks", top("kiosk:"));
+        return stats;
+    }
+
+    /**
+     * 某一维度近期活跃的计数中按总token数排序的前N名
+     */
+    private List<Map<String, Object>> top(String prefix) {
+        List<Map.Entry<String, UsageCounter>> entries = new ArrayList<>();
+        for (Map.Entry<String, UsageCounter> entry : counters.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(
+                (Map.Entry<String, UsageCounter> entry) -> entry.getValue().totalTokens()).reversed());
+
+        List<Map<String, Object>> result = new ArrayList<>();
+        for (Map.Entry<String, UsageCounter> entry : entries.subList(0, Math.min(TOP_N, entries.size()))) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("id", entry.getKey().substring(prefix.length()));
+            item.put("requests", entry.getValue().requests.sum());
+            item.put("totalTokens", entry.getValue().totalTokens());
+            result.add(item);
+        }
+        return result;
+    }
+
+    private UsageCounter counter(String key) {
+        return counters.computeIfAbsent(key, k -> new UsageCounter());
+    }
+
+    /**
+     * 单个维度的用量计数，pending为尚未写入Redis的增量
+     */
+    private static class UsageCounter {
+
+        private final LongAdder requests = new LongAdder();
+
+        private final LongAdder promptTokens = new LongAdder();
+
+        private final LongAdder completionTokens = new LongAdder();
+
+        private final LongAdder pendingRequests = new LongAdder();
+
+        private final LongAdder pendingPromptTokens = new LongAdder();
+
+        private final LongAdder pendingCompletionTokens = new LongAdder();
+
+        private volatile long lastUpdated = System.currentTimeMillis();
+
+        void add(TokenUsage usage) {
+            requests.increment();
+            promptTokens.add(usage.getPromptTokens());
+            completionTokens.add(usage.getCompletionTokens());
+            pendingRequests.increment();
+            pendingPromptTokens.add(usage.getPromptTokens());
+            pendingCompletionTokens.add(usage.getCompletionTokens());
+            lastUpdated = System.currentTimeMillis();
+        }
+
+        long totalTokens() {
+            return promptTokens.sum() + completionTokens.sum();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.powerservice.system.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * AIMD自适应并发上限
+ * 以观测到的上游延迟为信号调整允许同时进行的调用数：延迟不超过基线的若干倍时，
+ * 每个样本把上限增加 1/上限（约每轮往返加1）；延迟超过阈值或上游过载失败时，
+ * 把上限乘以回退系数，同一轮往返内只回退一次，避免一批慢请求把上限一下压到底。
+ * 基线取观测到的最低延迟，并缓慢向当前延迟靠拢，上游长期变慢后基线随之抬高。
+ * 完整响应耗时与首字延迟相差一个数量级，两类样本各自维护基线，只与同类基线比较
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * 延迟样本的类型
+     */
+    public enum LatencyKind {
+        // 非流式调用：收到完整响应的耗时
+        COMPLETION,
+        // 流式调用：收到首个片段的耗时
+        FIRST_TOKEN
+    }
+
+    // 基线每个样本向当前延迟靠拢的比例
+    private static final double BASELINE_DRIFT = 0.01;
+
+    private final int minLimit;
+
+    private final int maxLimit;
+
+    private final double backoffRatio;
+
+    private final double tolerance;
+
+    private double limit;
+
+    // 按样本类型的基线延迟
+    private final double[] baselineMs = new double[LatencyKind.values().length];
+
+    private long lastDecreaseAt;
+
+    private long increases;
+
+    private long decreases;
+
+    /**
+     * @param initialLimit 初始并发上限
+     * @param minLimit 并发上限的下限
+     * @param maxLimit 并发上限的上限
+     * @param backoffRatio 回退时上限乘以的系数（0~1）
+     * @param tolerance 延迟超过基线的该倍数即视为上游过载
+     */
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double backoffRatio, double tolerance) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+    }
+
+    /**
+     * 当前并发上限
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    /**
+     * 上报一次成功调用
+     * @param kind 延迟样本类型
+     * @param latencyMs 调用延迟（流式调用为首字延迟）
+     * @param inflight 该调用结束前正在进行的调用数
+     * @param now 当前时间戳（毫秒）
+     */
+    public synchronized void onSuccess(LatencyKind kind, long latencyMs, int inflight, long now) {
+        latencyMs = Math.max(1, latencyMs);
+        int k = kind.ordinal();
+        if (baselineMs[k] <= 0 || latencyMs < baselineMs[k]) {
+            baselineMs[k] = latencyMs;
+        } else {
+            baselineMs[k] += (latencyMs - baselineMs[k]) * BASELINE_DRIFT;
+        }
+
+        if (latencyMs > baselineMs[k] * tolerance) {
+            decrease(kind, latencyMs, now);
+        } else if (inflight * 2 >= limit && limit < maxLimit) {
+            // 并发接近上限时才增加，空闲时的快速响应不能说明上游能承受更高并发
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+            increases++;
+        }
+    }
+
+    /**
+     * 上报一次因上游过载失败的调用（超时、限流、服务端错误）
+     * @param kind 延迟样本类型
+     * @param latencyMs 调用开始到失败的时长
+     * @param now 当前时间戳（毫秒）
+     */
+    public synchronized void onDropped(LatencyKind kind, long latencyMs, long now) {
+        decrease(kind, latencyMs, now);
+    }
+
+    private void decrease(LatencyKind kind, long latencyMs, long now) {
+        if (now - lastDecreaseAt < Math.max(latencyMs, (long) baselineMs[kind.ordinal()])) {
+            return;
+        }
+        lastDecreaseAt = now;
+        limit = Math.max(minLimit, limit * backoffRatio);
+        decreases++;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("limit", (int) limit);
+        stats.put("minLimit", minLimit);
+        stats.put("maxLimit", maxLimit);
+        stats.put("completionBaselineMs", Math.round(baselineMs[LatencyKind.COMPLETION.ordinal()]));
+        stats.put("firstTokenBaselineMs", Math.round(baselineMs[LatencyKind.FIRST_TOKEN.ordinal()]));
+        stats.put("increases", increases);
+        stats.put("decreases", decreases);
+        return stats;
+    }
+}
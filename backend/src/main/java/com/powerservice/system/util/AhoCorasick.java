@@ -0,0 +1,171 @@
+package com.powerservice.system.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Aho-Corasick多模式匹配自动机
+ * 所有模式编译成一个自动机，对文本扫描一遍即可找出全部出现的模式，耗时与模式数量无关。
+ * 构建后不可修改，可被多个线程同时使用；转移按字符排序存放，二分查找
+ */
+public final class AhoCorasick {
+
+    /**
+     * 匹配回调
+     */
+    @FunctionalInterface
+    public interface MatchHandler {
+        /**
+         * @param pattern 模式序号（构建时的下标）
+         * @param end 匹配在文本中的结束位置（不含）
+         */
+        void onMatch(int pattern, int end);
+    }
+
+    // 按状态索引：转移字符（升序）及目标状态
+    private final char[][] labels;
+
+    private final int[][] targets;
+
+    private final int[] fail;
+
+    // 按状态索引：到达该状态时匹配的模式（含失败链上的输出）
+    private final int[][] outputs;
+
+    private final int patternCount;
+
+    private AhoCorasick(char[][] labels, int[][] targets, int[] fail, int[][] outputs, int patternCount) {
+        this.labels = labels;
+        this.targets = targets;
+        this.fail = fail;
+        this.outputs = outputs;
+        this.patternCount = patternCount;
+    }
+
+    /**
+     * 编译模式
+     * @param patterns 模式列表，空模式被忽略
+     * @return 自动机
+     */
+    public static AhoCorasick compile(List<String> patterns) {
+        // 1. 构建字典树
+        List<TreeMap<Character, Integer>> trie = new ArrayList<>();
+        List<List<Integer>> nodeOutputs = new ArrayList<>();
+        trie.add(new TreeMap<>());
+        nodeOutputs.add(new ArrayList<>());
+        for (int p = 0; p < patterns.size(); p++) {
+            String pattern = patterns.get(p);
+            if (pattern == null || pattern.isEmpty()) {
+                continue;
+            }
+            int state = 0;
+            for (int i = 0; i < pattern.length(); i++) {
+                Integer next = trie.get(state).get(pattern.charAt(i));
+                if (next == null) {
+                    next = trie.size();
+                    trie.add(new TreeMap<>());
+                    nodeOutputs.add(new ArrayList<>());
+                    trie.get(state).put(pattern.charAt(i), next);
+                }
+                state = next;
+            }
+            nodeOutputs.get(state).add(p);
+        }
+
+        int stateCount = trie.size();
+        char[][] labels = new char[stateCount][];
+        int[][] targets = new int[stateCount][];
+        for (int s = 0; s < stateCount; s++) {
+            TreeMap<Character, Integer> children = trie.get(s);
+            labels[s] = new char[children.size()];
+            targets[s] = new int[children.size()];
+            int i = 0;
+            for (var child : children.entrySet()) {
+                labels[s][i] = child.getKey();
+                targets[s][i] = child.getValue();
+                i++;
+            }
+        }
+
+        // 2. 按层次遍历计算失败链，并把失败状态的输出并入当前状态
+        int[] fail = new int[stateCount];
+        int[][] outputs = new int[stateCount][];
+        outputs[0] = toArray(nodeOutputs.get(0));
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        for (int child : targets[0]) {
+            fail[child] = 0;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            int[] own = toArray(nodeOutputs.get(state));
+            int[] inherited = state == 0 ? new int[0] : outputs[fail[state]];
+            outputs[state] = concat(own, inherited);
+            for (int i = 0; i < labels[state].length; i++) {
+                char c = labels[state][i];
+                int child = targets[state][i];
+                int f = fail[state];
+                int next;
+                while ((next = step(labels, targets, f, c)) < 0 && f != 0) {
+                    f = fail[f];
+                }
+                fail[child] = next >= 0 && next != child ? next : 0;
+                queue.add(child);
+            }
+        }
+        return new AhoCorasick(labels, targets, fail, outputs, patterns.size());
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    public int getStateCount() {
+        return fail.length;
+    }
+
+    /**
+     * 扫描文本，对每个出现的模式回调一次（同一模式出现多次则回调多次）
+     * @param text 文本
+     * @param handler 匹配回调
+     */
+    public void match(CharSequence text, MatchHandler handler) {
+        int state = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            int next;
+            while ((next = step(labels, targets, state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = Math.max(next, 0);
+            for (int pattern : outputs[state]) {
+                handler.onMatch(pattern, i + 1);
+            }
+        }
+    }
+
+    private static int step(char[][] labels, int[][] targets, int state, char c) {
+        int index = Arrays.binarySearch(labels[state], c);
+        return index >= 0 ? targets[state][index] : -1;
+    }
+
+    private static int[] toArray(List<Integer> values) {
+        int[] array = new int[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+
+    private static int[] concat(int[] a, int[] b) {
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
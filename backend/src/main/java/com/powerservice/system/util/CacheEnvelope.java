@@ -0,0 +1,64 @@
+package com.powerservice.system.util;
+
+/**
+ * 带软过期时间的缓存值
+ * Redis中的过期时间为硬过期；软过期之后的值仍可返回（过期但可用），同时触发后台刷新。
+ * 存储格式为 \u0001swr:软过期时间戳\n原值，不带该前缀的旧数据视为未软过期
+ */
+public class CacheEnvelope {
+
+    private static final String PREFIX = "\u0001swr:";
+
+    private final String value;
+
+    private final long softExpireAt;
+
+    private CacheEnvelope(String value, long softExpireAt) {
+        this.value = value;
+        this.softExpireAt = softExpireAt;
+    }
+
+    /**
+     * 编码
+     * @param value 原值
+     * @param softExpireAt 软过期时间戳（毫秒）
+     */
+    public static String encode(String value, long softExpireAt) {
+        return PREFIX + softExpireAt + '\n' + value;
+    }
+
+    /**
+     * 解码
+     * @param raw 缓存中的字符串，可为null
+     * @return 解码结果，raw为null时返回null
+     */
+    public static CacheEnvelope decode(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        if (raw.startsWith(PREFIX)) {
+            int newline = raw.indexOf('\n', PREFIX.length());
+            if (newline > 0) {
+                try {
+                    long softExpireAt = Long.parseLong(raw.substring(PREFIX.length(), newline));
+                    return new CacheEnvelope(raw.substring(newline + 1), softExpireAt);
+                } catch (NumberFormatException ignored) {
+                    // 格式异常时按原值处理
+                }
+            }
+        }
+        return new CacheEnvelope(raw, Long.MAX_VALUE);
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    public long getSoftExpireAt() {
+        return softExpireAt;
+    }
+
+    public boolean isStale(long now) {
+        return now >= softExpireAt;
+    }
+}
@@ -0,0 +1,93 @@
+package com.powerservice.system.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 缓存值编解码
+ * 超过阈值的值以gzip压缩后存储，读取时按gzip魔数（0x1f 0x8b）识别，
+ * 未压缩的值就是UTF-8文本，与直接用StringRedisTemplate写入的旧数据兼容
+ * （UTF-8文本不会以0x1f 0x8b开头）
+ */
+public class CacheValueCodec {
+
+    private static final byte GZIP_MAGIC_0 = (byte) 0x1f;
+
+    private static final byte GZIP_MAGIC_1 = (byte) 0x8b;
+
+    private final int compressionThreshold;
+
+    private final LongAdder compressedValues = new LongAdder();
+
+    private final LongAdder plainValues = new LongAdder();
+
+    private final LongAdder bytesBeforeCompression = new LongAdder();
+
+    private final LongAdder bytesAfterCompression = new LongAdder();
+
+    /**
+     * @param compressionThreshold 压缩阈值（字节），UTF-8编码后不小于该长度的值才压缩，<=0表示不压缩
+     */
+    public CacheValueCodec(int compressionThreshold) {
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    public byte[] encode(String value) {
+        byte[] raw = value.getBytes(StandardCharsets.UTF_8);
+        if (compressionThreshold <= 0 || raw.length < compressionThreshold) {
+            plainValues.increment();
+            return raw;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length / 2);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(raw);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] compressed = out.toByteArray();
+        if (compressed.length >= raw.length) {
+            // 压缩后反而更大（如已是高熵内容），按原文存储
+            plainValues.increment();
+            return raw;
+        }
+        compressedValues.increment();
+        bytesBeforeCompression.add(raw.length);
+        bytesAfterCompression.add(compressed.length);
+        return compressed;
+    }
+
+    public String decode(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length < 2 || bytes[0] != GZIP_MAGIC_0 || bytes[1] != GZIP_MAGIC_1) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(gzip.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long before = bytesBeforeCompression.sum();
+        long after = bytesAfterCompression.sum();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threshold", compressionThreshold);
+        stats.put("compressedValues", compressedValues.sum());
+        stats.put("plainValues", plainValues.sum());
+        stats.put("bytesBeforeCompression", before);
+        stats.put("bytesAfterCompression", after);
+        stats.put("compressionRatio", before == 0 ? 1.0 : (double) after / before);
+        return stats;
+    }
+}
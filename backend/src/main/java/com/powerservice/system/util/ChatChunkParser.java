@@ -0,0 +1,131 @@
+package com.powerservice.system.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * DeepSeek流式响应块解析器
+ * 使用Jackson流式JsonParser直接在字节数组上读取 choices[0].delta.content、finish_reason
+ * 以及末尾片段的usage，其余字段跳过，不构建JSON树
+ */
+public class ChatChunkParser {
+
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+
+    private final JsonFactory jsonFactory;
+
+    public ChatChunkParser(JsonFactory jsonFactory) {
+        this.jsonFactory = jsonFactory;
+    }
+
+    /**
+     * 是否为流结束标记 [DONE]
+     */
+    public static boolean isDone(byte[] data, int length) {
+        if (length != DONE.length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (data[i] != DONE[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 解析一个响应块
+     * @param data 事件数据
+     * @param length 数据长度
+     * @return 增量片段，无内容、未结束且无usage时返回null
+     * @throws IOException JSON格式错误
+     */
+    public ChatDelta parse(byte[] data, int length) throws IOException {
+        String content = null;
+        String finishReason = null;
+        TokenUsage usage = null;
+
+        try (JsonParser parser = jsonFactory.createParser(data, 0, length)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken token = parser.nextToken();
+                if ("usage".equals(field) && token == JsonToken.START_OBJECT) {
+                    usage = readUsage(parser);
+                    continue;
+                }
+                if (!"choices".equals(field) || token != JsonToken.START_ARRAY) {
+                    parser.skipChildren();
+                    continue;
+                }
+                // 只读取第一个choice，其余跳过
+                JsonToken element = parser.nextToken();
+                if (element == JsonToken.START_OBJECT) {
+                    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                        String choiceField = parser.currentName();
+                        JsonToken choiceToken = parser.nextToken();
+                        if ("delta".equals(choiceField) && choiceToken == JsonToken.START_OBJECT) {
+                            content = readContent(parser);
+                        } else if ("finish_reason".equals(choiceField) && choiceToken == JsonToken.VALUE_STRING) {
+                            finishReason = parser.getText();
+                        } else {
+                            parser.skipChildren();
+                        }
+                    }
+                    element = parser.nextToken();
+                }
+                while (element != null && element != JsonToken.END_ARRAY) {
+                    parser.skipChildren();
+                    element = parser.nextToken();
+                }
+            }
+        }
+
+        if ((content == null || content.isEmpty()) && finishReason == null && usage == null) {
+            return null;
+        }
+        return new ChatDelta(content, finishReason, usage);
+    }
+
+    /**
+     * 读取delta对象中的content字段，解析器位于delta的START_OBJECT
+     */
+    private String readContent(JsonParser parser) throws IOException {
+        String content = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("content".equals(field) && token == JsonToken.VALUE_STRING) {
+                content = parser.getText();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return content;
+    }
+
+    /**
+     * 读取usage对象，解析器位于usage的START_OBJECT
+     */
+    private TokenUsage readUsage(JsonParser parser) throws IOException {
+        int promptTokens = 0;
+        int completionTokens = 0;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken token = parser.nextToken();
+            if ("prompt_tokens".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                promptTokens = parser.getIntValue();
+            } else if ("completion_tokens".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                completionTokens = parser.getIntValue();
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return new TokenUsage(promptTokens, completionTokens, false);
+    }
+}
@@ -0,0 +1,41 @@
+package com.powerservice.system.util;
+
+/**
+ * 流式对话增量片段
+ * 对应DeepSeek流式响应中 choices[0].delta 的内容，最后一个片段可能只携带usage
+ */
+public class ChatDelta {
+    private final String content;  // 本次增量的文本内容
+    private final String finishReason;  // 结束原因，未结束时为null
+    private final TokenUsage usage;  // 本次调用的token消耗，仅最后一个片段携带
+
+    public ChatDelta(String content, String finishReason) {
+        this(content, finishReason, null);
+    }
+
+    public ChatDelta(String content, String finishReason, TokenUsage usage) {
+        this.content = content != null ? content : "";
+        this.finishReason = finishReason;
+        this.usage = usage;
+    }
+
+    public static ChatDelta of(String content) {
+        return new ChatDelta(content, null);
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getFinishReason() {
+        return finishReason;
+    }
+
+    public TokenUsage getUsage() {
+        return usage;
+    }
+
+    public boolean hasContent() {
+        return !content.isEmpty();
+    }
+}
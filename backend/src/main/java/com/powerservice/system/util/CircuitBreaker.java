@@ -0,0 +1,195 @@
+package com.powerservice.system.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 滚动窗口熔断器
+ * 按秒分桶统计最近一段时间的成功/失败次数，失败率超过阈值时打开熔断，
+ * 打开期间请求直接拒绝；冷却时间过后进入半开状态，只放行一个探测请求，
+ * 探测成功则关闭熔断，失败则重新打开
+ */
+public class CircuitBreaker {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int windowSeconds;
+
+    private final double failureRateThreshold;
+
+    private final int minimumCalls;
+
+    private final long openDurationMillis;
+
+    private final long[] bucketSeconds;
+
+    private final int[] successes;
+
+    private final int[] failures;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private boolean probeInFlight;
+
+    private long rejectedCalls;
+
+    private long openCount;
+
+    /**
+     * @param windowSeconds 统计窗口长度（秒）
+     * @param failureRateThreshold 打开熔断的失败率阈值（0~1）
+     * @param minimumCalls 窗口内至少有这么多次调用才计算失败率
+     * @param openDurationMillis 熔断打开后的冷却时间
+     */
+    public CircuitBreaker(int windowSeconds, double failureRateThreshold, int minimumCalls, long openDurationMillis) {
+        this.windowSeconds = windowSeconds;
+        this.failureRateThreshold = failureRateThreshold;
+        this.minimumCalls = minimumCalls;
+        this.openDurationMillis = openDurationMillis;
+        this.bucketSeconds = new long[windowSeconds];
+        this.successes = new int[windowSeconds];
+        this.failures = new int[windowSeconds];
+    }
+
+    /**
+     * 请求是否可以发往上游
+     * @return false表示熔断中，调用方应直接走降级逻辑
+     */
+    public synchronized boolean tryAcquire() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+                    rejectedCalls++;
+                    return false;
+                }
+                state = State.HALF_OPEN;
+                probeInFlight = true;
+                return true;
+            default:
+                if (probeInFlight) {
+                    rejectedCalls++;
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+        }
+    }
+
+    /**
+     * 当前是否会放行请求，不改变状态：关闭时放行，打开且冷却时间已过或半开且没有探测请求时放行一个探测请求
+     * 供调用前判断是否值得尝试上游，实际调用仍需经过tryAcquire
+     */
+    public synchronized boolean permitsCalls() {
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return System.currentTimeMillis() - openedAt >= openDurationMillis;
+            default:
+                return !probeInFlight;
+        }
+    }
+
+    public synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            state = State.CLOSED;
+            probeInFlight = false;
+            resetWindow();
+            return;
+        }
+        successes[bucket()]++;
+    }
+
+    public synchronized void onFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return;
+        }
+        if (state == State.OPEN) {
+            return;
+        }
+        failures[bucket()]++;
+
+        long now = System.currentTimeMillis() / 1000;
+        int totalSuccesses = 0;
+        int totalFailures = 0;
+        for (int i = 0; i < windowSeconds; i++) {
+            if (now - bucketSeconds[i] < windowSeconds) {
+                totalSuccesses += successes[i];
+                totalFailures += failures[i];
+            }
+        }
+        int total = totalSuccesses + totalFailures;
+        if (total >= minimumCalls && (double) totalFailures / total >= failureRateThreshold) {
+            open();
+        }
+    }
+
+    /**
+     * 请求被取消（既不算成功也不算失败），半开状态下释放探测名额
+     */
+    public synchronized void onCancel() {
+        if (state == State.HALF_OPEN) {
+            probeInFlight = false;
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized Map<String, Object> getStats() {
+        long now = System.currentTimeMillis() / 1000;
+        int totalSuccesses = 0;
+        int totalFailures = 0;
+        for (int i = 0; i < windowSeconds; i++) {
+            if (now - bucketSeconds[i] < windowSeconds) {
+                totalSuccesses += successes[i];
+                totalFailures += failures[i];
+            }
+        }
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("state", state.name());
+        stats.put("windowSuccesses", totalSuccesses);
+        stats.put("windowFailures", totalFailures);
+        stats.put("rejectedCalls", rejectedCalls);
+        stats.put("openCount", openCount);
+        return stats;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.currentTimeMillis();
+        probeInFlight = false;
+        openCount++;
+        resetWindow();
+    }
+
+    private void resetWindow() {
+        for (int i = 0; i < windowSeconds; i++) {
+            bucketSeconds[i] = 0;
+            successes[i] = 0;
+            failures[i] = 0;
+        }
+    }
+
+    /**
+     * 当前秒对应的桶，桶属于更早的时间时先清零
+     */
+    private int bucket() {
+        long second = System.currentTimeMillis() / 1000;
+        int index = (int) (second % windowSeconds);
+        if (bucketSeconds[index] != second) {
+            bucketSeconds[index] = second;
+            successes[index] = 0;
+            failures[index] = 0;
+        }
+        return index;
+    }
+}
@@ -1,56 +1,62 @@
 package com.powerservice.system.util;
-import java.io.InputStream;  // 新增这一行
-import okhttp3.*;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import java.io.BufferedReader;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.ChannelOption;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.netty.ByteBufFlux;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
-import java.util.HashMap;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.ArrayList;
-import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
- * 对话消息类，用于表示多轮对话中的一条消息
+ * DeepSeek API客户端工具类
+ * 用于封装DeepSeek API的调用逻辑
+ * 基于reactor-netty实现非阻塞调用，所有请求共享同一个连接池和ObjectMapper
  */
-class Message {
-    private String role;  // 角色：user或assistant
-    private String content;  // 消息内容
+@Component
+public class DeepSeekApiClient {
 
-    public Message(String role, String content) {
-        this.role = role;
-        this.content = content;
-    }
+    private static final Logger log = LoggerFactory.getLogger(DeepSeekApiClient.class);
 
-    public String getRole() {
-        return role;
-    }
+    // 电力服务营业厅智能问答助手的系统提示词
+    private static final String SYSTEM_PROMPT = "你是电力服务营业厅智能问答助手，需用亲切通俗的语气服务用户。核心负责解答电费查询缴纳、电表报装/故障报修、用电套餐办理、峰谷电价标准、停电通知查询、充电桩安装申请这些电力相关问题；回答需简洁，步骤清晰，遇到无法解答的问题请引导用户拨打电力客服热线 95598，禁止回复与电力服务无关的内容。";
 
-    public String getContent() {
-        return content;
-    }
+    private static final String DEFAULT_PROMPT = "如何使用电力服务";
 
-    public Map<String, String> toMap() {
-        Map<String, String> map = new HashMap<>();
-        map.put("role", role);
-        map.put("content", content);
-        return map;
-    }
-}
+    private static final String DEFAULT_ANSWER = "感谢您的提问！我是电力服务智能助手，请问还有什么可以帮您的？";
 
-/**
- * DeepSeek API客户端工具类
- * 用于封装DeepSeek API的调用逻辑
- */
-@Component
-public class DeepSeekApiClient {
+    private static final String NETWORK_ERROR_MESSAGE = "网络错误: 无法连接到API服务器，请检查网络连接";
+
+    // 模拟响应的id前缀：mock为模拟服务模式，fallback为上游调用失败后的兜底
+    private static final String MOCK_ID_PREFIX = "mock-";
+
+    private static final String FALLBACK_ID_PREFIX = "fallback-";
+
+    // 模拟流式输出的速率（字符/秒），模拟上游生成速度
+    private static final int MOCK_CHARS_PER_SECOND = 100;
 
     // 注入配置参数
     @Value("${deepseek.api-key}")
@@ -66,240 +72,430 @@ public class DeepSeekApiClient {
     @Value("${deepseek.use-mock:false}")
     private boolean useMock;
 
-    // 为OkHttpClient添加超时设置，解决超时问题
-    private final OkHttpClient okHttpClient = new OkHttpClient.Builder()
-            .connectTimeout(30, java.util.concurrent.TimeUnit.SECONDS) // 连接超时30秒
-            .readTimeout(60, java.util.concurrent.TimeUnit.SECONDS)    // 读取超时60秒
-            .writeTimeout(60, java.util.concurrent.TimeUnit.SECONDS)   // 写入超时60秒
-            .callTimeout(120, java.util.concurrent.TimeUnit.SECONDS)   // 调用总超时120秒
-            .build();
+    // 连接池最大连接数，决定同一时刻可并发的上游请求数
+    @Value("${deepseek.max-connections:200}")
+    private int maxConnections;
+
+    // 连接池满时等待空闲连接的最长时间
+    @Value("${deepseek.pending-acquire-timeout-ms:5000}")
+    private long pendingAcquireTimeoutMs;
+
+    // 空闲连接的最长保留时间
+    @Value("${deepseek.max-idle-time-ms:30000}")
+    private long maxIdleTimeMs;
+
+    @Value("${deepseek.connect-timeout-ms:5000}")
+    private int connectTimeoutMs;
+
+    // 两次网络读之间允许的最长间隔，流式响应下即相邻两个片段之间的最长等待
+    @Value("${deepseek.response-timeout-ms:60000}")
+    private long responseTimeoutMs;
+
+    @Value("${deepseek.temperature:0.3}")
+    private double temperature;
+
+    @Value("${deepseek.max-tokens:256}")
+    private int maxTokens;
+
+    // 限制流式回复长度，符合营业厅问答的简洁需求
+    @Value("${deepseek.stream-max-tokens:200}")
+    private int streamMaxTokens;
+
+    private final ObjectMapper objectMapper;
+
+    private final StreamPacer streamPacer;
+
+    private final ChatChunkParser chatChunkParser;
+
+    private final DeepSeekResilience resilience;
+
+    private final LlmAdmissionScheduler admission;
+
+    private ConnectionProvider connectionProvider;
+
+    private HttpClient httpClient;
+
+    private String completionsUrl;
 
     // 模拟回答映射表
-    private static final Map<String, String> mockResponses = new HashMap<>();
+    private static final Map<String, String> mockResponses = new LinkedHashMap<>();
+
+    // 模拟回答的问题（归一化后）编译成的自动机，模式序号对应mockAnswers下标
+    private static final AhoCorasick mockMatcher;
+
+    private static final String[] mockQuestions;
+
+    private static final String[] mockAnswers;
 
     static {
         // 初始化常见问题的模拟回答
         String paymentMethods = "您可以通过以下方式快捷缴费：\n1. 微信/支付宝生活缴费功能\n2. 电力公司官方APP\n3. 银行代扣服务\n4. 线下营业厅自助终端";
-        
+
         // 添加多种关于缴费方法的问题变体
         mockResponses.put("如何快捷缴费", paymentMethods);
         mockResponses.put("缴电费有那些方法", paymentMethods);
         mockResponses.put("电费缴费方式", paymentMethods);
         mockResponses.put("怎么交电费", paymentMethods);
         mockResponses.put("缴费方式", paymentMethods);
-        
+
         mockResponses.put("电费查询", "您可以通过以下方式查询电费：\n1. 登录电力公司官方网站\n2. 使用电力公司APP\n3. 发送短信查询\n4. 拨打电力服务热线");
         mockResponses.put("故障报修", "如果您遇到电力故障，请拨打电力服务热线95598进行报修，或通过官方APP在线提交报修申请。");
         mockResponses.put("开户流程", "电力开户流程：\n1. 准备身份证、房产证等材料\n2. 前往当地电力营业厅\n3. 填写开户申请表\n4. 工作人员审核后办理开户");
         mockResponses.put("电价标准", "当前电价标准根据不同用户类型有所区别：\n- 居民用电：0.56元/度（第一档）\n- 商业用电：1.02元/度\n- 工业用电：0.85元/度");
+
+        mockQuestions = mockResponses.keySet().stream().map(TextNormalizer::normalize).toArray(String[]::new);
+        mockAnswers = mockResponses.values().toArray(new String[0]);
+        mockMatcher = AhoCorasick.compile(List.of(mockQuestions));
+    }
+
+    public DeepSeekApiClient(ObjectMapper objectMapper, StreamPacer streamPacer, DeepSeekResilience resilience,
+                             LlmAdmissionScheduler admission) {
+        this.objectMapper = objectMapper;
+        this.streamPacer = streamPacer;
+        this.resilience = resilience;
+        this.admission = admission;
+        this.chatChunkParser = new ChatChunkParser(objectMapper.getFactory());
     }
 
     /**
-     * 调用DeepSeek对话API（单轮对话）
+     * 初始化共享连接池和HttpClient
+     */
+    @PostConstruct
+    public void init() {
+        connectionProvider = ConnectionProvider.builder("deepseek")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(pendingAcquireTimeoutMs))
+                .maxIdleTime(Duration.ofMillis(maxIdleTimeMs))
+                .build();
+
+        httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeoutMs)
+                .responseTimeout(Duration.ofMillis(responseTimeoutMs))
+                .headers(headers -> headers
+                        .set(HttpHeaderNames.AUTHORIZATION, "Bearer " + apiKey)  // 鉴权头
+                        .set(HttpHeaderNames.CONTENT_TYPE, "application/json"));
+
+        completionsUrl = baseUrl + "/chat/completions";  // DeepSeek对话接口
+    }
+
+    /**
+     * 关闭时释放连接池
+     */
+    @PreDestroy
+    public void destroy() {
+        if (connectionProvider != null) {
+            connectionProvider.disposeLater().block(Duration.ofSeconds(5));
+        }
+    }
+
+    /**
+     * 预热：初始化事件循环和DNS解析，并并发请求模型列表接口，预先建立连接（含TLS握手）放入连接池。
+     * 不经过熔断统计，返回的状态码不影响结果，模拟模式下直接完成
+     * @param connections 预先建立的连接数
+     */
+    public Mono<Void> warmUp(int connections) {
+        if (useMock) {
+            return Mono.empty();
+        }
+        return httpClient.warmup()
+                .thenMany(Flux.range(0, connections)
+                        .flatMap(i -> httpClient.get()
+                                .uri(baseUrl + "/models")
+                                .responseSingle((response, body) -> body.then())))
+                .then();
+    }
+
+    /**
+     * 调用DeepSeek对话API（单轮对话，非阻塞）
      * @param prompt 用户提问内容
      * @return AI响应结果（原始JSON格式）
      */
-    public String chatWithDeepSeek(String prompt) {
-        List<Message> messages = new ArrayList<>();
+    public Mono<String> chat(String prompt) {
+        return chat(prompt, Collections.emptyList());
+    }
+
+    /**
+     * 调用DeepSeek对话API（携带历史上下文，非阻塞）
+     * @param prompt 用户提问内容
+     * @param history 此前的对话消息，按时间顺序
+     * @return AI响应结果（原始JSON格式）
+     */
+    public Mono<String> chat(String prompt, List<Message> history) {
+        return chat(prompt, history, RequestPriority.NORMAL);
+    }
+
+    /**
+     * 调用DeepSeek对话API（携带历史上下文，指定优先级，非阻塞）
+     * @param prompt 用户提问内容
+     * @param history 此前的对话消息，按时间顺序
+     * @param priority 上游调用优先级
+     * @return AI响应结果（原始JSON格式）
+     */
+    public Mono<String> chat(String prompt, List<Message> history, RequestPriority priority) {
+        List<Message> messages = new ArrayList<>(history);
         messages.add(new Message("user", prompt));
-        return chatWithDeepSeek(messages);
+        return chat(messages, priority);
     }
 
     /**
-     * 调用DeepSeek对话API（多轮对话）
+     * 调用DeepSeek对话API（多轮对话，非阻塞）
      * @param messages 对话历史消息列表
      * @return AI响应结果（原始JSON格式）
      */
-    public String chatWithDeepSeek(List<Message> messages) {
+    public Mono<String> chat(List<Message> messages) {
+        return chat(messages, RequestPriority.NORMAL);
+    }
+
+    /**
+     * 调用DeepSeek对话API（多轮对话，指定优先级，非阻塞）
+     * 经准入调度、熔断、自适应超时和重试保护，调用失败、排队超时或熔断时返回模拟响应
+     * @param messages 对话历史消息列表
+     * @param priority 上游调用优先级
+     * @return AI响应结果（原始JSON格式）
+     */
+    public Mono<String> chat(List<Message> messages, RequestPriority priority) {
+        String lastPrompt = lastUserPrompt(messages);
+
         // 如果使用模拟服务
         if (useMock) {
-            // 获取最后一条用户消息作为prompt
-            String lastPrompt = messages.stream()
-                    .filter(m -> "user".equals(m.getRole()))
-                    .reduce((first, second) -> second)
-                    .map(Message::getContent)
-                    .orElse("如何使用电力服务");
-            return getMockResponse(lastPrompt);
+            return Mono.fromSupplier(() -> getMockResponse(lastPrompt, MOCK_ID_PREFIX));
         }
 
-        // 使用Jackson构造JSON请求体
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectNode requestBodyNode = objectMapper.createObjectNode();
-        requestBodyNode.put("model", model);
-        requestBodyNode.put("temperature", 0.3); // 降低temperature，减少创造性思考，加快生成速度
-        requestBodyNode.put("max_tokens", 256);
+        String requestBody = buildRequestBody(messages, maxTokens, false);
+
+        return admission.schedule(priority, () -> resilience.protect(() -> httpClient.post()
+                        .uri(completionsUrl)
+                        .send(ByteBufFlux.fromString(Mono.just(requestBody), StandardCharsets.UTF_8, ByteBufAllocator.DEFAULT))
+                        .responseSingle((response, body) -> {
+                            int status = response.status().code();
+                            if (status / 100 != 2) {
+                                return Mono.error(new DeepSeekApiException(
+                                        "API调用失败: 服务器返回状态码 " + status, status));
+                            }
+                            return body.asString(StandardCharsets.UTF_8);
+                        })))
+                .onErrorResume(e -> {
+                    // 任何异常都返回模拟响应
+                    log.warn("API调用异常，返回模拟响应: {}", e.getMessage());
+                    return Mono.just(getMockResponse(lastPrompt, FALLBACK_ID_PREFIX));
+                });
+    }
 
-        // 构造messages数组
-        ArrayNode messagesArray = requestBodyNode.putArray("messages");
-        for (Message message : messages) {
-            ObjectNode messageNode = messagesArray.addObject();
-            messageNode.put("role", message.getRole());
-            messageNode.put("content", message.getContent());
-        }
+    /**
+     * 调用DeepSeek对话API（单轮对话，阻塞等待结果）
+     * 供无法使用响应式接口的调用方使用
+     * @param prompt 用户提问内容
+     * @return AI响应结果（原始JSON格式）
+     */
+    public String chatWithDeepSeek(String prompt) {
+        return chat(prompt).block();
+    }
 
-        // 转换为JSON字符串
-        String requestBody;
-        if (requestBodyNode != null) {
-            try {
-                requestBody = objectMapper.writeValueAsString(requestBodyNode);
-            } catch (JsonProcessingException e) {
-                // 处理JSON序列化异常
-                throw new RuntimeException("Failed to serialize requestBodyNode to JSON string", e);
-            }
-        } else {
-            requestBody = null;
+    /**
+     * 调用DeepSeek对话API（多轮对话，阻塞等待结果）
+     * @param messages 对话历史消息列表
+     * @return AI响应结果（原始JSON格式）
+     */
+    public String chatWithDeepSeek(List<Message> messages) {
+        return chat(messages).block();
+    }
+
+    /**
+     * 从非流式响应JSON中提取回答文本 choices[0].message.content
+     * @param responseJson AI响应结果（原始JSON格式）
+     * @return 回答文本，解析失败时返回空字符串
+     */
+    public String extractAnswer(String responseJson) {
+        try {
+            return objectMapper.readTree(responseJson)
+                    .path("choices").path(0).path("message").path("content").asText("");
+        } catch (JsonProcessingException e) {
+            return "";
         }
+    }
+
+    /**
+     * 流式调用的最大生成token数
+     */
+    public int getStreamMaxTokens() {
+        return streamMaxTokens;
+    }
 
+    /**
+     * 是否使用模拟服务（不调用上游）
+     */
+    public boolean isMockEnabled() {
+        return useMock;
+    }
 
-        // 构建请求
-        Request request = new Request.Builder()
-                .url(baseUrl + "/chat/completions")  // DeepSeek对话接口
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                .addHeader("Authorization", "Bearer " + apiKey)  // 鉴权头
-                .addHeader("Content-Type", "application/json")
-                .build();
+    /**
+     * 是否为上游调用失败后返回的兜底响应，兜底回答不应写入缓存
+     * @param responseJson AI响应结果（原始JSON格式）
+     */
+    public boolean isFallbackResponse(String responseJson) {
+        try {
+            return objectMapper.readTree(responseJson).path("id").asText("").startsWith(FALLBACK_ID_PREFIX);
+        } catch (JsonProcessingException e) {
+            return false;
+        }
+    }
 
-        // 发送请求并解析响应
-        try (Response response = okHttpClient.newCall(request).execute()) {
-            if (!response.isSuccessful()) {
-                // 如果真实API调用失败，尝试返回模拟响应
-                System.err.println("真实API调用失败，返回模拟响应: " + response.code() + " " + response.message());
-                // 获取最后一条用户消息作为prompt
-                String lastPrompt = messages.stream()
-                        .filter(m -> "user".equals(m.getRole()))
-                        .reduce((first, second) -> second)
-                        .map(Message::getContent)
-                        .orElse("如何使用电力服务");
-                return getMockResponse(lastPrompt);
+    /**
+     * 从非流式响应JSON中提取token消耗 usage
+     * @param responseJson AI响应结果（原始JSON格式）
+     * @return token消耗，响应中没有usage或解析失败时返回null
+     */
+    public TokenUsage extractUsage(String responseJson) {
+        try {
+            JsonNode usage = objectMapper.readTree(responseJson).path("usage");
+            if (!usage.isObject()) {
+                return null;
             }
-            return response.body().string();  // 返回原始JSON响应
-        } catch (Exception e) {
-            // 任何异常都返回模拟响应
-            System.err.println("API调用异常，返回模拟响应: " + e.getMessage());
-            // 获取最后一条用户消息作为prompt
-            String lastPrompt = messages.stream()
-                    .filter(m -> "user".equals(m.getRole()))
-                    .reduce((first, second) -> second)
-                    .map(Message::getContent)
-                    .orElse("如何使用电力服务");
-            return getMockResponse(lastPrompt);
+            return new TokenUsage(usage.path("prompt_tokens").asInt(0),
+                    usage.path("completion_tokens").asInt(0), false);
+        } catch (JsonProcessingException e) {
+            return null;
         }
     }
-    
+
     /**
-     * 获取模拟AI响应
-     * @param prompt 用户提问
-     * @return 模拟的AI响应（JSON格式）
+     * 调用DeepSeek对话API（流式响应，单轮对话）
+     * 自动附带电力服务营业厅的系统提示词
+     * @param prompt 用户提问内容
+     * @return 增量片段流
      */
-    private String getMockResponse(String prompt) {
-        // 查找匹配的模拟回答
-        String answer = mockResponses.getOrDefault(prompt, "感谢您的提问！我是电力服务智能助手，请问还有什么可以帮您的？");
+    public Flux<ChatDelta> chatStream(String prompt) {
+        return chatStream(prompt, Collections.emptyList());
+    }
 
-        // 构建符合DeepSeek API响应格式的JSON
-        return buildMockResponseJson(answer, prompt.length());
+    /**
+     * 调用DeepSeek对话API（流式响应，携带历史上下文）
+     * 自动附带电力服务营业厅的系统提示词
+     * @param prompt 用户提问内容
+     * @param history 此前的对话消息，按时间顺序
+     * @return 增量片段流
+     */
+    public Flux<ChatDelta> chatStream(String prompt, List<Message> history) {
+        return chatStream(prompt, history, RequestPriority.NORMAL);
     }
 
     /**
-     * 构建模拟响应JSON
-     * @param answer 回答内容
-     * @param promptLength 提问长度
-     * @return 模拟的AI响应（JSON格式）
+     * 调用DeepSeek对话API（流式响应，携带历史上下文，指定优先级）
+     * 自动附带电力服务营业厅的系统提示词
+     * @param prompt 用户提问内容
+     * @param history 此前的对话消息，按时间顺序
+     * @param priority 上游调用优先级
+     * @return 增量片段流
      */
-    private String buildMockResponseJson(String answer, int promptLength) {
-        return String.format("{\"id\": \"mock-%d\", \"object\": \"chat.completion\", \"created\": %d, \"model\": \"%s\", \"choices\": [{\"index\": 0, \"message\": {\"role\": \"assistant\", \"content\": \"%s\"}, \"finish_reason\": \"stop\"}], \"usage\": {\"prompt_tokens\": %d, \"completion_tokens\": %d, \"total_tokens\": %d}}",
-                System.currentTimeMillis(),
-                System.currentTimeMillis() / 1000,
-                model,
-                answer.replace("\"", "\\\""),
-                promptLength / 2, // 估算的prompt tokens
-                answer.length() / 2, // 估算的completion tokens
-                (promptLength + answer.length()) / 2); // 估算的总tokens
+    public Flux<ChatDelta> chatStream(String prompt, List<Message> history, RequestPriority priority) {
+        List<Message> messages = new ArrayList<>(history.size() + 2);
+        messages.add(new Message("system", SYSTEM_PROMPT));
+        messages.addAll(history);
+        messages.add(new Message("user", prompt));
+        return chatStream(messages, priority);
     }
-    
+
     /**
      * 调用DeepSeek对话API（流式响应，多轮对话）
      * @param messages 对话历史消息列表
-     * @param callback 流式响应回调函数，用于处理实时返回的内容
+     * @return 增量片段流
      */
-    public void chatWithDeepSeekStream(List<Message> messages, Consumer<String> callback) {
-        System.out.println("[DeepSeek API] 开始处理流式请求");
-        
+    public Flux<ChatDelta> chatStream(List<Message> messages) {
+        return chatStream(messages, RequestPriority.NORMAL);
+    }
+
+    /**
+     * 调用DeepSeek对话API（流式响应，多轮对话，指定优先级）
+     * 上游错误以 DeepSeekApiException 形式在流中抛出，message 可直接展示给用户；
+     * 熔断打开、排队超时或队列已满时抛出 UpstreamUnavailableException
+     * @param messages 对话历史消息列表
+     * @param priority 上游调用优先级
+     * @return 增量片段流
+     */
+    public Flux<ChatDelta> chatStream(List<Message> messages, RequestPriority priority) {
         // 如果使用模拟服务
         if (useMock) {
-            System.out.println("[DeepSeek API] 使用模拟服务");
-            // 获取最后一条用户消息作为prompt
-            String lastPrompt = messages.stream()
-                    .filter(m -> "user".equals(m.getRole()))
-                    .reduce((first, second) -> second)
-                    .map(Message::getContent)
-                    .orElse("如何使用电力服务");
-                    
-            System.out.println("[DeepSeek API] 模拟请求内容: " + lastPrompt);
-                    
-            // 模拟流式响应
-            String mockResponse = getMockResponse(lastPrompt);
-            
-            System.out.println("[DeepSeek API] 模拟响应内容: " + mockResponse);
-            
-            // 提取实际的回答内容
-            String content;
-            try {
-                int contentStart = mockResponse.indexOf("\"content\": \"") + 11; // 11 is the length of "content": ""
-                int contentEnd = mockResponse.indexOf("\"}, \"finish_reason\"");
-                if (contentStart < 11 || contentEnd <= contentStart) {
-                    // 解析失败，使用默认回答
-                    content = "感谢您的提问！我是电力服务智能助手，请问还有什么可以帮您的？";
-                } else {
-                    content = mockResponse.substring(contentStart, contentEnd);
-                    content = content.replace("\\\"", "");
-                }
-            } catch (Exception e) {
-                // 解析异常，使用默认回答
-                System.err.println("[DeepSeek API] 模拟响应解析异常: " + e.getMessage());
-                e.printStackTrace();
-                content = "感谢您的提问！我是电力服务智能助手，请问还有什么可以帮您的？";
+            return mockStream(lastUserPrompt(messages));
+        }
+
+        String requestBody = buildRequestBody(messages, streamMaxTokens, true);
+
+        return admission.scheduleStream(priority, () -> resilience.protectStream(() -> httpClient.post()
+                        .uri(completionsUrl)
+                        .send(ByteBufFlux.fromString(Mono.just(requestBody), StandardCharsets.UTF_8, ByteBufAllocator.DEFAULT))
+                        .responseConnection((response, connection) -> {
+                            int status = response.status().code();
+                            if (status / 100 != 2) {
+                                // 读取错误响应内容
+                                return connection.inbound().receive().aggregate()
+                                        .asString(StandardCharsets.UTF_8)
+                                        .defaultIfEmpty("")
+                                        .flatMap(errorResponse -> Mono.<ChatDelta>error(new DeepSeekApiException(
+                                                "API调用失败: 服务器返回状态码 " + status + "，错误信息: " + errorResponse,
+                                                status)));
+                            }
+                            // 每个响应独立的增量解码器，直接在网络缓冲区上解析SSE事件。
+                            // 缓冲区在onNext返回后即被释放，须在map中同步解码，不能交给带预取的concatMapIterable延后执行
+                            SseFrameDecoder decoder = new SseFrameDecoder();
+                            return connection.inbound().receive()
+                                    .map(buf -> decodeDeltas(decoder, buf))
+                                    .concatMapIterable(Function.identity());
+                        })))
+                .onErrorMap(e -> !(e instanceof DeepSeekApiException),
+                        e -> new DeepSeekApiException(NETWORK_ERROR_MESSAGE, e));
+    }
+
+    /**
+     * 解码一段网络数据中的完整SSE事件，提取 choices[0].delta
+     * @param decoder 当前响应的解码器
+     * @param buf 网络数据
+     * @return 增量片段，[DONE]及无内容的事件被忽略
+     */
+    private List<ChatDelta> decodeDeltas(SseFrameDecoder decoder, ByteBuf buf) {
+        List<ChatDelta> deltas = new ArrayList<>(2);
+        decoder.decode(buf, (event, id, data, length) -> {
+            if (ChatChunkParser.isDone(data, length)) {
+                return;
             }
-            
-            System.out.println("[DeepSeek API] 提取的模拟回答内容: " + content);
-            
-            // 简单模拟流式输出，将响应按字符分割，逐段发送
-            boolean interrupted = false;
             try {
-                for (int i = 0; i < content.length() && !interrupted; i += 10) {
-                    int end = Math.min(i + 10, content.length());
-                    try {
-                        Thread.sleep(100); // 模拟打字效果
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        interrupted = true;
-                        System.err.println("[DeepSeek API] 模拟流式响应被中断: " + e.getMessage());
-                        break;
-                    }
-                    String chunk = content.substring(i, end);
-                    System.out.println("[DeepSeek API] 发送模拟响应片段: " + chunk);
-                    callback.accept(chunk);
-                }
-            } finally {
-                // 确保即使中断也能完成响应处理
-                if (interrupted) {
-                    // 可以选择发送一个结束标记，但这里保持简单
-                    System.out.println("[DeepSeek API] 模拟流式响应已中断");
-                } else {
-                    System.out.println("[DeepSeek API] 模拟流式响应完成");
+                ChatDelta delta = chatChunkParser.parse(data, length);
+                if (delta != null) {
+                    deltas.add(delta);
                 }
+            } catch (IOException e) {
+                // 忽略JSON解析错误
             }
-            return;
-        }
+        });
+        return deltas;
+    }
 
-        // 使用Jackson构造JSON请求体
-        System.out.println("[DeepSeek API] 使用真实API服务");
-        
-        ObjectMapper objectMapper = new ObjectMapper();
+    /**
+     * 模拟流式响应，由共享的节奏调度器分片发送，不占用线程等待
+     * @param prompt 用户提问
+     * @return 增量片段流
+     */
+    private Flux<ChatDelta> mockStream(String prompt) {
+        String content = findMockAnswer(prompt);
+        return streamPacer.pace(content, MOCK_CHARS_PER_SECOND)  // 模拟打字效果
+                .map(ChatDelta::of);
+    }
+
+    /**
+     * 构造请求体JSON
+     * @param messages 对话消息列表
+     * @param maxTokens 最大回复token数
+     * @param stream 是否启用流式响应
+     * @return JSON字符串
+     */
+    private String buildRequestBody(List<Message> messages, int maxTokens, boolean stream) {
         ObjectNode requestBodyNode = objectMapper.createObjectNode();
         requestBodyNode.put("model", model);
-        requestBodyNode.put("temperature", 0.3); // 降低temperature，减少创造性思考，加快生成速度
-        requestBodyNode.put("max_tokens",200 ); // 限制回复长度，符合营业厅问答的简洁需求
-        requestBodyNode.put("stream", true); // 启用流式响应
+        requestBodyNode.put("temperature", temperature); // 降低temperature，减少创造性思考，加快生成速度
+        requestBodyNode.put("max_tokens", maxTokens);
+        if (stream) {
+            requestBodyNode.put("stream", true); // 启用流式响应
+            requestBodyNode.putObject("stream_options").put("include_usage", true); // 末尾片段返回token消耗
+        }
 
         // 构造messages数组
         ArrayNode messagesArray = requestBodyNode.putArray("messages");
@@ -309,101 +505,81 @@ public class DeepSeekApiClient {
             messageNode.put("content", message.getContent());
         }
 
-        // 转换为JSON字符串
-        String requestBody;
         try {
-            requestBody = objectMapper.writeValueAsString(requestBodyNode);
+            return objectMapper.writeValueAsString(requestBodyNode);
         } catch (JsonProcessingException e) {
             // 处理JSON序列化异常
             throw new RuntimeException("Failed to serialize request body to JSON", e);
         }
+    }
 
+    /**
+     * 获取最后一条用户消息作为prompt
+     */
+    private String lastUserPrompt(List<Message> messages) {
+        return messages.stream()
+                .filter(m -> "user".equals(m.getRole()))
+                .reduce((first, second) -> second)
+                .map(Message::getContent)
+                .orElse(DEFAULT_PROMPT);
+    }
 
-        // 打印请求日志
-        System.out.println("[DeepSeek API] 请求URL: " + baseUrl + "/chat/completions");
-        System.out.println("[DeepSeek API] 请求头: Authorization=Bearer " + (apiKey != null ? "********" : "null"));
-        System.out.println("[DeepSeek API] 请求体: " + requestBody);
-
-        // 构建请求
-        Request request = new Request.Builder()
-                .url(baseUrl + "/chat/completions")  // DeepSeek对话接口
-                .post(RequestBody.create(requestBody, MediaType.parse("application/json")))
-                .addHeader("Authorization", "Bearer " + apiKey)  // 鉴权头
-                .addHeader("Content-Type", "application/json")
-                .build();
-
-        // 发送请求并处理流式响应
-        System.out.println("[DeepSeek API] 正在发送请求...");
-        try (Response response = okHttpClient.newCall(request).execute()) {
-            // 打印响应状态日志
-            System.out.println("[DeepSeek API] 响应状态码: " + response.code());
-            System.out.println("[DeepSeek API] 响应消息: " + response.message());
-            
-            if (!response.isSuccessful()) {
-                // 读取错误响应内容
-                String errorResponse = "";
-                if (response.body() != null) {
-                    errorResponse = response.body().string();
-                    System.out.println("[DeepSeek API] 错误响应内容: " + errorResponse);
-                }
-                // API调用失败，发送友好的错误信息
-                String errorMessage = "API调用失败: 服务器返回状态码 " + response.code() + "，错误信息: " + errorResponse;
-                System.err.println("[DeepSeek API] " + errorMessage);
-                callback.accept(errorMessage);
-                return;
+    /**
+     * 查找模拟回答：提问（归一化后）中包含的最长的已知问题对应的回答，扫描一遍即可
+     * @param prompt 用户提问
+     * @return 模拟回答，没有包含任何已知问题时返回默认回答
+     */
+    private static String findMockAnswer(String prompt) {
+        int[] best = {-1};
+        mockMatcher.match(TextNormalizer.normalize(prompt), (pattern, end) -> {
+            if (best[0] < 0 || mockQuestions[pattern].length() > mockQuestions[best[0]].length()) {
+                best[0] = pattern;
             }
+        });
+        return best[0] >= 0 ? mockAnswers[best[0]] : DEFAULT_ANSWER;
+    }
 
-            // 处理流式响应
-            try (ResponseBody responseBody = response.body()) {
-                if (responseBody == null) {
-                    String errorMessage = "API调用失败: 服务器没有返回响应内容";
-                    System.err.println("[DeepSeek API] " + errorMessage);
-                    callback.accept(errorMessage);
-                    return;
-                }
+    /**
+     * 获取模拟AI响应
+     * @param prompt 用户提问
+     * @param idPrefix 响应id前缀，区分模拟服务与失败兜底
+     * @return 模拟的AI响应（JSON格式）
+     */
+    private String getMockResponse(String prompt, String idPrefix) {
+        // 查找匹配的模拟回答
+        String answer = findMockAnswer(prompt);
 
-                // 逐行读取流式响应，使用更直接的UTF-8解码方式
-                System.out.println("[DeepSeek API] 开始读取流式响应...");
-                
-                // 使用OkHttp的charStream()方法，它会自动处理字符编码
-                try (BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream(), StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        System.out.println("[DeepSeek API] 接收到响应行: " + line);
-                        
-                        if (line.isEmpty() || line.equals("data: [DONE]")) {
-                            continue;
-                        }
-
-                        // 直接转发原始响应行，不做任何处理
-                        callback.accept(line);
-                    }
-                    
-                    System.out.println("[DeepSeek API] 流式响应处理完成");
-                }
-            }
-        } catch (IOException e) {
-            // 网络异常，发送友好的错误信息
-            String errorMessage = "网络错误: 无法连接到API服务器，请检查网络连接";
-            System.err.println("[DeepSeek API] " + errorMessage);
-            System.err.println("[DeepSeek API] 异常详情: " + e.getMessage());
-            e.printStackTrace();
-            callback.accept(errorMessage);
-        }
-        
-        System.out.println("[DeepSeek API] 流式请求处理结束");
+        // 构建符合DeepSeek API响应格式的JSON
+        return buildMockResponseJson(answer, prompt.length(), idPrefix);
     }
-    
+
     /**
-     * 调用DeepSeek对话API（流式响应，单轮对话）
-     * @param prompt 用户提问内容
-     * @param callback 流式响应回调函数
+     * 构建模拟响应JSON
+     * @param answer 回答内容
+     * @param promptLength 提问长度
+     * @param idPrefix 响应id前缀
+     * @return 模拟的AI响应（JSON格式）
      */
-    public void chatWithDeepSeekStream(String prompt, Consumer<String> callback) {
-        List<Message> messages = new ArrayList<>();
-        // 添加电力服务营业厅智能问答助手的系统提示词
-        messages.add(new Message("system", "你是电力服务营业厅智能问答助手，需用亲切通俗的语气服务用户。核心负责解答电费查询缴纳、电表报装/故障报修、用电套餐办理、峰谷电价标准、停电通知查询、充电桩安装申请这些电力相关问题；回答需简洁，步骤清晰，遇到无法解答的问题请引导用户拨打电力客服热线 95598，禁止回复与电力服务无关的内容。"));
-        messages.add(new Message("user", prompt));
-        chatWithDeepSeekStream(messages, callback);
+    private String buildMockResponseJson(String answer, int promptLength, String idPrefix) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("id", idPrefix + System.currentTimeMillis());
+        root.put("object", "chat.completion");
+        root.put("created", System.currentTimeMillis() / 1000);
+        root.put("model", model);
+        ObjectNode choice = root.putArray("choices").addObject();
+        choice.put("index", 0);
+        ObjectNode message = choice.putObject("message");
+        message.put("role", "assistant");
+        message.put("content", answer);
+        choice.put("finish_reason", "stop");
+        ObjectNode usage = root.putObject("usage");
+        usage.put("prompt_tokens", promptLength / 2); // 估算的prompt tokens
+        usage.put("completion_tokens", answer.length() / 2); // 估算的completion tokens
+        usage.put("total_tokens", (promptLength + answer.length()) / 2); // 估算的总tokens
+        try {
+            return objectMapper.writeValueAsString(root);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize mock response to JSON", e);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,35 @@
+package com.powerservice.system.util;
+
+/**
+ * DeepSeek API调用异常
+ * message 为可以直接展示给用户的友好提示
+ */
+public class DeepSeekApiException extends RuntimeException {
+
+    private final int statusCode;  // 上游HTTP状态码，非HTTP错误（网络异常、超时等）为0
+
+    public DeepSeekApiException(String message) {
+        this(message, 0);
+    }
+
+    public DeepSeekApiException(String message, int statusCode) {
+        super(message);
+        this.statusCode = statusCode;
+    }
+
+    public DeepSeekApiException(String message, Throwable cause) {
+        super(message, cause);
+        this.statusCode = 0;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * 是否值得重试：限流和服务端错误可以重试，其余客户端错误（鉴权、参数）重试无意义
+     */
+    public boolean isRetryable() {
+        return statusCode == 0 || statusCode == 429 || statusCode >= 500;
+    }
+}
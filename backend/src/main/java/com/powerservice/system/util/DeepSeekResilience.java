@@ -0,0 +1,294 @@
+package com.powerservice.system.util;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * DeepSeek上游调用的容错层
+ * 1. 滚动窗口熔断：上游持续失败时直接拒绝，调用方立即走降级逻辑
+ * 2. 自适应首字超时：按历史首字延迟的分位数动态计算超时时间，而不是固定等待
+ * 3. 对冲请求（可选）：首个请求超过历史P90仍无响应时再发一个，取先返回的结果
+ * 4. 重试预算：重试和对冲请求不超过正常请求的固定比例，已输出内容的流不重试
+ */
+@Component
+public class DeepSeekResilience {
+
+    private static final String UNAVAILABLE_MESSAGE = "智能助手当前繁忙，请稍后重试或拨打电力客服热线95598";
+
+    // 延迟样本数
+    private static final int LATENCY_SAMPLES = 1024;
+
+    @Value("${deepseek.resilience.circuit.window-seconds:10}")
+    private int windowSeconds;
+
+    @Value("${deepseek.resilience.circuit.failure-rate-threshold:0.5}")
+    private double failureRateThreshold;
+
+    @Value("${deepseek.resilience.circuit.minimum-calls:10}")
+    private int minimumCalls;
+
+    @Value("${deepseek.resilience.circuit.open-duration-ms:15000}")
+    private long openDurationMs;
+
+    // 首字超时的上下限，样本不足时使用上限
+    @Value("${deepseek.resilience.ttft.min-timeout-ms:2000}")
+    private long minTimeoutMs;
+
+    @Value("${deepseek.resilience.ttft.max-timeout-ms:30000}")
+    private long maxTimeoutMs;
+
+    // 首字超时 = 历史延迟的该分位数 × 倍数
+    @Value("${deepseek.resilience.ttft.percentile:0.99}")
+    private double timeoutPercentile;
+
+    @Value("${deepseek.resilience.ttft.multiplier:2.0}")
+    private double timeoutMultiplier;
+
+    // 样本数达到该值后才启用自适应超时和对冲
+    @Value("${deepseek.resilience.ttft.min-samples:20}")
+    private int minSamples;
+
+    @Value("${deepseek.resilience.hedge.enabled:false}")
+    private boolean hedgeEnabled;
+
+    // 首个请求超过历史延迟的该分位数仍无响应时发出对冲请求
+    @Value("${deepseek.resilience.hedge.percentile:0.9}")
+    private double hedgePercentile;
+
+    // 失败后的最大重试次数
+    @Value("${deepseek.resilience.retry.max-attempts:1}")
+    private int maxRetries;
+
+    // 每个请求存入的重试额度，0.1表示重试和对冲最多占正常请求的10%
+    @Value("${deepseek.resilience.retry.budget-ratio:0.1}")
+    private double budgetRatio;
+
+    @Value("${deepseek.resilience.retry.budget-max:20}")
+    private double budgetMax;
+
+    private CircuitBreaker circuitBreaker;
+
+    private RetryBudget retryBudget;
+
+    // 非流式调用的完整响应延迟
+    private final LatencyTracker chatLatency = new LatencyTracker(LATENCY_SAMPLES);
+
+    // 流式调用的首字延迟
+    private final LatencyTracker streamLatency = new LatencyTracker(LATENCY_SAMPLES);
+
+    private final LongAdder timeouts = new LongAdder();
+
+    private final LongAdder hedges = new LongAdder();
+
+    private final LongAdder hedgeWins = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    @PostConstruct
+    public void init() {
+        circuitBreaker = new CircuitBreaker(windowSeconds, failureRateThreshold, minimumCalls, openDurationMs);
+        retryBudget = new RetryBudget(budgetRatio, budgetMax);
+    }
+
+    /**
+     * 保护一次非流式调用
+     * @param call 每次调用都返回一个新的上游请求
+     * @return 受熔断、超时、对冲和重试保护的结果
+     */
+    public <T> Mono<T> protect(Supplier<Mono<T>> call) {
+        return guard(() -> call.get().flux(), chatLatency).next();
+    }
+
+    /**
+     * 保护一次流式调用，超时只约束首个片段，片段之间的间隔由HttpClient的responseTimeout约束
+     * @param call 每次调用都返回一个新的上游请求
+     * @return 受熔断、超时、对冲和重试保护的片段流
+     */
+    public <T> Flux<T> protectStream(Supplier<Flux<T>> call) {
+        return guard(call, streamLatency);
+    }
+
+    /**
+     * 熔断器当前是否会放行请求：冷却时间已过的打开状态也会放行一个探测请求
+     */
+    public boolean permitsCalls() {
+        return circuitBreaker.permitsCalls();
+    }
+
+    private <T> Flux<T> guard(Supplier<Flux<T>> call, LatencyTracker latency) {
+        return Flux.defer(() -> {
+            retryBudget.onRequest();
+            AtomicBoolean emitted = new AtomicBoolean();
+            AtomicInteger attempts = new AtomicInteger();
+            // 每次重试重新构造对冲逻辑
+            return Flux.defer(() -> hedged(call, latency))
+                    .doOnNext(item -> emitted.set(true))
+                    .retryWhen(Retry.max(maxRetries)
+                            // 次数用尽时不再扣减重试额度
+                            .filter(e -> !emitted.get() && isRetryable(e)
+                                    && attempts.get() < maxRetries && retryBudget.tryWithdraw())
+                            .doBeforeRetry(signal -> {
+                                attempts.incrementAndGet();
+                                retries.increment();
+                            })
+                            .onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+        });
+    }
+
+    /**
+     * 发起请求，启用对冲时首个请求迟迟无响应则再发一个，取先输出内容的一个
+     */
+    private <T> Flux<T> hedged(Supplier<Flux<T>> call, LatencyTracker latency) {
+        if (!hedgeEnabled || latency.getSampleCount() < minSamples) {
+            return attempt(call, latency);
+        }
+        long hedgeDelay = latency.percentile(hedgePercentile);
+        // 首个请求结束后不再发出对冲请求
+        Sinks.One<Boolean> primaryDone = Sinks.one();
+        Flux<T> primary = attempt(call, latency)
+                .doFinally(signal -> primaryDone.tryEmitValue(Boolean.TRUE));
+        Flux<T> hedge = Mono.delay(Duration.ofMillis(hedgeDelay))
+                .takeUntilOther(primaryDone.asMono())
+                .filter(tick -> retryBudget.tryWithdraw())
+                .flatMapMany(tick -> {
+                    hedges.increment();
+                    AtomicBoolean won = new AtomicBoolean();
+                    return attempt(call, latency)
+                            .doOnNext(item -> {
+                                if (won.compareAndSet(false, true)) {
+                                    hedgeWins.increment();
+                                }
+                            });
+                });
+        return Flux.firstWithValue(primary, hedge)
+                .onErrorMap(NoSuchElementException.class, DeepSeekResilience::unwrapFirstError);
+    }
+
+    /**
+     * 单次上游请求：熔断检查、自适应首字超时，并向熔断器上报恰好一次结果
+     */
+    private <T> Flux<T> attempt(Supplier<Flux<T>> call, LatencyTracker latency) {
+        return Flux.defer(() -> {
+            if (!circuitBreaker.tryAcquire()) {
+                return Flux.error(new UpstreamUnavailableException(UNAVAILABLE_MESSAGE));
+            }
+            long start = System.nanoTime();
+            AtomicBoolean firstSeen = new AtomicBoolean();
+            AtomicBoolean reported = new AtomicBoolean();
+            return call.get()
+                    .timeout(Mono.delay(Duration.ofMillis(firstTokenTimeout(latency))), item -> Mono.never())
+                    .doOnNext(item -> {
+                        if (firstSeen.compareAndSet(false, true)) {
+                            latency.record((System.nanoTime() - start) / 1_000_000);
+                        }
+                    })
+                    .doOnComplete(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            circuitBreaker.onSuccess();
+                        }
+                    })
+                    .doOnError(e -> {
+                        if (e instanceof TimeoutException) {
+                            timeouts.increment();
+                        }
+                        if (reported.compareAndSet(false, true)) {
+                            if (isRetryable(e)) {
+                                circuitBreaker.onFailure();
+                            } else {
+                                // 鉴权、参数等客户端错误说明上游可达，不计入失败
+                                circuitBreaker.onSuccess();
+                            }
+                        }
+                    })
+                    .doOnCancel(() -> {
+                        if (reported.compareAndSet(false, true)) {
+                            // 已收到内容后取消（如用户断开）视为成功，未收到内容（如对冲落败）不计入统计
+                            if (firstSeen.get()) {
+                                circuitBreaker.onSuccess();
+                            } else {
+                                circuitBreaker.onCancel();
+                            }
+                        }
+                    });
+        });
+    }
+
+    /**
+     * 首字超时：历史分位数 × 倍数，限制在上下限之间；样本不足时使用上限
+     */
+    private long firstTokenTimeout(LatencyTracker latency) {
+        if (latency.getSampleCount() < minSamples) {
+            return maxTimeoutMs;
+        }
+        long timeout = (long) (latency.percentile(timeoutPercentile) * timeoutMultiplier);
+        return Math.max(minTimeoutMs, Math.min(maxTimeoutMs, timeout));
+    }
+
+    private static boolean isRetryable(Throwable e) {
+        if (e instanceof DeepSeekApiException) {
+            return ((DeepSeekApiException) e).isRetryable();
+        }
+        return true;  // 网络异常、超时
+    }
+
+    /**
+     * 对冲的两个请求都没有结果时，取出首个请求的真实异常
+     */
+    private static Throwable unwrapFirstError(NoSuchElementException e) {
+        if (e.getCause() != null) {
+            List<Throwable> errors = Exceptions.unwrapMultiple(e.getCause());
+            if (!errors.isEmpty()) {
+                return errors.get(0);
+            }
+        }
+        return e;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("circuitBreaker", circuitBreaker.getStats());
+
+        Map<String, Object> latency = new HashMap<>();
+        latency.put("chatSamples", chatLatency.getSampleCount());
+        latency.put("chatP50Ms", chatLatency.percentile(0.5));
+        latency.put("chatP99Ms", chatLatency.percentile(0.99));
+        latency.put("chatTimeoutMs", firstTokenTimeout(chatLatency));
+        latency.put("streamSamples", streamLatency.getSampleCount());
+        latency.put("streamTtftP50Ms", streamLatency.percentile(0.5));
+        latency.put("streamTtftP99Ms", streamLatency.percentile(0.99));
+        latency.put("streamTimeoutMs", firstTokenTimeout(streamLatency));
+        latency.put("timeouts", timeouts.sum());
+        stats.put("latency", latency);
+
+        Map<String, Object> hedge = new HashMap<>();
+        hedge.put("enabled", hedgeEnabled);
+        hedge.put("hedges", hedges.sum());
+        hedge.put("hedgeWins", hedgeWins.sum());
+        stats.put("hedge", hedge);
+
+        Map<String, Object> retry = new HashMap<>();
+        retry.put("retries", retries.sum());
+        retry.put("budgetBalance", retryBudget.getBalance());
+        retry.put("budgetGranted", retryBudget.getGranted());
+        retry.put("budgetDenied", retryBudget.getDenied());
+        stats.put("retry", retry);
+        return stats;
+    }
+}
@@ -0,0 +1,82 @@
+package com.powerservice.system.util;
+
+import java.util.Arrays;
+
+/**
+ * 延迟分位数统计
+ * 保存最近N个延迟样本（环形缓冲）。分位数从排好序的快照中读取，快照每新增一批样本才重新排序一次，
+ * 热点路径（如按分位数计算超时）频繁读取也不必每次复制排序。
+ * 样本的单位由调用方决定（毫秒或微秒），返回的分位数与样本单位相同
+ */
+public class LatencyTracker {
+
+    // 新增这么多样本后重新排序快照；样本较少时每次都重新排序
+    private static final int RESORT_INTERVAL = 64;
+
+    private final long[] samples;
+
+    private int count;
+
+    private int next;
+
+    // 上次排序后新增的样本数
+    private int unsorted;
+
+    // 排好序的样本快照，整体替换
+    private volatile long[] sorted = new long[0];
+
+    /**
+     * @param capacity 保留的样本数
+     */
+    public LatencyTracker(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    /**
+     * 记录一个样本
+     * @param value 延迟
+     */
+    public synchronized void record(long value) {
+        samples[next] = value;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        unsorted++;
+    }
+
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * 计算分位数
+     * @param percentile 分位（0~1），如0.99
+     * @return 分位数（与样本单位相同），没有样本时返回-1
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = snapshot();
+        if (snapshot.length == 0) {
+            return -1;
+        }
+        int index = (int) Math.ceil(percentile * snapshot.length) - 1;
+        return snapshot[Math.max(0, Math.min(index, snapshot.length - 1))];
+    }
+
+    /**
+     * 排好序的样本快照，新增样本足够多时重新排序
+     */
+    private long[] snapshot() {
+        long[] copy;
+        synchronized (this) {
+            if (unsorted == 0 || (unsorted < RESORT_INTERVAL && count >= RESORT_INTERVAL)) {
+                return sorted;
+            }
+            copy = Arrays.copyOf(samples, count);
+            unsorted = 0;
+        }
+        Arrays.sort(copy);
+        sorted = copy;
+        return copy;
+    }
+}
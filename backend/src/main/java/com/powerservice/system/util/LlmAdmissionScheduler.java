@@ -0,0 +1,376 @@
+package com.powerservice.system.util;
+
+import com.powerservice.system.util.AdaptiveConcurrencyLimiter.LatencyKind;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * DeepSeek上游调用的准入调度
+ * 1. 自适应并发上限：按上游延迟以AIMD方式调整同时进行的调用数，上游变慢时主动收缩
+ * 2. 优先级队列：超出并发上限的调用按优先级分别排队，名额释放时高优先级先出队
+ * 3. 按优先级预留余量：低优先级只能使用并发上限的一部分，紧急问题始终有名额
+ * 4. 排队期限：每个优先级有各自的最长排队时间和队列容量，超出后直接拒绝，
+ *    上游能力下降时低优先级的期限最短、最先被丢弃
+ * 流式调用的名额一直占用到流结束，延迟样本取首个片段的到达时间；
+ * 非流式调用的延迟样本为完整响应耗时，两类样本在限流器中分别维护基线
+ */
+@Component
+public class LlmAdmissionScheduler {
+
+    private static final String SHED_MESSAGE = "智能助手当前繁忙，请稍后重试或拨打电力客服热线95598";
+
+    @Value("${deepseek.admission.enabled:true}")
+    private boolean enabled;
+
+    @Value("${deepseek.admission.initial-limit:20}")
+    private int initialLimit;
+
+    @Value("${deepseek.admission.min-limit:2}")
+    private int minLimit;
+
+    @Value("${deepseek.admission.max-limit:200}")
+    private int maxLimit;
+
+    // 上游过载时并发上限乘以的系数
+    @Value("${deepseek.admission.backoff-ratio:0.9}")
+    private double backoffRatio;
+
+    // 延迟超过基线的该倍数视为上游过载
+    @Value("${deepseek.admission.latency-tolerance:2.0}")
+    private double latencyTolerance;
+
+    // 各优先级可使用的并发上限比例
+    @Value("${deepseek.admission.urgent.headroom:1.0}")
+    private double urgentHeadroom;
+
+    @Value("${deepseek.admission.normal.headroom:0.9}")
+    private double normalHeadroom;
+
+    @Value("${deepseek.admission.low.headroom:0.6}")
+    private double lowHeadroom;
+
+    // 各优先级的最长排队时间
+    @Value("${deepseek.admission.urgent.queue-timeout-ms:15000}")
+    private long urgentQueueTimeoutMs;
+
+    @Value("${deepseek.admission.normal.queue-timeout-ms:8000}")
+    private long normalQueueTimeoutMs;
+
+    @Value("${deepseek.admission.low.queue-timeout-ms:3000}")
+    private long lowQueueTimeoutMs;
+
+    // 各优先级的最大排队数
+    @Value("${deepseek.admission.urgent.queue-capacity:200}")
+    private int urgentQueueCapacity;
+
+    @Value("${deepseek.admission.normal.queue-capacity:200}")
+    private int normalQueueCapacity;
+
+    @Value("${deepseek.admission.low.queue-capacity:50}")
+    private int lowQueueCapacity;
+
+    private AdaptiveConcurrencyLimiter limiter;
+
+    private final Map<RequestPriority, ClassQueue> queues = new EnumMap<>(RequestPriority.class);
+
+    // 正在进行的上游调用数，与各队列一起由this加锁保护
+    private int inflight;
+
+    @PostConstruct
+    public void init() {
+        limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, backoffRatio, latencyTolerance);
+        queues.put(RequestPriority.URGENT, new ClassQueue(urgentHeadroom, urgentQueueTimeoutMs, urgentQueueCapacity));
+        queues.put(RequestPriority.NORMAL, new ClassQueue(normalHeadroom, normalQueueTimeoutMs, normalQueueCapacity));
+        queues.put(RequestPriority.LOW, new ClassQueue(lowHeadroom, lowQueueTimeoutMs, lowQueueCapacity));
+    }
+
+    /**
+     * 在准入调度下执行一次非流式调用
+     * @param priority 调用优先级
+     * @param call 获得名额后才会调用
+     * @return 调用结果；排队超时或队列已满时抛出 UpstreamUnavailableException
+     */
+    public <T> Mono<T> schedule(RequestPriority priority, Supplier<Mono<T>> call) {
+        if (!enabled) {
+            return Mono.defer(call);
+        }
+        return Mono.usingWhen(acquire(priority, LatencyKind.COMPLETION),
+                permit -> call.get().doOnNext(value -> permit.markFirst()),
+                permit -> release(permit, Outcome.SUCCESS, null),
+                (permit, e) -> release(permit, Outcome.ERROR, e),
+                permit -> release(permit, Outcome.CANCEL, null));
+    }
+
+    /**
+     * 在准入调度下执行一次流式调用，名额占用到流结束或取消
+     * @param priority 调用优先级
+     * @param call 获得名额后才会调用
+     * @return 片段流；排队超时或队列已满时抛出 UpstreamUnavailableException
+     */
+    public <T> Flux<T> scheduleStream(RequestPriority priority, Supplier<Flux<T>> call) {
+        if (!enabled) {
+            return Flux.defer(call);
+        }
+        return Flux.usingWhen(acquire(priority, LatencyKind.FIRST_TOKEN),
+                permit -> call.get().doOnNext(item -> permit.markFirst()),
+                permit -> release(permit, Outcome.SUCCESS, null),
+                (permit, e) -> release(permit, Outcome.ERROR, e),
+                permit -> release(permit, Outcome.CANCEL, null));
+    }
+
+    /**
+     * 申请一个名额：有空余且前面没有同级或更高优先级在排队时立即获得，否则排队
+     */
+    private Mono<Permit> acquire(RequestPriority priority, LatencyKind kind) {
+        return Mono.create(sink -> {
+            Waiter waiter = new Waiter(priority, kind, sink);
+            Permit granted = null;
+            boolean rejected = false;
+            synchronized (this) {
+                ClassQueue queue = queues.get(priority);
+                if (!queuedAhead(priority) && inflight < capacity(queue)) {
+                    granted = grant(waiter, System.currentTimeMillis());
+                } else if (queue.waiting.size() >= queue.capacity) {
+                    queue.rejected++;
+                    rejected = true;
+                } else {
+                    waiter.enqueuedAt = System.currentTimeMillis();
+                    queue.waiting.add(waiter);
+                    waiter.timer = Schedulers.parallel().schedule(() -> expire(waiter),
+                            queue.timeoutMs, TimeUnit.MILLISECONDS);
+                }
+            }
+            if (granted != null) {
+                sink.success(granted);
+            } else if (rejected) {
+                sink.error(new UpstreamUnavailableException(SHED_MESSAGE));
+            } else {
+                sink.onCancel(() -> cancelWaiter(waiter));
+            }
+        });
+    }
+
+    /**
+     * 同级或更高优先级是否有调用在排队，有则新调用不能插队
+     */
+    private boolean queuedAhead(RequestPriority priority) {
+        for (RequestPriority p : RequestPriority.values()) {
+            if (!queues.get(p).waiting.isEmpty()) {
+                return true;
+            }
+            if (p == priority) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 该优先级可使用的并发数，至少为1，避免低优先级完全饿死
+     */
+    private int capacity(ClassQueue queue) {
+        return Math.max(1, (int) (limiter.getLimit() * queue.headroom));
+    }
+
+    /**
+     * 占用一个名额，调用方需持有锁
+     */
+    private Permit grant(Waiter waiter, long now) {
+        ClassQueue queue = queues.get(waiter.priority);
+        inflight++;
+        queue.admitted++;
+        if (waiter.enqueuedAt > 0) {
+            queue.totalQueueWaitMs += now - waiter.enqueuedAt;
+            queue.dequeued++;
+        }
+        waiter.permit = new Permit(waiter.kind, now);
+        return waiter.permit;
+    }
+
+    /**
+     * 释放名额并上报延迟样本，再按优先级唤醒排队的调用
+     */
+    private Mono<Void> release(Permit permit, Outcome outcome, Throwable error) {
+        return Mono.fromRunnable(() -> {
+            if (!permit.released.compareAndSet(false, true)) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long latency = (permit.firstAt > 0 ? permit.firstAt : now) - permit.startedAt;
+            List<Waiter> granted;
+            synchronized (this) {
+                if (outcome == Outcome.SUCCESS || (outcome == Outcome.CANCEL && permit.firstAt > 0)) {
+                    // 已收到内容后取消（如用户断开）同样是有效的延迟样本
+                    limiter.onSuccess(permit.kind, latency, inflight, now);
+                } else if (outcome == Outcome.ERROR && isOverload(error)) {
+                    limiter.onDropped(permit.kind, latency, now);
+                }
+                inflight--;
+                granted = drain(now);
+            }
+            granted.forEach(waiter -> waiter.sink.success(waiter.permit));
+        });
+    }
+
+    /**
+     * 按优先级从高到低出队，直到没有空余名额，调用方需持有锁
+     * 低优先级的可用并发不超过高优先级，高优先级排队时低优先级必然也无名额
+     */
+    private List<Waiter> drain(long now) {
+        List<Waiter> granted = new ArrayList<>(2);
+        for (RequestPriority priority : RequestPriority.values()) {
+            ClassQueue queue = queues.get(priority);
+            while (!queue.waiting.isEmpty() && inflight < capacity(queue)) {
+                Waiter waiter = queue.waiting.poll();
+                waiter.timer.dispose();
+                grant(waiter, now);
+                granted.add(waiter);
+            }
+            if (!queue.waiting.isEmpty()) {
+                break;
+            }
+        }
+        return granted;
+    }
+
+    /**
+     * 排队超时，拒绝该调用
+     */
+    private void expire(Waiter waiter) {
+        synchronized (this) {
+            ClassQueue queue = queues.get(waiter.priority);
+            if (!queue.waiting.remove(waiter)) {
+                return;
+            }
+            queue.expired++;
+        }
+        waiter.sink.error(new UpstreamUnavailableException(SHED_MESSAGE));
+    }
+
+    /**
+     * 调用方在排队期间取消；已获得名额但尚未交付时归还名额
+     */
+    private void cancelWaiter(Waiter waiter) {
+        Permit permit;
+        synchronized (this) {
+            if (queues.get(waiter.priority).waiting.remove(waiter)) {
+                waiter.timer.dispose();
+                return;
+            }
+            permit = waiter.permit;
+        }
+        if (permit != null) {
+            release(permit, Outcome.CANCEL, null).subscribe();
+        }
+    }
+
+    /**
+     * 超时、网络异常、限流和服务端错误说明上游过载；熔断拒绝和客户端错误不作为延迟信号
+     */
+    private static boolean isOverload(Throwable e) {
+        if (e instanceof DeepSeekApiException) {
+            return ((DeepSeekApiException) e).isRetryable();
+        }
+        return true;
+    }
+
+    /**
+     * 准入统计：当前并发上限、进行中的调用数，以及各优先级的放行、排队和丢弃情况
+     */
+    public synchronized Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("inflight", inflight);
+        stats.put("limiter", limiter.getStats());
+        Map<String, Object> classes = new HashMap<>();
+        queues.forEach((priority, queue) -> {
+            Map<String, Object> queueStats = new HashMap<>();
+            queueStats.put("capacity", capacity(queue));
+            queueStats.put("admitted", queue.admitted);
+            queueStats.put("queued", queue.waiting.size());
+            queueStats.put("rejected", queue.rejected);
+            queueStats.put("expired", queue.expired);
+            queueStats.put("avgQueueWaitMs", queue.dequeued > 0 ? queue.totalQueueWaitMs / queue.dequeued : 0);
+            classes.put(priority.name(), queueStats);
+        });
+        stats.put("classes", classes);
+        return stats;
+    }
+
+    private enum Outcome {
+        SUCCESS, ERROR, CANCEL
+    }
+
+    /**
+     * 一个优先级的排队状态，由外层锁保护
+     */
+    private static class ClassQueue {
+        final double headroom;
+        final long timeoutMs;
+        final int capacity;
+        final ArrayDeque<Waiter> waiting = new ArrayDeque<>();
+        long admitted;
+        long rejected;
+        long expired;
+        long dequeued;
+        long totalQueueWaitMs;
+
+        ClassQueue(double headroom, long timeoutMs, int capacity) {
+            this.headroom = headroom;
+            this.timeoutMs = timeoutMs;
+            this.capacity = capacity;
+        }
+    }
+
+    private static class Waiter {
+        final RequestPriority priority;
+        final LatencyKind kind;
+        final MonoSink<Permit> sink;
+        long enqueuedAt;
+        Disposable timer;
+        Permit permit;
+
+        Waiter(RequestPriority priority, LatencyKind kind, MonoSink<Permit> sink) {
+            this.priority = priority;
+            this.kind = kind;
+            this.sink = sink;
+        }
+    }
+
+    /**
+     * 一个已占用的名额，只释放一次
+     */
+    private static class Permit {
+        final LatencyKind kind;
+        final long startedAt;
+        final AtomicBoolean released = new AtomicBoolean();
+        volatile long firstAt;
+
+        Permit(LatencyKind kind, long startedAt) {
+            this.kind = kind;
+            this.startedAt = startedAt;
+        }
+
+        void markFirst() {
+            if (firstAt == 0) {
+                firstAt = System.currentTimeMillis();
+            }
+        }
+    }
+}
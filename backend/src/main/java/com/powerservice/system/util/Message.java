@@ -0,0 +1,32 @@
+package com.powerservice.system.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 对话消息类，用于表示多轮对话中的一条消息
+ */
+public class Message {
+    private String role;  // 角色：system、user或assistant
+    private String content;  // 消息内容
+
+    public Message(String role, String content) {
+        this.role = role;
+        this.content = content;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public Map<String, String> toMap() {
+        Map<String, String> map = new HashMap<>();
+        map.put("role", role);
+        map.put("content", content);
+        return map;
+    }
+}
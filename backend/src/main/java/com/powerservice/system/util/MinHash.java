@@ -0,0 +1,133 @@
+package com.powerservice.system.util;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * MinHash签名工具类
+ * 以字符一元组和二元组作为特征集合，生成定长签名用于局部敏感哈希（LSH）分桶，
+ * 并提供特征集合之间的精确Jaccard相似度计算
+ */
+public class MinHash {
+
+    private final long[] seeds;
+
+    /**
+     * @param numHashes 签名长度（哈希函数个数）
+     * @param seed 随机种子，集群内各节点使用相同种子可得到一致的签名
+     */
+    public MinHash(int numHashes, long seed) {
+        Random random = new Random(seed);
+        this.seeds = new long[numHashes];
+        for (int i = 0; i < numHashes; i++) {
+            seeds[i] = random.nextLong() | 1L;
+        }
+    }
+
+    public int getNumHashes() {
+        return seeds.length;
+    }
+
+    /**
+     * 提取文本的特征集合：每个字符及相邻两个字符组成的二元组
+     * @param text 归一化后的文本
+     * @return 去重并排序后的特征数组
+     */
+    public static int[] shingles(String text) {
+        int length = text.length();
+        if (length == 0) {
+            return new int[0];
+        }
+        int[] features = new int[length * 2 - 1];
+        int n = 0;
+        for (int i = 0; i < length; i++) {
+            // 一元组只占用低16位，二元组的高16位必不为0（首字符非0），两者不会冲突
+            features[n++] = text.charAt(i);
+            if (i + 1 < length) {
+                features[n++] = (text.charAt(i) << 16) | text.charAt(i + 1);
+            }
+        }
+        Arrays.sort(features, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || features[i] != features[unique - 1]) {
+                features[unique++] = features[i];
+            }
+        }
+        return Arrays.copyOf(features, unique);
+    }
+
+    /**
+     * 计算特征集合的MinHash签名
+     * @param shingles 特征数组
+     * @return 签名
+     */
+    public long[] signature(int[] shingles) {
+        long[] signature = new long[seeds.length];
+        Arrays.fill(signature, Long.MAX_VALUE);
+        for (int shingle : shingles) {
+            for (int i = 0; i < seeds.length; i++) {
+                long h = mix(shingle * seeds[i]);
+                if (h < signature[i]) {
+                    signature[i] = h;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 计算两个已排序特征数组的Jaccard相似度
+     */
+    public static double jaccard(int[] a, int[] b) {
+        if (a.length == 0 && b.length == 0) {
+            return 1.0;
+        }
+        int intersection = intersection(a, b);
+        return (double) intersection / (a.length + b.length - intersection);
+    }
+
+    /**
+     * 计算两个已排序特征数组的交集大小
+     */
+    public static int intersection(int[] a, int[] b) {
+        int i = 0, j = 0, intersection = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] == b[j]) {
+                intersection++;
+                i++;
+                j++;
+            } else if (a[i] < b[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return intersection;
+    }
+
+    /**
+     * 只保留二元组特征（一元组只占用低16位）
+     * @param shingles 已排序的特征数组
+     * @return 已排序的二元组特征
+     */
+    public static int[] bigrams(int[] shingles) {
+        int n = 0;
+        int[] result = new int[shingles.length];
+        for (int shingle : shingles) {
+            if ((shingle >>> 16) != 0) {
+                result[n++] = shingle;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /**
+     * 64位混合函数（SplitMix64终结步骤）
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,190 @@
+package com.powerservice.system.util;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 进程内近端缓存（L1），一个实例对应一个缓存命名空间
+ * 按访问顺序做LRU淘汰，每个条目带过期时间；同时记录该命名空间在L2（Redis）的命中情况。
+ * 每次写入、失效都会递增版本号并记下该key最后一次变更的版本：从Redis读取前先取版本号，
+ * 回填时若该key在读取期间被失效或改写过就丢弃，避免与失效通知赛跑的读取把旧值放回本地并保留整个有效期
+ */
+public class NearCache {
+
+    private final int maxEntries;
+
+    private final LinkedHashMap<String, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    private final LongAdder expirations = new LongAdder();
+
+    private final LongAdder invalidations = new LongAdder();
+
+    private final LongAdder remoteHits = new LongAdder();
+
+    private final LongAdder remoteMisses = new LongAdder();
+
+    private final LongAdder staleLoadsDropped = new LongAdder();
+
+    // 每次写入、失效、清空时递增
+    private long version;
+
+    // 各key最后一次写入或失效时的版本，按变更顺序保存，最多maxEntries个
+    private final LinkedHashMap<String, Long> changedAt;
+
+    // 超出容量被丢弃的变更记录中最大的版本，不在changedAt中的key按此版本判断
+    private long forgottenVersion;
+
+    // 最近一次清空时的版本
+    private long clearedVersion;
+
+    /**
+     * @param maxEntries 最大条目数，超出时淘汰最久未访问的条目
+     */
+    public NearCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > NearCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.changedAt = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                if (size() > NearCache.this.maxEntries) {
+                    forgottenVersion = Math.max(forgottenVersion, eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 读取缓存
+     * @return 缓存值，不存在或已过期时返回null
+     */
+    public synchronized String get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expireAt <= System.currentTimeMillis()) {
+            entries.remove(key);
+            expirations.increment();
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        return entry.value;
+    }
+
+    /**
+     * 写入缓存（本节点写入的新值）
+     * @param ttlMillis 有效期（毫秒）
+     */
+    public synchronized void put(String key, String value, long ttlMillis) {
+        markChanged(key);
+        if (value == null || ttlMillis <= 0) {
+            return;
+        }
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 开始从L2读取，返回当前版本，回填时交给putLoaded
+     */
+    public synchronized long beginLoad() {
+        return version;
+    }
+
+    /**
+     * 回填从L2读到的值；读取开始后该key被写入或失效过时丢弃
+     * @param ttlMillis 有效期（毫秒）
+     * @param loadVersion 读取开始时beginLoad返回的版本
+     */
+    public synchronized void putLoaded(String key, String value, long ttlMillis, long loadVersion) {
+        if (value == null || ttlMillis <= 0) {
+            return;
+        }
+        long lastChange = Math.max(clearedVersion, changedAt.getOrDefault(key, forgottenVersion));
+        if (lastChange > loadVersion) {
+            staleLoadsDropped.increment();
+            return;
+        }
+        entries.put(key, new Entry(value, System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 失效单个条目，本地没有该条目时也记下变更，使正在进行的读取不再回填
+     */
+    public synchronized void invalidate(String key) {
+        markChanged(key);
+        if (entries.remove(key) != null) {
+            invalidations.increment();
+        }
+    }
+
+    public synchronized void clear() {
+        clearedVersion = ++version;
+        changedAt.clear();
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    private void markChanged(String key) {
+        changedAt.remove(key);
+        changedAt.put(key, ++version);
+    }
+
+    public void recordRemoteHit() {
+        remoteHits.increment();
+    }
+
+    public void recordRemoteMiss() {
+        remoteMisses.increment();
+    }
+
+    public Map<String, Object> getStats() {
+        long hitCount = hits.sum();
+        long total = hitCount + misses.sum();
+        Map<String, Object> stats = new HashMap<>();
+        synchronized (this) {
+            stats.put("size", entries.size());
+        }
+        stats.put("maxEntries", maxEntries);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.sum());
+        stats.put("hitRatio", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("evictions", evictions.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("remoteHits", remoteHits.sum());
+        stats.put("remoteMisses", remoteMisses.sum());
+        stats.put("staleLoadsDropped", staleLoadsDropped.sum());
+        return stats;
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long expireAt;
+
+        Entry(String value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.powerservice.system.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 中文字符n-gram倒排索引，BM25排序
+ * 词项为归一化文本中相邻的两个、三个字符，编码为long：二元组占低32位，三元组不小于2^32，互不冲突。
+ * 文档的词频和长度由调用方按字段加权后给出（BM25F）；索引构建后不可修改，
+ * 词典为开放寻址的long→int表，倒排表为基本类型数组，查询无需加锁、不产生装箱对象
+ */
+public final class NgramBm25Index {
+
+    private static final float K1 = 1.2f;
+
+    private static final float B = 0.75f;
+
+    private static final NgramBm25Index EMPTY = new Builder().build();
+
+    // 开放寻址词典，key为0表示空槽（词项编码必不为0）
+    private final long[] termKeys;
+
+    private final int[] termIds;
+
+    private final int mask;
+
+    // 按词项ID索引：包含该词项的文档序号及加权词频，文档序号升序
+    private final int[][] postingDocs;
+
+    private final float[][] postingFreqs;
+
+    private final float[] idf;
+
+    // 按文档序号索引：长度归一化因子 k1 * (1 - b + b * len / avgLen)
+    private final float[] lengthNorms;
+
+    private NgramBm25Index(long[] termKeys, int[] termIds, int[][] postingDocs, float[][] postingFreqs,
+                           float[] idf, float[] lengthNorms) {
+        this.termKeys = termKeys;
+        this.termIds = termIds;
+        this.mask = termKeys.length - 1;
+        this.postingDocs = postingDocs;
+        this.postingFreqs = postingFreqs;
+        this.idf = idf;
+        this.lengthNorms = lengthNorms;
+    }
+
+    public static NgramBm25Index empty() {
+        return EMPTY;
+    }
+
+    public int getDocCount() {
+        return lengthNorms.length;
+    }
+
+    public int getTermCount() {
+        return idf.length;
+    }
+
+    /**
+     * 提取文本的二元组和三元组词项及出现次数
+     * @param normalized 归一化后的文本
+     * @param weight 每次出现累加的权重（字段权重）
+     * @param counts 累加结果
+     */
+    public static void countTerms(String normalized, float weight, Map<Long, Float> counts) {
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            counts.merge(bigram(normalized, i), weight, Float::sum);
+            if (i + 2 < normalized.length()) {
+                counts.merge(trigram(normalized, i), weight, Float::sum);
+            }
+        }
+    }
+
+    /**
+     * 提取查询文本中去重的词项
+     * @param normalized 归一化后的文本
+     * @return 去重后的词项
+     */
+    public static long[] queryTerms(String normalized) {
+        int length = normalized.length();
+        if (length < 2) {
+            return new long[0];
+        }
+        long[] terms = new long[(length - 1) + Math.max(0, length - 2)];
+        int n = 0;
+        for (int i = 0; i + 1 < length; i++) {
+            terms[n++] = bigram(normalized, i);
+            if (i + 2 < length) {
+                terms[n++] = trigram(normalized, i);
+            }
+        }
+        Arrays.sort(terms, 0, n);
+        int unique = 0;
+        for (int i = 0; i < n; i++) {
+            if (unique == 0 || terms[i] != terms[unique - 1]) {
+                terms[unique++] = terms[i];
+            }
+        }
+        return Arrays.copyOf(terms, unique);
+    }
+
+    /**
+     * 按BM25得分检索
+     * @param queryTerms 查询词项（已去重）
+     * @param limit 最多返回的文档数
+     * @return 得分大于0的文档，按得分从高到低
+     */
+    public Hits search(long[] queryTerms, int limit) {
+        int docCount = lengthNorms.length;
+        if (docCount == 0 || queryTerms.length == 0 || limit <= 0) {
+            return Hits.NONE;
+        }
+        float[] scores = new float[docCount];
+        boolean matched = false;
+        for (long term : queryTerms) {
+            int termId = lookup(term);
+            if (termId < 0) {
+                continue;
+            }
+            matched = true;
+            int[] docs = postingDocs[termId];
+            float[] freqs = postingFreqs[termId];
+            float termIdf = idf[termId];
+            for (int i = 0; i < docs.length; i++) {
+                float tf = freqs[i];
+                scores[docs[i]] += termIdf * tf * (K1 + 1) / (tf + lengthNorms[docs[i]]);
+            }
+        }
+        if (!matched) {
+            return Hits.NONE;
+        }
+        return Hits.top(scores, limit);
+    }
+
+    private int lookup(long term) {
+        int slot = slot(term, mask);
+        while (true) {
+            long key = termKeys[slot];
+            if (key == term) {
+                return termIds[slot];
+            }
+            if (key == 0) {
+                return -1;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    private static int slot(long term, int mask) {
+        long h = term * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    private static long bigram(String text, int i) {
+        return ((long) text.charAt(i) << 16) | text.charAt(i + 1);
+    }
+
+    private static long trigram(String text, int i) {
+        return ((long) text.charAt(i) << 32) | ((long) text.charAt(i + 1) << 16) | text.charAt(i + 2);
+    }
+
+    /**
+     * 检索结果：文档序号及得分，按得分从高到低
+     */
+    public static final class Hits {
+        static final Hits NONE = new Hits(new int[0], new float[0]);
+
+        private final int[] docs;
+        private final float[] scores;
+
+        private Hits(int[] docs, float[] scores) {
+            this.docs = docs;
+            this.scores = scores;
+        }
+
+        public int size() {
+            return docs.length;
+        }
+
+        public int doc(int rank) {
+            return docs[rank];
+        }
+
+        public float score(int rank) {
+            return scores[rank];
+        }
+
+        /**
+         * 取得分最高的limit个文档（插入排序，limit通常只有几个）
+         */
+        static Hits top(float[] scores, int limit) {
+            int[] docs = new int[limit];
+            float[] best = new float[limit];
+            int n = 0;
+            for (int doc = 0; doc < scores.length; doc++) {
+                float score = scores[doc];
+                if (score <= 0 || (n == limit && score <= best[n - 1])) {
+                    continue;
+                }
+                int i = n < limit ? n++ : n - 1;
+                while (i > 0 && best[i - 1] < score) {
+                    best[i] = best[i - 1];
+                    docs[i] = docs[i - 1];
+                    i--;
+                }
+                best[i] = score;
+                docs[i] = doc;
+            }
+            return new Hits(Arrays.copyOf(docs, n), Arrays.copyOf(best, n));
+        }
+    }
+
+    /**
+     * 索引构建器，文档序号按添加顺序从0开始
+     */
+    public static final class Builder {
+        private final Map<Long, Integer> termIndex = new HashMap<>();
+        private final List<IntList> docLists = new ArrayList<>();
+        private final List<FloatList> freqLists = new ArrayList<>();
+        private final FloatList docLengths = new FloatList();
+
+        /**
+         * 添加一个文档
+         * @param termFreqs 文档的加权词频
+         * @param length 文档的加权长度
+         * @return 文档序号
+         */
+        public int add(Map<Long, Float> termFreqs, float length) {
+            int doc = docLengths.size;
+            docLengths.add(length);
+            termFreqs.forEach((term, freq) -> {
+                Integer termId = termIndex.get(term);
+                if (termId == null) {
+                    termId = docLists.size();
+                    termIndex.put(term, termId);
+                    docLists.add(new IntList());
+                    freqLists.add(new FloatList());
+                }
+                docLists.get(termId).add(doc);
+                freqLists.get(termId).add(freq);
+            });
+            return doc;
+        }
+
+        public NgramBm25Index build() {
+            int docCount = docLengths.size;
+            int termCount = docLists.size();
+
+            int capacity = Integer.highestOneBit(Math.max(2, termCount * 2 - 1)) << 1;
+            long[] keys = new long[capacity];
+            int[] ids = new int[capacity];
+            int mask = capacity - 1;
+            termIndex.forEach((term, termId) -> {
+                int slot = slot(term, mask);
+                while (keys[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = term;
+                ids[slot] = termId;
+            });
+
+            int[][] postingDocs = new int[termCount][];
+            float[][] postingFreqs = new float[termCount][];
+            float[] idf = new float[termCount];
+            for (int t = 0; t < termCount; t++) {
+                postingDocs[t] = docLists.get(t).toArray();
+                postingFreqs[t] = freqLists.get(t).toArray();
+                int df = postingDocs[t].length;
+                idf[t] = (float) Math.log(1 + (docCount - df + 0.5) / (df + 0.5));
+            }
+
+            float total = 0;
+            for (int d = 0; d < docCount; d++) {
+                total += docLengths.values[d];
+            }
+            float avgLength = docCount > 0 ? Math.max(1f, total / docCount) : 1f;
+            float[] lengthNorms = new float[docCount];
+            for (int d = 0; d < docCount; d++) {
+                lengthNorms[d] = K1 * (1 - B + B * docLengths.values[d] / avgLength);
+            }
+            return new NgramBm25Index(keys, ids, postingDocs, postingFreqs, idf, lengthNorms);
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[4];
+        int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private static final class FloatList {
+        float[] values = new float[4];
+        int size;
+
+        void add(float value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        float[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+}
@@ -1,18 +1,96 @@
 package com.powerservice.system.util;
 
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.TimeUnit;
 
 /**
  * Redis缓存工具类，简化Redis的存取操作
+ * 缓存读写带进程内近端缓存（L1）：读取先查本地，未命中再一次GET访问Redis（L2）并回填本地；
+ * 写入和删除时通过Redis发布/订阅通知其他节点失效本地副本。
+ * 近端缓存按key中第一个冒号之前的部分划分命名空间，分别限制容量并统计命中率。
+ * 缓存值经二进制模板读写，超过阈值的值gzip压缩存储；批量读写使用MGET和管道，
+ * 按命名空间失效时用SCAN遍历，不阻塞Redis
  */
 @Component
 public class RedisCacheUtil {
+
+    private static final Logger log = LoggerFactory.getLogger(RedisCacheUtil.class);
+
+    private static final String DEFAULT_NAMESPACE = "default";
+
+    private static final char MESSAGE_SEPARATOR = '|';
+
+    // 命名空间失效通知的key后缀
+    private static final String NAMESPACE_WILDCARD = ":*";
+
+    // SCAN每批返回的key数量及批量删除的大小
+    private static final int SCAN_BATCH = 1000;
+
+    // 在一次调用中原子地自增同一Hash的多个字段，ARGV依次为 字段、增量
+    private static final RedisScript<Long> INCREMENT_HASH_SCRIPT = new DefaultRedisScript<>(
+            "for i = 1, #ARGV, 2 do redis.call('HINCRBY', KEYS[1], ARGV[i], ARGV[i + 1]) end return 1",
+            Long.class);
+
     private final StringRedisTemplate redisTemplate;
 
-    public RedisCacheUtil(StringRedisTemplate redisTemplate) {
+    // 缓存值使用的二进制模板，支持压缩后的值
+    private final RedisTemplate<String, byte[]> valueTemplate;
+
+    // 值的UTF-8长度不小于该字节数时压缩存储，<=0表示不压缩
+    @Value("${cache.compression.threshold-bytes:1024}")
+    private int compressionThreshold;
+
+    @Value("${cache.near.enabled:true}")
+    private boolean nearCacheEnabled;
+
+    // 每个命名空间的最大条目数
+    @Value("${cache.near.max-entries:10000}")
+    private int nearCacheMaxEntries;
+
+    // 本地副本的最长有效期，失效通知丢失时最多读到这么久的旧值
+    @Value("${cache.near.ttl-seconds:60}")
+    private long nearCacheTtlSeconds;
+
+    @Value("${cache.near.invalidation-channel:cache:invalidate}")
+    private String invalidationChannel;
+
+    // 本节点标识，忽略自己发出的失效通知
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final Map<String, NearCache> nearCaches = new ConcurrentHashMap<>();
+
+    private CacheValueCodec codec;
+
+    public RedisCacheUtil(StringRedisTemplate redisTemplate, RedisTemplate<String, byte[]> cacheValueTemplate) {
         this.redisTemplate = redisTemplate;
+        this.valueTemplate = cacheValueTemplate;
+    }
+
+    @PostConstruct
+    public void init() {
+        codec = new CacheValueCodec(compressionThreshold);
     }
 
     /**
@@ -23,24 +101,155 @@ public class RedisCacheUtil {
      * @param unit 时间单位
      */
     public void setCache(String key, String value, long timeout, TimeUnit unit) {
-        redisTemplate.opsForValue().set(key, value, timeout, unit);
+        valueTemplate.opsForValue().set(key, codec.encode(value), timeout, unit);
+        if (nearCacheEnabled) {
+            nearCache(key).put(key, value, Math.min(unit.toMillis(timeout), nearTtlMillis()));
+            publishInvalidation(key);
+        }
     }
 
     /**
      * 获取缓存
      * @param key 缓存键
-     * @return 缓存值
+     * @return 缓存值，不存在时返回null
      */
     public String getCache(String key) {
-        return redisTemplate.opsForValue().get(key);
+        if (!nearCacheEnabled) {
+            return codec.decode(valueTemplate.opsForValue().get(key));
+        }
+        NearCache nearCache = nearCache(key);
+        String value = nearCache.get(key);
+        if (value != null) {
+            return value;
+        }
+        long loadVersion = nearCache.beginLoad();
+        value = codec.decode(valueTemplate.opsForValue().get(key));
+        if (value != null) {
+            nearCache.recordRemoteHit();
+            nearCache.putLoaded(key, value, nearTtlMillis(), loadVersion);
+        } else {
+            nearCache.recordRemoteMiss();
+        }
+        return value;
+    }
+
+    /**
+     * 批量获取缓存，近端缓存未命中的key通过一次MGET读取
+     * @param keys 缓存键
+     * @return 存在的缓存键与值，不存在的key不在结果中
+     */
+    public Map<String, String> multiGet(List<String> keys) {
+        Map<String, String> result = new LinkedHashMap<>();
+        List<String> remoteKeys = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            String value = nearCacheEnabled ? nearCache(key).get(key) : null;
+            if (value != null) {
+                result.put(key, value);
+            } else {
+                remoteKeys.add(key);
+            }
+        }
+        if (remoteKeys.isEmpty()) {
+            return result;
+        }
+
+        long[] loadVersions = new long[remoteKeys.size()];
+        if (nearCacheEnabled) {
+            for (int i = 0; i < remoteKeys.size(); i++) {
+                loadVersions[i] = nearCache(remoteKeys.get(i)).beginLoad();
+            }
+        }
+        List<byte[]> values = valueTemplate.opsForValue().multiGet(remoteKeys);
+        for (int i = 0; i < remoteKeys.size(); i++) {
+            String key = remoteKeys.get(i);
+            String value = values != null ? codec.decode(values.get(i)) : null;
+            if (nearCacheEnabled) {
+                NearCache nearCache = nearCache(key);
+                if (value != null) {
+                    nearCache.recordRemoteHit();
+                    nearCache.putLoaded(key, value, nearTtlMillis(), loadVersions[i]);
+                } else {
+                    nearCache.recordRemoteMiss();
+                }
+            }
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 批量存储缓存，所有写入及失效通知在一个管道中发送
+     * @param entries 缓存键与值
+     * @param timeout 过期时间
+     * @param unit 时间单位
+     */
+    public void multiSet(Map<String, String> entries, long timeout, TimeUnit unit) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> encoded = new LinkedHashMap<>();
+        entries.forEach((key, value) -> encoded.put(key.getBytes(StandardCharsets.UTF_8), codec.encode(value)));
+        Expiration expiration = Expiration.from(timeout, unit);
+        byte[] channel = invalidationChannel.getBytes(StandardCharsets.UTF_8);
+
+        valueTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            encoded.forEach((key, value) -> connection.stringCommands()
+                    .set(key, value, expiration, RedisStringCommands.SetOption.UPSERT));
+            if (nearCacheEnabled) {
+                for (String key : entries.keySet()) {
+                    connection.publish(channel, invalidationMessage(key));
+                }
+            }
+            return null;
+        });
+
+        if (nearCacheEnabled) {
+            long ttl = Math.min(unit.toMillis(timeout), nearTtlMillis());
+            entries.forEach((key, value) -> nearCache(key).put(key, value, ttl));
+        }
+    }
+
+    /**
+     * 失效整个命名空间（如 ai_chat），用SCAN分批遍历并UNLINK，不使用阻塞的KEYS
+     * @param namespace 命名空间，即key中第一个冒号之前的部分
+     * @return 删除的key数量
+     */
+    public long invalidateNamespace(String namespace) {
+        long deleted = 0;
+        ScanOptions options = ScanOptions.scanOptions().match(namespace + NAMESPACE_WILDCARD).count(SCAN_BATCH).build();
+        try (Cursor<String> cursor = redisTemplate.scan(options)) {
+            List<String> batch = new ArrayList<>(SCAN_BATCH);
+            while (cursor.hasNext()) {
+                batch.add(cursor.next());
+                if (batch.size() >= SCAN_BATCH) {
+                    deleted += unlink(batch);
+                }
+            }
+            deleted += unlink(batch);
+        }
+
+        if (nearCacheEnabled) {
+            NearCache nearCache = nearCaches.get(namespace);
+            if (nearCache != null) {
+                nearCache.clear();
+            }
+            publishInvalidation(namespace + NAMESPACE_WILDCARD);
+        }
+        return deleted;
     }
 
     /**
      * 判断缓存是否存在
+     * 需要取值时直接调用getCache判断是否为null，避免两次访问Redis
      * @param key 缓存键
      * @return 是否存在
      */
     public boolean hasCache(String key) {
+        if (nearCacheEnabled && nearCache(key).get(key) != null) {
+            return true;
+        }
         return Boolean.TRUE.equals(redisTemplate.hasKey(key));
     }
 
@@ -50,5 +259,173 @@ public class RedisCacheUtil {
      */
     public void deleteCache(String key) {
         redisTemplate.delete(key);
+        if (nearCacheEnabled) {
+            nearCache(key).invalidate(key);
+            publishInvalidation(key);
+        }
+    }
+
+    /**
+     * 尝试获取一个简单的分布式锁（SET NX），到期自动释放
+     * @param key 锁的键
+     * @param timeout 锁的有效期
+     * @param unit 时间单位
+     * @return 是否获取成功
+     */
+    public boolean tryLock(String key, long timeout, TimeUnit unit) {
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(key, nodeId, timeout, unit));
+    }
+
+    /**
+     * 计数器自增并刷新过期时间
+     * @param key 缓存键
+     * @param delta 增量，可为负
+     * @param timeout 过期时间
+     * @param unit 时间单位
+     * @return 自增后的值
+     */
+    public long increment(String key, long delta, long timeout, TimeUnit unit) {
+        Long value = redisTemplate.opsForValue().increment(key, delta);
+        redisTemplate.expire(key, timeout, unit);
+        return value != null ? value : 0;
+    }
+
+    /**
+     * 批量计数器自增并刷新过期时间，所有命令在一个管道中发送；
+     * 增量为0的计数器只读取当前值，不写入也不刷新过期时间
+     * @param deltas 缓存键与增量
+     * @param timeout 过期时间
+     * @param unit 时间单位
+     * @return 缓存键与自增后的值，计数器不存在时为0
+     */
+    public Map<String, Long> incrementAll(Map<String, Long> deltas, long timeout, TimeUnit unit) {
+        Map<String, Long> result = new LinkedHashMap<>();
+        if (deltas.isEmpty()) {
+            return result;
+        }
+        long seconds = unit.toSeconds(timeout);
+        List<Object> replies = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            deltas.forEach((key, delta) -> {
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                if (delta == 0) {
+                    connection.stringCommands().get(rawKey);
+                } else {
+                    connection.stringCommands().incrBy(rawKey, delta);
+                    connection.keyCommands().expire(rawKey, seconds);
+                }
+            });
+            return null;
+        });
+        int index = 0;
+        for (Map.Entry<String, Long> entry : deltas.entrySet()) {
+            Object reply = replies.get(index);
+            index += entry.getValue() == 0 ? 1 : 2;
+            long value;
+            if (reply instanceof Number number) {
+                value = number.longValue();
+            } else {
+                value = reply != null ? Long.parseLong(reply.toString()) : 0;
+            }
+            result.put(entry.getKey(), value);
+        }
+        return result;
+    }
+
+    /**
+     * Hash字段自增
+     * @param key 缓存键
+     * @param field 字段名
+     * @param delta 增量
+     */
+    public void incrementHash(String key, String field, long delta) {
+        redisTemplate.opsForHash().increment(key, field, delta);
+    }
+
+    /**
+     * 多个Hash字段一次原子自增，要么全部生效要么全部不生效
+     * @param key 缓存键
+     * @param deltas 字段名及增量
+     */
+    public void incrementHash(String key, Map<String, Long> deltas) {
+        List<String> args = new ArrayList<>(deltas.size() * 2);
+        deltas.forEach((field, delta) -> {
+            args.add(field);
+            args.add(String.valueOf(delta));
+        });
+        redisTemplate.execute(INCREMENT_HASH_SCRIPT, List.of(key), args.toArray());
+    }
+
+    /**
+     * 处理其他节点发来的失效通知，消息格式为 节点标识|缓存键，
+     * 缓存键为 命名空间:* 时失效整个命名空间
+     * @param message 通知内容
+     */
+    public void onInvalidationMessage(String message) {
+        int separator = message.indexOf(MESSAGE_SEPARATOR);
+        if (separator < 0 || message.substring(0, separator).equals(nodeId)) {
+            return;
+        }
+        String key = message.substring(separator + 1);
+        NearCache nearCache = nearCaches.get(namespace(key));
+        if (nearCache == null) {
+            return;
+        }
+        if (key.endsWith(NAMESPACE_WILDCARD)) {
+            nearCache.clear();
+        } else {
+            nearCache.invalidate(key);
+        }
+    }
+
+    public String getInvalidationChannel() {
+        return invalidationChannel;
+    }
+
+    /**
+     * 各命名空间的近端缓存统计
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", nearCacheEnabled);
+        Map<String, Object> namespaces = new HashMap<>();
+        nearCaches.forEach((namespace, nearCache) -> namespaces.put(namespace, nearCache.getStats()));
+        stats.put("namespaces", namespaces);
+        stats.put("compression", codec.getStats());
+        return stats;
+    }
+
+    private long unlink(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        Long count = redisTemplate.unlink(keys);
+        keys.clear();
+        return count != null ? count : 0;
+    }
+
+    private byte[] invalidationMessage(String key) {
+        return (nodeId + MESSAGE_SEPARATOR + key).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void publishInvalidation(String key) {
+        try {
+            redisTemplate.convertAndSend(invalidationChannel, nodeId + MESSAGE_SEPARATOR + key);
+        } catch (Exception e) {
+            // 通知失败时其他节点的本地副本在有效期后自然过期
+            log.warn("缓存失效通知发送失败: {}", e.getMessage());
+        }
+    }
+
+    private NearCache nearCache(String key) {
+        return nearCaches.computeIfAbsent(namespace(key), ns -> new NearCache(nearCacheMaxEntries));
+    }
+
+    private long nearTtlMillis() {
+        return TimeUnit.SECONDS.toMillis(nearCacheTtlSeconds);
+    }
+
+    private static String namespace(String key) {
+        int colon = key.indexOf(':');
+        return colon > 0 ? key.substring(0, colon) : DEFAULT_NAMESPACE;
     }
-}
\ No newline at end of file
+}
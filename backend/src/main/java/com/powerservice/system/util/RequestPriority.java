@@ -0,0 +1,17 @@
+package com.powerservice.system.util;
+
+/**
+ * 上游调用的优先级，按声明顺序从高到低
+ * 上游能力不足时高优先级先获得并发名额，低优先级先被丢弃
+ */
+public enum RequestPriority {
+
+    // 停电、故障、触电等安全或抢修相关的问题
+    URGENT,
+
+    // 能匹配到业务分类的普通咨询
+    NORMAL,
+
+    // 闲聊、无法归类的问题以及后台批量任务
+    LOW
+}
@@ -0,0 +1,59 @@
+package com.powerservice.system.util;
+
+/**
+ * 重试预算
+ * 每个正常请求按比例存入额度，每次重试（含对冲请求）消耗1个额度，额度有上限，
+ * 保证上游异常时重试流量不超过正常流量的固定比例，避免重试风暴
+ */
+public class RetryBudget {
+
+    private final double depositPerRequest;
+
+    private final double maxBalance;
+
+    private double balance;
+
+    private long granted;
+
+    private long denied;
+
+    /**
+     * @param depositPerRequest 每个请求存入的额度，如0.1表示重试最多占正常请求的10%
+     * @param maxBalance 额度上限，同时作为初始额度
+     */
+    public RetryBudget(double depositPerRequest, double maxBalance) {
+        this.depositPerRequest = depositPerRequest;
+        this.maxBalance = maxBalance;
+        this.balance = maxBalance;
+    }
+
+    public synchronized void onRequest() {
+        balance = Math.min(maxBalance, balance + depositPerRequest);
+    }
+
+    /**
+     * 尝试消耗一次重试额度
+     * @return 是否允许重试
+     */
+    public synchronized boolean tryWithdraw() {
+        if (balance >= 1) {
+            balance -= 1;
+            granted++;
+            return true;
+        }
+        denied++;
+        return false;
+    }
+
+    public synchronized double getBalance() {
+        return balance;
+    }
+
+    public synchronized long getGranted() {
+        return granted;
+    }
+
+    public synchronized long getDenied() {
+        return denied;
+    }
+}
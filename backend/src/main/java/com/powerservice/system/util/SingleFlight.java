@@ -0,0 +1,91 @@
+package com.powerservice.system.util;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 单飞（single-flight）合并器
+ * 同一key同一时刻只有一个上游调用在执行：第一个调用方发起请求，
+ * 之后相同key的调用方直接挂到进行中的调用上，调用结束后自动移除
+ * @param <T> 结果类型
+ */
+public class SingleFlight<T> {
+
+    private final Map<String, Mono<T>> inflightMonos = new ConcurrentHashMap<>();
+
+    private final Map<String, Flux<T>> inflightFluxes = new ConcurrentHashMap<>();
+
+    private final LongAdder ownerCount = new LongAdder();  // 实际发起的上游调用数
+
+    private final LongAdder joinedCount = new LongAdder();  // 挂到已有调用上的次数
+
+    /**
+     * 合并单值调用
+     * @param key 归一化后的key
+     * @param supplier 上游调用，仅在没有进行中的同key调用时执行
+     * @return 共享的调用结果
+     */
+    public Mono<T> execute(String key, Supplier<Mono<T>> supplier) {
+        return Mono.defer(() -> {
+            boolean[] owner = {false};
+            Mono<T> call = inflightMonos.computeIfAbsent(key, k -> {
+                owner[0] = true;
+                AtomicReference<Mono<T>> self = new AtomicReference<>();
+                Mono<T> shared = Mono.defer(supplier)
+                        .doFinally(signal -> inflightMonos.remove(k, self.get()))
+                        .cache();
+                self.set(shared);
+                return shared;
+            });
+            (owner[0] ? ownerCount : joinedCount).increment();
+            return call;
+        });
+    }
+
+    /**
+     * 合并流式调用
+     * 后到的订阅者先收到已产生的全部元素，再继续接收实时元素；
+     * 所有订阅者都取消后上游调用随之取消
+     * @param key 归一化后的key
+     * @param supplier 上游流，仅在没有进行中的同key调用时订阅
+     * @return 共享的元素流
+     */
+    public Flux<T> executeMany(String key, Supplier<Flux<T>> supplier) {
+        return Flux.defer(() -> {
+            boolean[] owner = {false};
+            Flux<T> call = inflightFluxes.computeIfAbsent(key, k -> {
+                owner[0] = true;
+                AtomicReference<Flux<T>> self = new AtomicReference<>();
+                Flux<T> shared = Flux.defer(supplier)
+                        .doFinally(signal -> inflightFluxes.remove(k, self.get()))
+                        .replay()
+                        .refCount();
+                self.set(shared);
+                return shared;
+            });
+            (owner[0] ? ownerCount : joinedCount).increment();
+            return call;
+        });
+    }
+
+    /**
+     * 获取统计信息
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long owners = ownerCount.sum();
+        long joined = joinedCount.sum();
+        stats.put("inflight", inflightMonos.size() + inflightFluxes.size());
+        stats.put("upstreamCalls", owners);
+        stats.put("coalescedCalls", joined);
+        stats.put("coalescedRatio", owners + joined == 0 ? 0.0 : (double) joined / (owners + joined));
+        return stats;
+    }
+}
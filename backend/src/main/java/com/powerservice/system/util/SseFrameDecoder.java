@@ -0,0 +1,172 @@
+package com.powerservice.system.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 增量SSE帧解码器
+ * 直接在响应的ByteBuf上按字节查找行边界，按SSE规范解析 data/event/id 字段及注释行，
+ * 多行 data 以换行拼接，空行时分发一个完整事件。
+ * 行内容与事件数据复制到可复用的字节数组中，分包截断的行会保留到下一个ByteBuf继续拼接，
+ * 解码过程不为每行创建String。
+ * 非线程安全，每个响应使用一个实例
+ */
+public class SseFrameDecoder {
+
+    private static final String DEFAULT_EVENT = "message";
+
+    /**
+     * 事件回调
+     */
+    public interface EventHandler {
+        /**
+         * @param event 事件类型，未指定时为"message"
+         * @param id 最近一次的事件id，可能为null
+         * @param data 事件数据缓冲区，仅在回调期间有效
+         * @param length 数据长度
+         */
+        void onEvent(String event, String id, byte[] data, int length);
+    }
+
+    private byte[] line = new byte[256];
+
+    private int lineLength;
+
+    private byte[] data = new byte[1024];
+
+    private int dataLength;
+
+    private boolean hasData;
+
+    private String eventType;
+
+    private String lastEventId;
+
+    // 上一个字节是'\r'，紧随其后的'\n'属于同一个行结束符
+    private boolean skipLineFeed;
+
+    /**
+     * 解码一段字节，解析出的完整事件通过回调分发
+     * @param buf 响应数据，读取后readerIndex移动到末尾
+     * @param handler 事件回调
+     */
+    public void decode(ByteBuf buf, EventHandler handler) {
+        int index = buf.readerIndex();
+        int end = buf.writerIndex();
+        while (index < end) {
+            if (skipLineFeed) {
+                skipLineFeed = false;
+                if (buf.getByte(index) == '\n') {
+                    index++;
+                    continue;
+                }
+            }
+            int eol = buf.forEachByte(index, end - index, ByteProcessor.FIND_CRLF);
+            if (eol < 0) {
+                // 行未结束，暂存到下一个分包
+                appendLine(buf, index, end - index);
+                break;
+            }
+            appendLine(buf, index, eol - index);
+            skipLineFeed = buf.getByte(eol) == '\r';
+            processLine(handler);
+            lineLength = 0;
+            index = eol + 1;
+        }
+        buf.readerIndex(end);
+    }
+
+    /**
+     * 最近一次的事件id，用于断线续传
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    private void appendLine(ByteBuf buf, int from, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        buf.getBytes(from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void processLine(EventHandler handler) {
+        // 空行：分发事件
+        if (lineLength == 0) {
+            dispatch(handler);
+            return;
+        }
+        // 注释行
+        if (line[0] == ':') {
+            return;
+        }
+
+        int colon = indexOf(line, lineLength, (byte) ':');
+        int nameLength = colon < 0 ? lineLength : colon;
+        int valueStart = colon < 0 ? lineLength : colon + 1;
+        if (valueStart < lineLength && line[valueStart] == ' ') {
+            valueStart++;
+        }
+        int valueLength = lineLength - valueStart;
+
+        if (fieldIs("data", nameLength)) {
+            appendData(valueStart, valueLength);
+        } else if (fieldIs("event", nameLength)) {
+            eventType = new String(line, valueStart, valueLength, StandardCharsets.UTF_8);
+        } else if (fieldIs("id", nameLength)) {
+            lastEventId = new String(line, valueStart, valueLength, StandardCharsets.UTF_8);
+        }
+        // retry及未知字段忽略
+    }
+
+    private void appendData(int from, int length) {
+        // 多行data之间以'\n'拼接
+        int required = dataLength + length + 1;
+        if (required > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, required));
+        }
+        if (hasData) {
+            data[dataLength++] = '\n';
+        }
+        System.arraycopy(line, from, data, dataLength, length);
+        dataLength += length;
+        hasData = true;
+    }
+
+    private void dispatch(EventHandler handler) {
+        if (hasData) {
+            handler.onEvent(eventType != null ? eventType : DEFAULT_EVENT, lastEventId, data, dataLength);
+        }
+        dataLength = 0;
+        hasData = false;
+        eventType = null;
+    }
+
+    private boolean fieldIs(String name, int nameLength) {
+        if (name.length() != nameLength) {
+            return false;
+        }
+        for (int i = 0; i < nameLength; i++) {
+            if (line[i] != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int length, byte target) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[i] == target) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,105 @@
+package com.powerservice.system.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 流式输出节奏控制工具类
+ * 将一段完整文本按固定速率分片输出，模拟打字效果。
+ * 所有流共享同一个定时调度器，等待期间不占用线程，一个调度线程即可驱动大量SSE连接
+ */
+@Component
+public class StreamPacer {
+
+    // 输出速率（字符/秒），小于等于0时不做节奏控制，整段一次输出
+    @Value("${ai.stream.pacing.chars-per-second:200}")
+    private int charsPerSecond;
+
+    // 每个分片的字符数
+    @Value("${ai.stream.pacing.chunk-size:10}")
+    private int chunkSize;
+
+    // 调度线程数，分片任务极轻，一般1~2个即可
+    @Value("${ai.stream.pacing.threads:1}")
+    private int threads;
+
+    private ScheduledThreadPoolExecutor scheduler;
+
+    @PostConstruct
+    public void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        scheduler = new ScheduledThreadPoolExecutor(threads, r -> {
+            Thread thread = new Thread(r, "stream-pacer-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 取消的任务立即从队列移除，避免断开的连接残留定时任务
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * 按配置的速率分片输出文本
+     * @param text 完整文本
+     * @return 分片流
+     */
+    public Flux<String> pace(String text) {
+        return pace(text, charsPerSecond);
+    }
+
+    /**
+     * 分片输出文本
+     * @param text 完整文本
+     * @param paced 是否控制输出节奏，false时整段一次输出（适用于不需要打字效果的客户端）
+     * @return 分片流
+     */
+    public Flux<String> pace(String text, boolean paced) {
+        return pace(text, paced ? charsPerSecond : 0);
+    }
+
+    /**
+     * 按指定速率分片输出文本
+     * @param text 完整文本
+     * @param charsPerSecond 输出速率（字符/秒），小于等于0时整段一次输出
+     * @return 分片流，取消订阅时对应的定时任务随之取消
+     */
+    public Flux<String> pace(String text, int charsPerSecond) {
+        if (text == null || text.isEmpty()) {
+            return Flux.empty();
+        }
+        if (charsPerSecond <= 0) {
+            return Flux.just(text);
+        }
+        long intervalMicros = Math.max(1L, chunkSize * 1_000_000L / charsPerSecond);
+
+        return Flux.create(sink -> {
+            // 同一个周期任务的各次执行是串行的，position无需额外同步
+            int[] position = {0};
+            ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(() -> {
+                if (sink.isCancelled()) {
+                    return;
+                }
+                int start = position[0];
+                int end = Math.min(start + chunkSize, text.length());
+                position[0] = end;
+                sink.next(text.substring(start, end));
+                if (end >= text.length()) {
+                    sink.complete();
+                }
+            }, intervalMicros, intervalMicros, TimeUnit.MICROSECONDS);
+            sink.onDispose(() -> task.cancel(false));
+        });
+    }
+}
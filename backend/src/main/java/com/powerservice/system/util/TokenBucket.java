@@ -0,0 +1,79 @@
+package com.powerservice.system.util;
+
+/**
+ * 令牌桶
+ * 按固定速率补充令牌，容量即允许的突发量。
+ * 实际消耗在请求结束后才知道，因此允许记账透支（余额为负），透支部分由后续补充抵扣
+ */
+public class TokenBucket {
+
+    private final double capacity;
+
+    private final double refillPerSecond;
+
+    private double tokens;
+
+    private long lastRefillNanos;
+
+    /**
+     * @param capacity 桶容量
+     * @param refillPerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+        this.tokens = capacity;
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * 余额足够时扣减
+     * @return 是否扣减成功
+     */
+    public synchronized boolean tryConsume(double amount) {
+        refill();
+        if (tokens < amount) {
+            return false;
+        }
+        tokens -= amount;
+        return true;
+    }
+
+    /**
+     * 强制扣减，余额可为负；amount为负时相当于退还
+     */
+    public synchronized void consume(double amount) {
+        refill();
+        tokens = Math.min(capacity, tokens - amount);
+    }
+
+    /**
+     * 余额补足到amount还需要的秒数
+     */
+    public synchronized long secondsUntilAvailable(double amount) {
+        refill();
+        if (tokens >= amount) {
+            return 0;
+        }
+        if (refillPerSecond <= 0) {
+            return Long.MAX_VALUE;
+        }
+        return (long) Math.ceil((Math.min(amount, capacity) - tokens) / refillPerSecond);
+    }
+
+    public synchronized double getAvailable() {
+        refill();
+        return tokens;
+    }
+
+    public synchronized boolean isFull() {
+        refill();
+        return tokens >= capacity;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefillNanos) / 1e9 * refillPerSecond);
+        lastRefillNanos = now;
+    }
+}
@@ -0,0 +1,60 @@
+package com.powerservice.system.util;
+
+import java.util.List;
+
+/**
+ * Token数估算工具
+ * 不依赖分词器，按字符类别近似：中日韩字符约0.6 token/字，其余字符约0.3 token/字，
+ * 每条消息另加固定的格式开销。用于请求前的上下文裁剪，误差在可接受范围内
+ */
+public class TokenEstimator {
+
+    // 每条消息的角色、分隔符等格式开销
+    private static final int MESSAGE_OVERHEAD = 4;
+
+    private TokenEstimator() {
+    }
+
+    /**
+     * 估算一段文本的token数
+     */
+    public static int estimate(String text) {
+        if (text == null || text.isEmpty()) {
+            return 0;
+        }
+        double tokens = 0;
+        for (int i = 0; i < text.length(); i++) {
+            tokens += isCjk(text.charAt(i)) ? 0.6 : 0.3;
+        }
+        return (int) Math.ceil(tokens);
+    }
+
+    /**
+     * 估算一条消息的token数（含格式开销）
+     */
+    public static int estimate(Message message) {
+        return estimate(message.getContent()) + MESSAGE_OVERHEAD;
+    }
+
+    /**
+     * 估算消息列表的token数
+     */
+    public static int estimate(List<Message> messages) {
+        int tokens = 0;
+        for (Message message : messages) {
+            tokens += estimate(message);
+        }
+        return tokens;
+    }
+
+    private static boolean isCjk(char c) {
+        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+        return block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS
+                || block == Character.UnicodeBlock.CJK_UNIFIED_IDEOGRAPHS_EXTENSION_A
+                || block == Character.UnicodeBlock.CJK_SYMBOLS_AND_PUNCTUATION
+                || block == Character.UnicodeBlock.HALFWIDTH_AND_FULLWIDTH_FORMS
+                || block == Character.UnicodeBlock.HIRAGANA
+                || block == Character.UnicodeBlock.KATAKANA
+                || block == Character.UnicodeBlock.HANGUL_SYLLABLES;
+    }
+}
@@ -0,0 +1,41 @@
+package com.powerservice.system.util;
+
+/**
+ * 一次对话调用消耗的token数
+ * 优先取自DeepSeek响应中的usage字段，上游未返回时按TokenEstimator本地估算
+ */
+public class TokenUsage {
+    private final int promptTokens;  // 提问（含上下文）消耗的token数
+    private final int completionTokens;  // 回答消耗的token数
+    private final boolean estimated;  // 是否为本地估算值
+
+    public TokenUsage(int promptTokens, int completionTokens, boolean estimated) {
+        this.promptTokens = promptTokens;
+        this.completionTokens = completionTokens;
+        this.estimated = estimated;
+    }
+
+    /**
+     * 按提问和回答文本本地估算
+     */
+    public static TokenUsage estimate(String prompt, String answer) {
+        return new TokenUsage(TokenEstimator.estimate(new Message("user", prompt)),
+                TokenEstimator.estimate(answer), true);
+    }
+
+    public int getPromptTokens() {
+        return promptTokens;
+    }
+
+    public int getCompletionTokens() {
+        return completionTokens;
+    }
+
+    public int getTotalTokens() {
+        return promptTokens + completionTokens;
+    }
+
+    public boolean isEstimated() {
+        return estimated;
+    }
+}
@@ -0,0 +1,17 @@
+package com.powerservice.system.util;
+
+/**
+ * 上游不可用异常
+ * 熔断器打开时直接抛出，不再向上游发起请求
+ */
+public class UpstreamUnavailableException extends DeepSeekApiException {
+
+    public UpstreamUnavailableException(String message) {
+        super(message, 503);
+    }
+
+    @Override
+    public boolean isRetryable() {
+        return false;
+    }
+}
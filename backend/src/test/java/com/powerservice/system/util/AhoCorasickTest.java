@@ -0,0 +1,96 @@
+package com.powerservice.system.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AhoCorasickTest {
+
+    @Test
+    void findsOverlappingAndNestedPatterns() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("he", "she", "his", "hers"));
+        assertEquals(List.of("1@4", "0@4", "3@6"), matches(automaton, "ushers"));
+        assertEquals(List.of("2@3", "1@5", "0@5"), matches(automaton, "hishe"));
+    }
+
+    @Test
+    void matchesChinesePatterns() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("停电", "突然停电", "电费", "缴电费"));
+        assertEquals(List.of("1@6", "0@6", "3@11", "2@11"), matches(automaton, "家里突然停电还要缴电费"));
+    }
+
+    @Test
+    void reportsEveryOccurrenceAndDuplicatePatterns() {
+        AhoCorasick automaton = AhoCorasick.compile(List.of("aa", "a", "aa"));
+        assertEquals(List.of("1@1", "0@2", "2@2", "1@2", "0@3", "2@3", "1@3"), matches(automaton, "aaa"));
+    }
+
+    @Test
+    void ignoresEmptyPatterns() {
+        AhoCorasick automaton = AhoCorasick.compile(Arrays.asList("", null, "x"));
+        assertEquals(3, automaton.getPatternCount());
+        assertEquals(List.of("2@1", "2@3"), matches(automaton, "xyx"));
+        assertEquals(List.of(), matches(AhoCorasick.compile(List.of()), "anything"));
+    }
+
+    @Test
+    void agreesWithBruteForceOnRandomInput() {
+        Random random = new Random(42);
+        for (int round = 0; round < 200; round++) {
+            List<String> patterns = new ArrayList<>();
+            int count = 1 + random.nextInt(12);
+            for (int p = 0; p < count; p++) {
+                patterns.add(randomText(random, 1 + random.nextInt(5)));
+            }
+            String text = randomText(random, random.nextInt(60));
+            assertEquals(bruteForce(patterns, text), sortedMatches(AhoCorasick.compile(patterns), text),
+                    "模式: " + patterns + ", 文本: " + text);
+        }
+    }
+
+    /**
+     * 按结束位置排序，同一位置按模式序号排序，便于与暴力匹配比较
+     */
+    private static List<String> sortedMatches(AhoCorasick automaton, String text) {
+        List<int[]> found = new ArrayList<>();
+        automaton.match(text, (pattern, end) -> found.add(new int[]{end, pattern}));
+        found.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        List<String> result = new ArrayList<>();
+        for (int[] match : found) {
+            result.add(match[1] + "@" + match[0]);
+        }
+        return result;
+    }
+
+    private static List<String> matches(AhoCorasick automaton, String text) {
+        List<String> result = new ArrayList<>();
+        automaton.match(text, (pattern, end) -> result.add(pattern + "@" + end));
+        return result;
+    }
+
+    private static List<String> bruteForce(List<String> patterns, String text) {
+        List<String> result = new ArrayList<>();
+        for (int end = 1; end <= text.length(); end++) {
+            for (int p = 0; p < patterns.size(); p++) {
+                String pattern = patterns.get(p);
+                if (pattern.length() <= end && text.startsWith(pattern, end - pattern.length())) {
+                    result.add(p + "@" + end);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static String randomText(Random random, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append("ab电".charAt(random.nextInt(3)));
+        }
+        return text.toString();
+    }
+}
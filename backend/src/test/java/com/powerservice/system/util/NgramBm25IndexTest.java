@@ -0,0 +1,143 @@
+package com.powerservice.system.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NgramBm25IndexTest {
+
+    private static final List<String> DOCS = List.of(
+            "电费怎么缴纳",
+            "家里突然停电怎么办",
+            "停电报修电话是多少",
+            "如何办理新装用电",
+            "电费账单查询");
+
+    @Test
+    void extractsDistinctBigramsAndTrigrams() {
+        assertEquals(0, NgramBm25Index.queryTerms("").length);
+        assertEquals(0, NgramBm25Index.queryTerms("电").length);
+        assertEquals(1, NgramBm25Index.queryTerms("电费").length);
+        assertEquals(3, NgramBm25Index.queryTerms("缴电费").length);
+        // 二元组"电费"出现两次只保留一次，另有"费电"及两个三元组
+        assertEquals(4, NgramBm25Index.queryTerms("电费电费").length);
+
+        Map<Long, Float> counts = new HashMap<>();
+        NgramBm25Index.countTerms("电费电费", 2f, counts);
+        assertEquals(4, counts.size());
+        assertEquals(4f, counts.get(NgramBm25Index.queryTerms("电费")[0]));
+    }
+
+    @Test
+    void emptyIndexAndUnknownTermsReturnNoHits() {
+        assertEquals(0, NgramBm25Index.empty().search(NgramBm25Index.queryTerms("停电"), 3).size());
+        NgramBm25Index index = build(DOCS);
+        assertEquals(0, index.search(NgramBm25Index.queryTerms("天气预报"), 3).size());
+        assertEquals(0, index.search(NgramBm25Index.queryTerms("停电"), 0).size());
+    }
+
+    @Test
+    void ranksMostRelevantDocumentFirst() {
+        NgramBm25Index index = build(DOCS);
+        NgramBm25Index.Hits hits = index.search(NgramBm25Index.queryTerms("突然停电了"), 3);
+        assertEquals(2, hits.size());
+        assertEquals(1, hits.doc(0));
+        assertEquals(2, hits.doc(1));
+        assertTrue(hits.score(0) > hits.score(1));
+    }
+
+    @Test
+    void scoresMatchReferenceBm25() {
+        Random random = new Random(7);
+        String alphabet = "电费停缴查询办理";
+        for (int round = 0; round < 50; round++) {
+            List<String> docs = new ArrayList<>();
+            int docCount = 1 + random.nextInt(20);
+            for (int d = 0; d < docCount; d++) {
+                docs.add(randomText(random, alphabet, 2 + random.nextInt(15)));
+            }
+            String query = randomText(random, alphabet, 2 + random.nextInt(6));
+            NgramBm25Index.Hits hits = build(docs).search(NgramBm25Index.queryTerms(query), docCount);
+
+            float[] expected = referenceScores(docs, query);
+            int positive = 0;
+            for (float score : expected) {
+                if (score > 0) {
+                    positive++;
+                }
+            }
+            assertEquals(positive, hits.size(), "文档: " + docs + ", 查询: " + query);
+            for (int rank = 0; rank < hits.size(); rank++) {
+                assertEquals(expected[hits.doc(rank)], hits.score(rank), 1e-4, "查询: " + query);
+                if (rank > 0) {
+                    assertTrue(hits.score(rank - 1) >= hits.score(rank));
+                }
+            }
+        }
+    }
+
+    private static NgramBm25Index build(List<String> docs) {
+        NgramBm25Index.Builder builder = new NgramBm25Index.Builder();
+        for (String doc : docs) {
+            Map<Long, Float> counts = new HashMap<>();
+            NgramBm25Index.countTerms(doc, 1f, counts);
+            builder.add(counts, doc.length());
+        }
+        return builder.build();
+    }
+
+    /**
+     * 逐个文档直接按BM25公式计算得分
+     */
+    private static float[] referenceScores(List<String> docs, String query) {
+        List<Map<Long, Float>> termFreqs = new ArrayList<>();
+        double totalLength = 0;
+        for (String doc : docs) {
+            Map<Long, Float> counts = new HashMap<>();
+            NgramBm25Index.countTerms(doc, 1f, counts);
+            termFreqs.add(counts);
+            totalLength += doc.length();
+        }
+        double avgLength = Math.max(1, totalLength / docs.size());
+        Set<Long> queryTerms = new HashSet<>();
+        for (long term : NgramBm25Index.queryTerms(query)) {
+            queryTerms.add(term);
+        }
+
+        float[] scores = new float[docs.size()];
+        for (long term : queryTerms) {
+            int df = 0;
+            for (Map<Long, Float> counts : termFreqs) {
+                if (counts.containsKey(term)) {
+                    df++;
+                }
+            }
+            double idf = Math.log(1 + (docs.size() - df + 0.5) / (df + 0.5));
+            for (int d = 0; d < docs.size(); d++) {
+                Float tf = termFreqs.get(d).get(term);
+                if (tf != null) {
+                    double norm = 1.2 * (1 - 0.75 + 0.75 * docs.get(d).length() / avgLength);
+                    scores[d] += (float) (idf * tf * 2.2 / (tf + norm));
+                }
+            }
+        }
+        return scores;
+    }
+
+    private static String randomText(Random random, String alphabet, int length) {
+        StringBuilder text = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}
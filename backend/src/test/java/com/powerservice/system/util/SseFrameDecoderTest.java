@@ -0,0 +1,107 @@
+package com.powerservice.system.util;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SseFrameDecoderTest {
+
+    @Test
+    void decodesEventsWithAnyLineTerminator() {
+        for (String eol : List.of("\n", "\r", "\r\n")) {
+            String stream = "data: {\"a\":1}" + eol + eol + "data: {\"b\":2}" + eol + eol;
+            assertEquals(List.of("message|null|{\"a\":1}", "message|null|{\"b\":2}"), decode(stream),
+                    "行结束符: " + Arrays.toString(eol.getBytes(StandardCharsets.US_ASCII)));
+        }
+    }
+
+    @Test
+    void decodesSameEventsWhateverTheBufferSplit() {
+        String stream = "event: delta\r\nid: 7\r\ndata: 第一行\r\ndata: 第二行\r\n\r\n"
+                + ": keep-alive\n\n"
+                + "data: {\"c\":3}\r\rdata: [DONE]\n\n";
+        List<String> expected = decode(stream);
+        assertEquals(List.of("delta|7|第一行\n第二行", "message|7|{\"c\":3}", "message|7|[DONE]"), expected);
+
+        byte[] bytes = stream.getBytes(StandardCharsets.UTF_8);
+        for (int first = 0; first <= bytes.length; first++) {
+            for (int second = first; second <= bytes.length; second++) {
+                assertEquals(expected, decode(Arrays.copyOfRange(bytes, 0, first),
+                        Arrays.copyOfRange(bytes, first, second),
+                        Arrays.copyOfRange(bytes, second, bytes.length)),
+                        "分包位置: " + first + ", " + second);
+            }
+        }
+    }
+
+    @Test
+    void joinsMultiLineDataWithLineFeed() {
+        assertEquals(List.of("message|null|a\n\nb"), decode("data: a\ndata\ndata:b\n\n"));
+    }
+
+    @Test
+    void ignoresCommentsAndEventsWithoutData() {
+        assertEquals(List.of(), decode(": ping\n\nevent: heartbeat\n\nretry: 1000\n\n"));
+    }
+
+    @Test
+    void holdsIncompleteEventUntilBlankLine() {
+        SseFrameDecoder decoder = new SseFrameDecoder();
+        List<String> events = new ArrayList<>();
+        decoder.decode(buffer("id: 1\ndata: partial"), (event, id, data, length) -> events.add(id));
+        assertTrue(events.isEmpty());
+        assertEquals("1", decoder.getLastEventId());
+
+        decoder.decode(buffer("\n\n"), (event, id, data, length) -> events.add(id));
+        assertEquals(List.of("1"), events);
+    }
+
+    @Test
+    void consumesWholeBuffer() {
+        ByteBuf buf = buffer("data: x\n");
+        new SseFrameDecoder().decode(buf, (event, id, data, length) -> { });
+        assertFalse(buf.isReadable());
+    }
+
+    @Test
+    void recognizesDoneMarker() {
+        byte[] done = "[DONE]".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(ChatChunkParser.isDone(done, done.length));
+        byte[] other = "[DONE] ".getBytes(StandardCharsets.US_ASCII);
+        assertFalse(ChatChunkParser.isDone(other, other.length));
+        assertNull(decodeSingleOrNull(":[DONE]\n\n"));
+    }
+
+    private static String decodeSingleOrNull(String stream) {
+        List<String> events = decode(stream);
+        return events.isEmpty() ? null : events.get(0);
+    }
+
+    private static List<String> decode(String stream) {
+        return decode(stream.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> decode(byte[]... chunks) {
+        SseFrameDecoder decoder = new SseFrameDecoder();
+        List<String> events = new ArrayList<>();
+        for (byte[] chunk : chunks) {
+            decoder.decode(Unpooled.wrappedBuffer(chunk), (event, id, data, length) ->
+                    events.add(event + "|" + id + "|" + new String(data, 0, length, StandardCharsets.UTF_8)));
+        }
+        return events;
+    }
+
+    private static ByteBuf buffer(String text) {
+        return Unpooled.copiedBuffer(text, StandardCharsets.UTF_8);
+    }
+}
@@ -174,18 +174,25 @@ export const checkFaceRegistered = (userId) => {
 };
 
 // ==================== 聊天相关 API ====================
+// 流式回答中途断线后的最大自动重连次数
+const MAX_STREAM_RECONNECT_ATTEMPTS = 3;
+
 /**
  * 发送流式聊天请求（适配DeepSeek原生格式）
  * @param {string} prompt - 用户输入的问题
  * @param {Function} onMessage - 接收单字/短句的回调
  * @param {Function} onError - 错误回调
  * @param {Function} onComplete - 完成回调
+ * @param {string} [sessionId] - 会话ID，传入时后端携带该会话的历史对话作为上下文
  * @returns {Function} 关闭连接的方法
  */
-export function sendChatStream(prompt, onMessage, onError, onComplete) {
+export function sendChatStream(prompt, onMessage, onError, onComplete, sessionId) {
   // 1. 拼接正确的接口路径（确保和后端一致：/api/chat/stream）
   const encodedPrompt = encodeURIComponent(prompt);
-  const url = `${BASE_URL}/api/chat/stream?prompt=${encodedPrompt}`;
+  let url = `${BASE_URL}/api/chat/stream?prompt=${encodedPrompt}`;
+  if (sessionId) {
+    url += `&sessionId=${encodeURIComponent(sessionId)}`;
+  }
 
   // 2. 创建SSE连接
   const eventSource = new EventSource(url, { withCredentials: true });
@@ -195,10 +202,13 @@ export function sendChatStream(prompt, onMessage, onError, onComplete) {
   let isCompleted = false;
   // 用于记录是否已经接收到有效数据
   let hasReceivedData = false;
+  // 连续自动重连次数，收到数据后清零
+  let reconnectAttempts = 0;
 
   // 3. 直接处理纯文本数据（过滤data:前缀）
   eventSource.onmessage = (e) => {
     hasReceivedData = true; // 标记已经收到数据
+    reconnectAttempts = 0;
     let content = e.data.trim();
     
     // 移除多余的data:前缀
@@ -233,6 +243,14 @@ export function sendChatStream(prompt, onMessage, onError, onComplete) {
   // 5. 处理连接错误（避免正常关闭被误判为错误）
   eventSource.onerror = (err) => {
     console.log('SSE error event, readyState:', eventSource.readyState, 'hasReceivedData:', hasReceivedData);
+
+    // 回答中途断线（未收到[DONE]）：浏览器会带Last-Event-ID自动重连，后端从断点继续发送，不重新提问
+    if (!isCompleted && hasReceivedData &&
+        eventSource.readyState === EventSource.CONNECTING &&
+        reconnectAttempts < MAX_STREAM_RECONNECT_ATTEMPTS) {
+      reconnectAttempts++;
+      return;
+    }
     
     // 检查是否真的是错误：
     // 1. 不是已完成状态
@@ -277,11 +295,12 @@ export const sendChatMessage = (messageData, onStreamData, onError, onComplete)
     // 检查是否需要流式响应
     if (onStreamData) {
         // 使用新的sendChatStream函数
-        return sendChatStream(messageContent, onStreamData, onError, onComplete);
+        return sendChatStream(messageContent, onStreamData, onError, onComplete, messageData.sessionId);
     } else {
         // 普通请求方式
         return api.post('/api/chat', {
-            prompt: messageContent
+            prompt: messageContent,
+            sessionId: messageData.sessionId
         });
     }
 };